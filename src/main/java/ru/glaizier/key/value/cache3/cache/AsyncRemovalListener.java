@@ -0,0 +1,91 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Listener that queues notifications to a lock-free queue and passes them to the delegate on the executor, so
+ * the delegate doesn't slow down cache operations. Notifications are passed one at a time in the order they have been
+ * queued. Exceptions of the delegate are logged
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class AsyncRemovalListener<K, V> implements RemovalListener<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final RemovalListener<K, V> listener;
+
+    private final Executor executor;
+
+    private final Queue<Notification<K, V>> notifications = new ConcurrentLinkedQueue<>();
+
+    // true if a drain is scheduled or running
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private static class Notification<K, V> {
+        private final K key;
+        @Nullable
+        private final V value;
+        private final RemovalCause cause;
+
+        private Notification(K key, @Nullable V value, RemovalCause cause) {
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+    }
+
+    public AsyncRemovalListener(@Nonnull RemovalListener<K, V> listener, @Nonnull Executor executor) {
+        Objects.requireNonNull(listener, "listener");
+        Objects.requireNonNull(executor, "executor");
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    @Override
+    public void onRemoval(@Nonnull K key, @Nullable V value, @Nonnull RemovalCause cause) {
+        notifications.add(new Notification<>(key, value, cause));
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (notifications.isEmpty() || !draining.compareAndSet(false, true))
+            return;
+        try {
+            executor.execute(this::drain);
+        } catch (RuntimeException e) {
+            log.warn("Couldn't schedule removal notifications. Notifying in the calling thread", e);
+            drain();
+        }
+    }
+
+    private void drain() {
+        try {
+            Notification<K, V> notification;
+            while ((notification = notifications.poll()) != null) {
+                try {
+                    listener.onRemoval(notification.key, notification.value, notification.cause);
+                } catch (RuntimeException e) {
+                    log.error("Removal listener has failed for the key " + notification.key, e);
+                }
+            }
+        } finally {
+            draining.set(false);
+            // notifications could have been queued after the last poll but before the flag was reset
+            scheduleDrain();
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+
+/**
+ * Cache that lets puts fill the underlying cache up to a high watermark without evicting and evicts in the background
+ * down to a low watermark, so a burst of puts costs the callers only the inserts (e.g. not the deletes of files of a
+ * file storage). The background eviction starts when a batch can be evicted and evicts a batch per task. An executor
+ * that runs tasks in the calling thread evicts the batches in a loop.
+ * A put of a new key that finds the high watermark reached evicts a batch in the calling thread after a running
+ * background eviction has finished (back-pressure). Concurrent puts can exceed the high watermark by the number of
+ * putting threads up to the capacity of the underlying cache, which evicts synchronously then.
+ * Watermarks count elements, not weight. The capacity is the high watermark, the bound of the size between background
+ * evictions, while the low watermark is the size the cache settles at after them. Changing the capacity scales both
+ * watermarks and the capacity of the underlying cache. Elements evicted in the background reach the removal listener
+ * of the underlying cache but are not returned by puts.
+ * The underlying cache must be thread-safe and its capacity can't be less than the high watermark
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class BackgroundEvictionCache<K, V> implements Cache<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Cache<K, V> cache;
+
+    // watermarks are changed together under the eviction lock by setCapacity
+    private volatile int lowWatermark;
+
+    private volatile int highWatermark;
+
+    private final int maxBatchSize;
+
+    // size that starts the background eviction
+    private volatile int evictionTrigger;
+
+    private final Executor executor;
+
+    // only one eviction at a time, so callers at the high watermark wait for the background one
+    private final Lock evictionLock = new ReentrantLock();
+
+    // true if a background eviction is scheduled
+    private final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
+    /**
+     * @param lowWatermark  number of elements the background eviction evicts down to
+     * @param highWatermark number of elements after which callers evict a batch themselves
+     * @param maxBatchSize  max number of elements evicted by a task
+     * @param executor      runs background evictions. Isn't shut down by the cache
+     */
+    public BackgroundEvictionCache(@Nonnull Cache<K, V> cache, int lowWatermark, int highWatermark, int maxBatchSize,
+                                   @Nonnull Executor executor) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(executor, "executor");
+        if (lowWatermark < 0)
+            throw new IllegalArgumentException("Low watermark can't be negative!");
+        if (highWatermark <= lowWatermark)
+            throw new IllegalArgumentException("High watermark must be greater than low watermark!");
+        if (cache.getCapacity() < highWatermark)
+            throw new IllegalArgumentException("Capacity of the cache can't be less than high watermark!");
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("Max batch size can't be less than 1!");
+        this.cache = cache;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.maxBatchSize = maxBatchSize;
+        this.evictionTrigger = (int) Math.min((long) lowWatermark + maxBatchSize, highWatermark);
+        this.executor = executor;
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        return cache.get(key);
+    }
+
+    @Override
+    public V getOrNull(@Nonnull K key) {
+        return cache.getOrNull(key);
+    }
+
+    /**
+     * Returns the first element evicted by the calling thread at the high watermark or by the underlying cache
+     */
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        put(key, value, evicted::add);
+        return evicted.stream().findFirst();
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        makeRoom(key, (evictedKey, evictedValue) ->
+                evictedConsumer.accept(new AbstractMap.SimpleImmutableEntry<>(evictedKey, evictedValue)));
+        cache.put(key, value, evictedConsumer);
+        scheduleEviction();
+    }
+
+    @Override
+    public void putQuietly(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        makeRoom(key, (evictedKey, evictedValue) -> {});
+        cache.putQuietly(key, value);
+        scheduleEviction();
+    }
+
+    /**
+     * Computes in the underlying cache, so it's atomic if the underlying compute is
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        makeRoom(key, (evictedKey, evictedValue) -> {});
+        Optional<V> computed = cache.compute(key, remappingFunction);
+        scheduleEviction();
+        return computed;
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        return cache.evict();
+    }
+
+    @Override
+    public boolean evict(@Nonnull BiConsumer<? super K, ? super V> evictedSink) {
+        return cache.evict(evictedSink);
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        return cache.remove(key);
+    }
+
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        return cache.removeQuietly(key);
+    }
+
+    /**
+     * Evicts down to the low watermark in the calling thread
+     */
+    public void evictToLowWatermark() {
+        evictionLock.lock();
+        try {
+            while (cache.getSize() > lowWatermark) {
+                if (!cache.evict((evictedKey, evictedValue) -> {}))
+                    break;
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Back-pressure: the background eviction doesn't keep up, so the caller evicts a batch
+     */
+    private void makeRoom(K key, BiConsumer<? super K, ? super V> evictedSink) {
+        if (cache.getSize() < highWatermark || cache.contains(key))
+            return;
+        evictionLock.lock();
+        try {
+            // the background eviction could have made room while the lock was awaited
+            if (cache.getSize() >= highWatermark)
+                evictBatchLocked(evictedSink);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of evicted elements
+     */
+    @GuardedBy("evictionLock")
+    private int evictBatchLocked(BiConsumer<? super K, ? super V> evictedSink) {
+        int evicted = 0;
+        while (evicted < maxBatchSize && cache.getSize() > lowWatermark && cache.evict(evictedSink))
+            evicted++;
+        return evicted;
+    }
+
+    private void scheduleEviction() {
+        if (cache.getSize() < evictionTrigger)
+            return;
+        submitEviction();
+    }
+
+    private void submitEviction() {
+        // an executor that runs the task inline would recurse per batch, so the batches are evicted in a loop then
+        while (cache.getSize() > lowWatermark && evictionScheduled.compareAndSet(false, true)) {
+            EvictionBatch batch = new EvictionBatch(Thread.currentThread());
+            try {
+                executor.execute(batch);
+            } catch (RuntimeException e) {
+                evictionScheduled.set(false);
+                log.warn("Couldn't schedule an eviction", e);
+                return;
+            }
+            batch.executeReturned = true;
+            if (!batch.ranInline)
+                return;
+        }
+    }
+
+    private class EvictionBatch implements Runnable {
+        private final Thread schedulingThread;
+        // written before execute returns if the executor runs the batch in the scheduling thread
+        private boolean ranInline;
+        // written by the scheduling thread after execute returns, so a batch it runs later isn't inline
+        private boolean executeReturned;
+
+        private EvictionBatch(Thread schedulingThread) {
+            this.schedulingThread = schedulingThread;
+        }
+
+        @Override
+        public void run() {
+            evictionScheduled.set(false);
+            int evicted;
+            evictionLock.lock();
+            try {
+                evicted = evictBatchLocked((evictedKey, evictedValue) -> {});
+            } catch (RuntimeException e) {
+                log.error("Couldn't evict in the background", e);
+                return;
+            } finally {
+                evictionLock.unlock();
+            }
+            // the underlying cache has nothing to evict
+            if (evicted == 0)
+                return;
+            if (Thread.currentThread() == schedulingThread && !executeReturned)
+                ranInline = true;
+            else
+                // the rest is evicted by the next task, so a long eviction doesn't occupy the executor
+                submitEviction();
+        }
+    }
+
+    public int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    public int getHighWatermark() {
+        return highWatermark;
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        return cache.contains(key);
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return cache.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return cache.entries();
+    }
+
+    /**
+     * @return the high watermark, see the class doc
+     */
+    @Override
+    public int getCapacity() {
+        return highWatermark;
+    }
+
+    /**
+     * Scales the watermarks and the capacity of the underlying cache, so the high watermark becomes the capacity.
+     * Elements over a reduced low watermark are evicted in the background
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity can't be less than 1!");
+        evictionLock.lock();
+        try {
+            int prevHighWatermark = highWatermark;
+            int cacheCapacity = (int) Math.min(Integer.MAX_VALUE,
+                    (long) cache.getCapacity() * capacity / prevHighWatermark);
+            cache.setCapacity(Math.max(capacity, cacheCapacity));
+            lowWatermark = (int) ((long) lowWatermark * capacity / prevHighWatermark);
+            highWatermark = capacity;
+            evictionTrigger = (int) Math.min((long) lowWatermark + maxBatchSize, highWatermark);
+        } finally {
+            evictionLock.unlock();
+        }
+        scheduleEviction();
+    }
+
+    @Override
+    public boolean isFull() {
+        return cache.getSize() >= highWatermark || cache.isFull();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+}
@@ -0,0 +1,238 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.util.CountingBloomFilter;
+
+/**
+ * Cache that keeps a counting Bloom filter of its keys and answers get, contains and remove of definitely absent keys
+ * without touching the underlying cache. Meant for slow levels of a MultiLevelCache, where most of the probes of a miss
+ * only prove absence. The filter is seeded with the keys the underlying cache has when it's wrapped. Keys put to the
+ * underlying cache bypassing this one are not seen. A filter sized by the capacity is rebuilt from the keys of the
+ * cache when the capacity grows.
+ * Wrap it with SynchronizedCache to use it from several threads
+ *
+ * @author GlaIZier
+ */
+@NotThreadSafe
+public class BloomFilterCache<K, V> implements Cache<K, V> {
+
+    private static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+
+    private final Cache<K, V> cache;
+
+    private final double falsePositiveProbability;
+
+    // true if the filter follows the capacity of the cache
+    private final boolean sizedByCapacity;
+
+    private int expectedKeys;
+
+    private CountingBloomFilter<K> filter;
+
+    /**
+     * Sizes the filter by the capacity of the cache. Use the other constructor for caches that are bounded only by
+     * weight
+     *
+     * @throws IllegalArgumentException if the cache isn't bounded by the number of elements
+     */
+    public BloomFilterCache(@Nonnull Cache<K, V> cache) {
+        this(cache, capacityOf(cache), DEFAULT_FALSE_POSITIVE_PROBABILITY, true);
+    }
+
+    /**
+     * @param expectedKeys max number of keys the cache is expected to hold
+     */
+    public BloomFilterCache(@Nonnull Cache<K, V> cache, int expectedKeys, double falsePositiveProbability) {
+        this(cache, expectedKeys, falsePositiveProbability, false);
+    }
+
+    private BloomFilterCache(Cache<K, V> cache, int expectedKeys, double falsePositiveProbability,
+                             boolean sizedByCapacity) {
+        Objects.requireNonNull(cache, "cache");
+        this.cache = cache;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.sizedByCapacity = sizedByCapacity;
+        rebuildFilter(expectedKeys);
+    }
+
+    private static int capacityOf(Cache<?, ?> cache) {
+        Objects.requireNonNull(cache, "cache");
+        // a cache bounded only by weight has the max capacity, which would make a filter of gigabytes
+        if (cache.getCapacity() == Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Cache isn't bounded by the number of elements! Set expected keys");
+        return cache.getCapacity();
+    }
+
+    private void rebuildFilter(int expectedKeys) {
+        CountingBloomFilter<K> newFilter = new CountingBloomFilter<>(expectedKeys, falsePositiveProbability);
+        try (Stream<K> keys = cache.keys()) {
+            keys.forEach(newFilter::add);
+        }
+        this.filter = newFilter;
+        this.expectedKeys = expectedKeys;
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        return mightContain(key) ? cache.get(key) : Optional.empty();
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        return mightContain(key) && cache.contains(key);
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        if (!mightContain(key))
+            return Optional.empty();
+        Optional<V> removed = cache.remove(key);
+        removed.ifPresent(value -> onRemoved(key));
+        return removed;
+    }
+
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        if (!mightContain(key))
+            return Optional.empty();
+        Optional<V> removed = cache.removeQuietly(key);
+        removed.ifPresent(value -> onRemoved(key));
+        return removed;
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        boolean added = add(key);
+        try {
+            Optional<Map.Entry<K, V>> evicted = cache.put(key, value);
+            evicted.ifPresent(e -> onRemoved(e.getKey()));
+            return evicted;
+        } catch (RuntimeException e) {
+            rollback(key, added);
+            throw e;
+        }
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        boolean added = add(key);
+        try {
+            cache.put(key, value, evicted -> {
+                onRemoved(evicted.getKey());
+                evictedConsumer.accept(evicted);
+            });
+        } catch (RuntimeException e) {
+            rollback(key, added);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        Optional<Map.Entry<K, V>> evicted = cache.evict();
+        evicted.ifPresent(e -> onRemoved(e.getKey()));
+        return evicted;
+    }
+
+    private boolean mightContain(K key) {
+        return filter.mightContain(key);
+    }
+
+    /**
+     * Adds the key to the filter if it's not in the cache yet, so every key is counted once
+     *
+     * @return true if the key has been added
+     */
+    private boolean add(K key) {
+        if (filter.mightContain(key) && cache.contains(key))
+            return false;
+        filter.add(key);
+        return true;
+    }
+
+    private void rollback(K key, boolean added) {
+        // the failed put could have left the key in the cache, so it's removed from the filter only if it's absent
+        if (added && !cache.contains(key))
+            filter.remove(key);
+    }
+
+    private void onRemoved(K key) {
+        filter.remove(key);
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return cache.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return cache.entries();
+    }
+
+    @Override
+    public int getCapacity() {
+        return cache.getCapacity();
+    }
+
+    /**
+     * Rebuilds a filter sized by the capacity if the capacity grows, so the filter keeps its false positive probability
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        cache.setCapacity(capacity);
+        if (sizedByCapacity && capacity > expectedKeys)
+            rebuildFilter(capacity);
+    }
+
+    @Override
+    public boolean isFull() {
+        return cache.isFull();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Keys purged by the underlying cache stay in the filter and only make it less precise
+     */
+    @Override
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+}
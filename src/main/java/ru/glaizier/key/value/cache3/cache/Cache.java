@@ -1,13 +1,25 @@
 package ru.glaizier.key.value.cache3.cache;
 
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
 import ru.glaizier.key.value.cache3.storage.RestrictedStorage;
 
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 
 /**
+ * Read-modify-write operations are built on compute. Thread-safe caches override compute to make all of them atomic,
+ * while the default one is a get followed by a put or a remove. Elements evicted by them are not returned
+ *
  * @author GlaIZier
  */
 public interface Cache<K, V> extends RestrictedStorage<K, V> {
@@ -17,6 +29,118 @@ public interface Cache<K, V> extends RestrictedStorage<K, V> {
      */
     Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value);
 
+    /**
+     * Put the element to the cache and pass every evicted element to the consumer. Unlike put without the consumer,
+     * this one doesn't lose elements when a weight-bounded cache evicts more than one element to make room
+     */
+    default void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        put(key, value).ifPresent(evictedConsumer);
+    }
+
+    /**
+     * Same as put without returning evicted elements, so in-memory implementations don't wrap them
+     */
+    default void putQuietly(@Nonnull K key, @Nonnull V value) {
+        put(key, value, evicted -> {});
+    }
+
+    /**
+     * Replaces the value with the result of the function. Null result removes the element. If the function returns
+     * the same instance it has got, the cache is not written
+     *
+     * @param remappingFunction gets null if there is no element
+     * @return new value or empty if there is no element after the call
+     */
+    default Optional<V> compute(@Nonnull K key,
+                                @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        V oldValue = get(key).orElse(null);
+        V newValue = remappingFunction.apply(key, oldValue);
+        if (newValue == null) {
+            if (oldValue != null)
+                remove(key);
+        } else if (newValue != oldValue) {
+            put(key, newValue);
+        }
+        return Optional.ofNullable(newValue);
+    }
+
+    /**
+     * @param mappingFunction is called only if there is no element. Null result means no element
+     * @return present or computed value
+     */
+    default Optional<V> computeIfAbsent(@Nonnull K key, @Nonnull Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(mappingFunction, "mappingFunction");
+        return compute(key, (k, oldValue) -> oldValue != null ? oldValue : mappingFunction.apply(k));
+    }
+
+    /**
+     * @return present value or empty if the value has been put
+     */
+    default Optional<V> putIfAbsent(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(value, "value");
+        AtomicReference<V> presentValue = new AtomicReference<>();
+        compute(key, (k, oldValue) -> {
+            presentValue.set(oldValue);
+            return oldValue != null ? oldValue : value;
+        });
+        return Optional.ofNullable(presentValue.get());
+    }
+
+    /**
+     * Replaces the value only if it's equal to the old value
+     *
+     * @return true if the value has been replaced
+     */
+    default boolean replace(@Nonnull K key, @Nonnull V oldValue, @Nonnull V newValue) {
+        Objects.requireNonNull(oldValue, "oldValue");
+        Objects.requireNonNull(newValue, "newValue");
+        AtomicBoolean replaced = new AtomicBoolean();
+        compute(key, (k, presentValue) -> {
+            if (!oldValue.equals(presentValue))
+                return presentValue;
+            replaced.set(true);
+            return newValue;
+        });
+        return replaced.get();
+    }
+
+    /**
+     * Puts the value if there is no element or the result of the function of the present and given values otherwise.
+     * Null result removes the element
+     *
+     * @return new value or empty if the element has been removed
+     */
+    default Optional<V> merge(@Nonnull K key, @Nonnull V value,
+                              @Nonnull BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        return compute(key, (k, oldValue) -> oldValue == null ? value : remappingFunction.apply(oldValue, value));
+    }
+
+    /**
+     * Removes the element to move it to another cache, e.g. to another level of a multi level cache. Unlike remove,
+     * it's neither recorded in statistics nor passed to the removal listener
+     *
+     * @return removed value or empty if the key was not found
+     */
+    default Optional<V> removeQuietly(@Nonnull K key) {
+        return remove(key);
+    }
+
+    /**
+     * Streams keys without changing the order of eviction or recording hits
+     */
+    @Override
+    Stream<K> keys();
+
+    /**
+     * Streams elements without changing the order of eviction or recording hits
+     */
+    @Override
+    Stream<Map.Entry<K, V>> entries();
+
     /**
      * Removes first candidate to remove from cache
      *
@@ -24,10 +148,55 @@ public interface Cache<K, V> extends RestrictedStorage<K, V> {
      */
     Optional<Map.Entry<K, V>> evict();
 
+    /**
+     * Same as evict but passes the evicted element to the sink instead of wrapping it
+     *
+     * @return true if an element has been evicted
+     */
+    default boolean evict(@Nonnull BiConsumer<? super K, ? super V> evictedSink) {
+        Optional<Map.Entry<K, V>> evicted = evict();
+        evicted.ifPresent(entry -> evictedSink.accept(entry.getKey(), entry.getValue()));
+        return evicted.isPresent();
+    }
+
     int getCapacity();
 
+    /**
+     * Changes the capacity keeping the elements. Elements over a reduced capacity are evicted incrementally by puts and
+     * clean ups, so the cache can stay over its capacity for a while
+     */
+    void setCapacity(int capacity);
+
     default boolean isFull() {
         return getSize() == getCapacity();
     }
 
+    /**
+     * @return total weight of elements. Equals to the number of elements if the cache is not weight-bounded
+     */
+    default long getWeight() {
+        return getSize();
+    }
+
+    /**
+     * @return max total weight of elements. Equals to the capacity if the cache is not weight-bounded
+     */
+    default long getMaxWeight() {
+        return getCapacity();
+    }
+
+    /**
+     * @return statistics recorded so far. Empty if the cache doesn't record statistics
+     */
+    default CacheStats getStats() {
+        return CacheStats.EMPTY;
+    }
+
+    /**
+     * Performs pending maintenance, e.g. forgets elements collected by GC. Caches call it on their own during writes,
+     * so it's needed only to free resources of an idle cache. Does nothing by default
+     */
+    default void cleanUp() {
+    }
+
 }
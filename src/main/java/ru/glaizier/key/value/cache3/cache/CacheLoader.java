@@ -0,0 +1,20 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Loads values for keys that are absent in a cache or need to be refreshed
+ *
+ * @author GlaIZier
+ */
+@FunctionalInterface
+public interface CacheLoader<K, V> {
+
+    /**
+     * @return loaded value or empty if there is no value for this key at the origin
+     */
+    Optional<V> load(@Nonnull K key);
+
+}
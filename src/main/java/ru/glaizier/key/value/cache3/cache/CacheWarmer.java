@@ -0,0 +1,195 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import static java.util.stream.Collectors.toList;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.storage.StorageException;
+import ru.glaizier.key.value.cache3.storage.file.AbstractFileStorage;
+
+/**
+ * Preloads a cache with elements of a file storage, so the cache doesn't start cold after a restart.
+ * Elements are read in parallel on the fork-join pool and are put in the calling thread in the priority order, so the
+ * cache doesn't need to be thread-safe. Warming up a MultiLevelCache or a ConcurrentMultiLevelCache fills the first
+ * level with the most important elements and pushes the rest to the levels below. Elements that are already in the
+ * lower levels, e.g. in a last level over the same folder, are moved to the first level instead of being copied, so
+ * the levels stay exclusive. Warm up the multi level cache, not its levels, and before it serves other threads.
+ * The budget is the max number of elements and optionally their max weight. Elements that are not in the cache yet
+ * are also bounded by the free room of the cache, so warm-up doesn't evict anything. Reads of ConfinedFileStorage are
+ * confined to its disk worker and are not parallel
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class CacheWarmer<K extends Serializable, V extends Serializable> {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final AbstractFileStorage<K, V> storage;
+
+    private final ForkJoinPool pool;
+
+    private final int maxElements;
+
+    // null if the budget is not weight-bounded
+    @Nullable
+    private final Weigher<K, V> weigher;
+
+    private final long maxWeight;
+
+    public CacheWarmer(@Nonnull AbstractFileStorage<K, V> storage, @Nonnull ForkJoinPool pool, int maxElements) {
+        this(storage, pool, maxElements, null, Long.MAX_VALUE);
+    }
+
+    public CacheWarmer(@Nonnull AbstractFileStorage<K, V> storage, @Nonnull ForkJoinPool pool, int maxElements,
+                       @Nullable Weigher<K, V> weigher, long maxWeight) {
+        Objects.requireNonNull(storage, "storage");
+        Objects.requireNonNull(pool, "pool");
+        if (maxElements <= 0)
+            throw new IllegalArgumentException("Max elements can't be less than 1!");
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("Max weight can't be less than 1!");
+        this.storage = storage;
+        this.pool = pool;
+        this.maxElements = maxElements;
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Warms up with the most recently modified elements first
+     *
+     * @return number of put elements
+     */
+    public int warmUp(@Nonnull Cache<K, V> cache) throws StorageException {
+        return warmUp(cache, storage.getKeysByModifiedTime());
+    }
+
+    /**
+     * @param keys keys in the priority order, the most important first. E.g. keys of a persisted access log.
+     *             Keys absent in the storage are skipped
+     * @return number of put elements
+     */
+    public int warmUp(@Nonnull Cache<K, V> cache, @Nonnull List<K> keys) throws StorageException {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(keys, "keys");
+        List<Cache<K, V>> levels = getLevels(cache);
+        Cache<K, V> firstLevel = levels.get(0);
+        int budget = Math.max(0, cache.getCapacity() - cache.getSize());
+        // keys in the priority order, the ones of the lower levels are moved
+        List<K> selected = new ArrayList<>();
+        Set<K> moved = new HashSet<>();
+        List<K> candidates = new ArrayList<>();
+        for (K key : (Iterable<K>) keys.stream().distinct()::iterator) {
+            if (selected.size() == maxElements)
+                break;
+            if (firstLevel.contains(key))
+                continue;
+            if (levels.size() > 1 && cache.contains(key)) {
+                moved.add(key);
+                selected.add(key);
+            } else if (candidates.size() < budget && storage.contains(key)) {
+                candidates.add(key);
+                selected.add(key);
+            }
+        }
+        Map<K, V> loaded = new HashMap<>();
+        for (Map.Entry<K, V> entry : load(candidates))
+            loaded.put(entry.getKey(), entry.getValue());
+
+        long weightBudget = Math.min(maxWeight, Math.max(0, cache.getMaxWeight() - cache.getWeight()));
+        long weight = 0;
+        int toPut = 0;
+        for (; toPut < selected.size(); toPut++) {
+            V value = loaded.get(selected.get(toPut));
+            // moved elements don't add weight
+            if (weigher != null && value != null) {
+                weight += weigher.weigh(selected.get(toPut), value);
+                if (weight > weightBudget)
+                    break;
+            }
+        }
+        int warmed = 0;
+        // the most important element is put last to be the most recently used one
+        for (int i = toPut - 1; i >= 0; i--) {
+            K key = selected.get(i);
+            V value = moved.contains(key) ? removeFromLowerLevels(levels, key) : loaded.get(key);
+            if (value == null)
+                continue;
+            cache.put(key, value);
+            warmed++;
+        }
+        log.info("Warmed up {} elements from {}", warmed, storage.getFolder());
+        return warmed;
+    }
+
+    private List<Cache<K, V>> getLevels(Cache<K, V> cache) {
+        if (cache instanceof MultiLevelCache)
+            return ((MultiLevelCache<K, V>) cache).getLevels();
+        if (cache instanceof ConcurrentMultiLevelCache)
+            return ((ConcurrentMultiLevelCache<K, V>) cache).getLevels();
+        return Collections.singletonList(cache);
+    }
+
+    /**
+     * Quietly, as the element stays in the cache
+     */
+    @Nullable
+    private static <K, V> V removeFromLowerLevels(List<Cache<K, V>> levels, K key) {
+        V removed = null;
+        for (int levelIndex = 1; levelIndex < levels.size(); levelIndex++) {
+            V levelRemoved = levels.get(levelIndex).removeQuietly(key).orElse(null);
+            if (removed == null)
+                removed = levelRemoved;
+        }
+        return removed;
+    }
+
+    /**
+     * @return found elements in the order of the keys
+     */
+    private List<Map.Entry<K, V>> load(List<K> keys) throws StorageException {
+        try {
+            return pool.submit(() -> keys.parallelStream()
+                    .map(this::loadQuietly)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(toList()))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Warm-up has been interrupted", e);
+        } catch (ExecutionException e) {
+            throw new StorageException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private Optional<Map.Entry<K, V>> loadQuietly(K key) {
+        try {
+            return storage.get(key).map(value -> new AbstractMap.SimpleImmutableEntry<>(key, value));
+        } catch (StorageException e) {
+            // a broken file mustn't fail the whole warm-up
+            log.warn("Couldn't read the element with the key " + key, e);
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,672 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.cache.promotion.AlwaysPromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.promotion.PromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.cache.stats.StatsCounter;
+
+/**
+ * Thread-safe multi level cache without a global lock. Operations on a key are guarded by a lock striped by the key's
+ * hash, so operations on different keys run concurrently and hits of the first level don't take the lock at all.
+ * Levels must be thread-safe themselves (e.g. SynchronizedCache) and should pass evicted elements to the consumer
+ * of put(key, value, consumer) atomically with the eviction, as SynchronizedCache does.
+ * An element evicted from a level is moved to the next level after the lock of the key that caused the eviction is
+ * released. Until then the element is a pending demotion and is served from there. Equal keys can't be present in
+ * different levels or in a level and in pending demotions at the same time.
+ * With a demotion executor, evicted elements are moved to the next levels in the background in batches, so a put
+ * doesn't pay for writing unrelated cold elements to slow levels. At most maxPendingDemotions elements wait for the
+ * background demoter, callers demote their evicted elements themselves until it catches up.
+ * The removal listener gets elements that leave the whole cache, including the ones the background demoter evicts
+ * from the last level.
+ * The stats counter records hits and misses of the whole cache, while every level records its own statistics.
+ * The stats counter must be thread-safe (e.g. ConcurrentStatsCounter).
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+// We don't use local locks for locking (we use locks in the heap)
+@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+public class ConcurrentMultiLevelCache<K extends Serializable, V extends Serializable> implements Cache<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final int DEFAULT_STRIPES = Runtime.getRuntime().availableProcessors() * 16;
+
+    // max number of elements over a reduced capacity of a level moved by one clean up
+    private static final int SHRINK_STEP = 16;
+
+    private final List<Cache<K, V>> levels;
+
+    private final PromotionPolicy<K> promotionPolicy;
+
+    // guard the levels-demotions invariant for the keys of a stripe
+    private final Object[] locks;
+
+    @GuardedBy("locks")
+    private final ConcurrentMap<K, Demotion<K, V>> demotions = new ConcurrentHashMap<>();
+
+    // null if elements are demoted synchronously by the callers
+    @Nullable
+    private final Executor demotionExecutor;
+
+    private final int maxPendingDemotions;
+
+    private final int demotionBatchSize;
+
+    // demotions waiting for the background demoter. Bounded by maxPendingDemotions
+    private final BlockingQueue<Demotion<K, V>> demotionQueue;
+
+    // true if a batch is scheduled or running
+    private final AtomicBoolean demoting = new AtomicBoolean();
+
+    @Nullable
+    private final RemovalListener<K, V> removalListener;
+
+    private final StatsCounter statsCounter;
+
+    /**
+     * Element evicted from a level that waits to be put to the next one. Compared by identity
+     */
+    private static class Demotion<K, V> {
+        private final K key;
+        private final V value;
+        private final int nextLevelIndex;
+
+        private Demotion(K key, V value, int nextLevelIndex) {
+            this.key = key;
+            this.value = value;
+            this.nextLevelIndex = nextLevelIndex;
+        }
+    }
+
+    @SafeVarargs
+    public ConcurrentMultiLevelCache(Cache<K, V>... levels) {
+        this(Arrays.asList(levels));
+    }
+
+    public ConcurrentMultiLevelCache(List<Cache<K, V>> levels) {
+        this(levels, DEFAULT_STRIPES);
+    }
+
+    public ConcurrentMultiLevelCache(List<Cache<K, V>> levels, int stripes) {
+        this(levels, stripes, new AlwaysPromotionPolicy<>());
+    }
+
+    public ConcurrentMultiLevelCache(List<Cache<K, V>> levels, int stripes, PromotionPolicy<K> promotionPolicy) {
+        this(levels, stripes, promotionPolicy, null, 0, 1);
+    }
+
+    /**
+     * @param demotionExecutor    executor that moves evicted elements to the next levels or null to move them
+     *                            synchronously in the calling threads
+     * @param maxPendingDemotions max number of elements waiting for the executor. Callers demote the rest
+     *                            synchronously
+     * @param demotionBatchSize   max number of elements moved by one task of the executor
+     */
+    public ConcurrentMultiLevelCache(List<Cache<K, V>> levels, int stripes, PromotionPolicy<K> promotionPolicy,
+                                     @Nullable Executor demotionExecutor, int maxPendingDemotions,
+                                     int demotionBatchSize) {
+        this(levels, stripes, promotionPolicy, demotionExecutor, maxPendingDemotions, demotionBatchSize, null);
+    }
+
+    public ConcurrentMultiLevelCache(List<Cache<K, V>> levels, int stripes, PromotionPolicy<K> promotionPolicy,
+                                     @Nullable Executor demotionExecutor, int maxPendingDemotions,
+                                     int demotionBatchSize, @Nullable RemovalListener<K, V> removalListener) {
+        this(levels, stripes, promotionPolicy, demotionExecutor, maxPendingDemotions, demotionBatchSize,
+                removalListener, StatsCounter.disabled());
+    }
+
+    public ConcurrentMultiLevelCache(List<Cache<K, V>> levels, int stripes, PromotionPolicy<K> promotionPolicy,
+                                     @Nullable Executor demotionExecutor, int maxPendingDemotions,
+                                     int demotionBatchSize, @Nullable RemovalListener<K, V> removalListener,
+                                     @Nonnull StatsCounter statsCounter) {
+        Objects.requireNonNull(levels, "levels");
+        Objects.requireNonNull(promotionPolicy, "promotionPolicy");
+        Objects.requireNonNull(statsCounter, "statsCounter");
+        if (levels.isEmpty())
+            throw new IllegalArgumentException("Levels must not be empty!");
+        if (stripes <= 0)
+            throw new IllegalArgumentException("Stripes can't be less than 1!");
+        if (maxPendingDemotions < 0)
+            throw new IllegalArgumentException("Max pending demotions can't be negative!");
+        if (demotionBatchSize <= 0)
+            throw new IllegalArgumentException("Demotion batch size can't be less than 1!");
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+        this.promotionPolicy = promotionPolicy;
+        this.demotionExecutor = demotionExecutor;
+        this.maxPendingDemotions = maxPendingDemotions;
+        this.demotionBatchSize = demotionBatchSize;
+        // elements are demoted synchronously if none may wait
+        this.demotionQueue = new LinkedBlockingQueue<>(Math.max(1, maxPendingDemotions));
+        this.removalListener = removalListener;
+        this.statsCounter = statsCounter;
+        // power of two to get a stripe by a mask
+        this.locks = new Object[stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1];
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
+    }
+
+    /**
+     * Searches the first level without locking. Otherwise, searches all levels and pending demotions under the key's
+     * lock and moves the found element to the first level if the promotion policy allows it. Pending demotions are
+     * always moved
+     */
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        return Optional.ofNullable(getOrNull(key));
+    }
+
+    /**
+     * Hits of the first level take neither the key's lock nor allocate
+     */
+    @Override
+    public V getOrNull(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        V firstLevelHit = levels.get(0).getOrNull(key);
+        if (firstLevelHit != null) {
+            statsCounter.recordHit();
+            return firstLevelHit;
+        }
+
+        Queue<Demotion<K, V>> evicted = new ArrayDeque<>();
+        V found = null;
+        synchronized (getLock(key)) {
+            // the element could have been moved to the first level before the lock was acquired
+            int foundLevelIndex = 0;
+            for (; foundLevelIndex < levels.size(); foundLevelIndex++) {
+                found = levels.get(foundLevelIndex).getOrNull(key);
+                if (found != null)
+                    break;
+            }
+            if (found != null && (foundLevelIndex == 0 || !promotionPolicy.hit(key, foundLevelIndex))) {
+                statsCounter.recordHit();
+                return found;
+            }
+
+            V promoted;
+            if (found != null) {
+                // the level could have evicted the element to pending demotions under the lock of another key
+                promoted = levels.get(foundLevelIndex).removeQuietly(key).orElse(null);
+                if (promoted == null)
+                    promoted = removeDemotion(key);
+            } else {
+                promoted = found = removeDemotion(key);
+            }
+            if (promoted != null)
+                levels.get(0).put(key, promoted, demotionConsumer(1, evicted));
+        }
+        if (found != null)
+            statsCounter.recordHit();
+        else
+            statsCounter.recordMiss();
+        scheduleDemotions(evicted, dropped -> {});
+        return found;
+    }
+
+    /**
+     * Puts to the first level under the key's lock and moves evicted elements to lower levels after the lock is
+     * released. Elements evicted from the last level by the background demoter are not returned
+     */
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        List<Map.Entry<K, V>> dropped = new ArrayList<>(1);
+        put(key, value, dropped::add);
+        return dropped.stream().findFirst();
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+
+        Queue<Demotion<K, V>> evicted = new ArrayDeque<>();
+        Optional<V> replaced;
+        synchronized (getLock(key)) {
+            replaced = removeLocked(key);
+            levels.get(0).put(key, value, demotionConsumer(1, evicted));
+        }
+        statsCounter.recordPut();
+        replaced.ifPresent(prevValue -> onRemoval(key, prevValue, RemovalCause.REPLACED));
+        scheduleDemotions(evicted, evictedConsumer);
+    }
+
+    /**
+     * Computes under the key's lock and puts the new value to the first level, so the operations built on compute are
+     * atomic too. If the function returns the instance it has got, the element stays where it is. Elements evicted from
+     * the last level are not returned
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+
+        Queue<Demotion<K, V>> evicted = new ArrayDeque<>();
+        V oldValue;
+        V newValue;
+        RuntimeException failure = null;
+        synchronized (getLock(key)) {
+            oldValue = getLocked(key);
+            try {
+                newValue = remappingFunction.apply(key, oldValue);
+            } catch (RuntimeException e) {
+                // the old value is kept
+                failure = e;
+                newValue = oldValue;
+            }
+            if (newValue != oldValue) {
+                removeLocked(key);
+                if (newValue != null)
+                    levels.get(0).put(key, newValue, demotionConsumer(1, evicted));
+                else
+                    promotionPolicy.remove(key);
+            }
+        }
+        if (newValue != null && newValue != oldValue)
+            statsCounter.recordPut();
+        if (oldValue != null && newValue != oldValue)
+            onRemoval(key, oldValue, newValue == null ? RemovalCause.EXPLICIT : RemovalCause.REPLACED);
+        scheduleDemotions(evicted, dropped -> {});
+        if (failure != null)
+            throw failure;
+        return Optional.ofNullable(newValue);
+    }
+
+    /**
+     * Evicts from the first non-empty level and moves the evicted element to the next levels.
+     * The evicted element is not visible to other threads until it becomes a pending demotion.
+     * Returns the first of elements evicted from the last level, see evict(evictedSink) to get all of them
+     */
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        List<Map.Entry<K, V>> dropped = new ArrayList<>(1);
+        evict((droppedKey, droppedValue) ->
+                dropped.add(new AbstractMap.SimpleImmutableEntry<>(droppedKey, droppedValue)));
+        return dropped.stream().findFirst();
+    }
+
+    /**
+     * Passes every element evicted from the last level to the sink
+     *
+     * @return true if an element has been evicted from a level
+     */
+    @Override
+    public boolean evict(@Nonnull BiConsumer<? super K, ? super V> evictedSink) {
+        Objects.requireNonNull(evictedSink, "evictedSink");
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            Optional<Map.Entry<K, V>> levelEvicted = levels.get(levelIndex).evict();
+            if (levelEvicted.isPresent()) {
+                Queue<Demotion<K, V>> evicted = new ArrayDeque<>();
+                demotionConsumer(levelIndex + 1, evicted).accept(levelEvicted.get());
+                demote(evicted, dropped -> evictedSink.accept(dropped.getKey(), dropped.getValue()));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        promotionPolicy.remove(key);
+        Optional<V> removed;
+        synchronized (getLock(key)) {
+            removed = removeLocked(key);
+        }
+        removed.ifPresent(removedValue -> onRemoval(key, removedValue, RemovalCause.EXPLICIT));
+        return removed;
+    }
+
+    private void onRemoval(K key, V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        if (removalListener == null)
+            return;
+        try {
+            removalListener.onRemoval(key, value, cause);
+        } catch (RuntimeException e) {
+            log.error("Removal listener has failed for the key " + key, e);
+        }
+    }
+
+    /**
+     * Searches all the levels and pending demotions without moving the element
+     */
+    @GuardedBy("locks")
+    @Nullable
+    private V getLocked(K key) {
+        for (Cache<K, V> level : levels) {
+            V levelValue = level.getOrNull(key);
+            if (levelValue != null)
+                return levelValue;
+        }
+        Demotion<K, V> demotion = demotions.get(key);
+        return demotion == null ? null : demotion.value;
+    }
+
+    /**
+     * Removes the element from all the levels and pending demotions, as a level can evict it to pending demotions
+     * under the lock of another key meanwhile. Levels don't count it as a removal, the caller records the cause
+     */
+    @GuardedBy("locks")
+    private Optional<V> removeLocked(K key) {
+        V removed = null;
+        for (Cache<K, V> level : levels) {
+            V levelRemoved = level.removeQuietly(key).orElse(null);
+            if (removed == null)
+                removed = levelRemoved;
+        }
+        V demoted = removeDemotion(key);
+        return Optional.ofNullable(removed != null ? removed : demoted);
+    }
+
+    @GuardedBy("locks")
+    @Nullable
+    private V removeDemotion(K key) {
+        Demotion<K, V> demotion = demotions.remove(key);
+        return demotion == null ? null : demotion.value;
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        if (levels.get(0).contains(key))
+            return true;
+        synchronized (getLock(key)) {
+            return levels.stream().anyMatch(level -> level.contains(key)) || demotions.containsKey(key);
+        }
+    }
+
+    /**
+     * Hands evicted elements over to the background demoter or demotes them in the calling thread if there is no
+     * demoter or it falls behind
+     */
+    private void scheduleDemotions(Queue<Demotion<K, V>> evicted,
+                                   Consumer<Map.Entry<K, V>> lastLevelEvictedConsumer) {
+        if (evicted.isEmpty())
+            return;
+        if (demotionExecutor == null || maxPendingDemotions == 0) {
+            demote(evicted, lastLevelEvictedConsumer);
+            return;
+        }
+        Queue<Demotion<K, V>> overflow = new ArrayDeque<>();
+        Demotion<K, V> demotion;
+        while ((demotion = evicted.poll()) != null) {
+            if (!demotionQueue.offer(demotion))
+                overflow.add(demotion);
+        }
+        scheduleDemotionBatch();
+        demote(overflow, lastLevelEvictedConsumer);
+    }
+
+    /**
+     * Batches run by the executor in the calling thread (e.g. a direct or a caller-runs executor) are run one after
+     * another here rather than each one scheduling the next one recursively
+     */
+    private void scheduleDemotionBatch() {
+        while (!demotionQueue.isEmpty() && demoting.compareAndSet(false, true)) {
+            DemotionBatch batch = new DemotionBatch(Thread.currentThread());
+            try {
+                demotionExecutor.execute(batch);
+            } catch (RuntimeException e) {
+                demoting.set(false);
+                log.warn("Couldn't schedule demotion. Demoting in the calling thread", e);
+                drainDemotions();
+                return;
+            }
+            batch.executeReturned = true;
+            if (!batch.ranInline)
+                return;
+        }
+    }
+
+    private class DemotionBatch implements Runnable {
+        private final Thread schedulingThread;
+        // written before execute returns if the executor runs the batch in the scheduling thread
+        private boolean ranInline;
+        // written by the scheduling thread after execute returns, so a batch it runs later isn't inline
+        private boolean executeReturned;
+
+        private DemotionBatch(Thread schedulingThread) {
+            this.schedulingThread = schedulingThread;
+        }
+
+        @Override
+        public void run() {
+            boolean inline = Thread.currentThread() == schedulingThread && !executeReturned;
+            try {
+                demoteBatch();
+            } finally {
+                demoting.set(false);
+            }
+            if (inline)
+                ranInline = true;
+            else
+                // elements could have been queued after the last poll but before the flag was reset
+                scheduleDemotionBatch();
+        }
+    }
+
+    private void demoteBatch() {
+        // elements the batch pushes out of the next levels are demoted by the batch too
+        Queue<Demotion<K, V>> evicted = new ArrayDeque<>();
+        Demotion<K, V> demotion;
+        for (int i = 0; i < demotionBatchSize && (demotion = demotionQueue.poll()) != null; i++) {
+            evicted.add(demotion);
+            demote(evicted, dropped -> {});
+        }
+    }
+
+    /**
+     * Moves all elements waiting for the background demoter to the next levels in the calling thread
+     */
+    public void drainDemotions() {
+        Queue<Demotion<K, V>> evicted = new ArrayDeque<>();
+        demotionQueue.drainTo(evicted);
+        demote(evicted, dropped -> {});
+    }
+
+    /**
+     * Moves evicted elements to the next levels one by one under their own locks. Elements evicted from the last
+     * level are passed to the removal listener and the consumer
+     */
+    private void demote(Queue<Demotion<K, V>> evicted, Consumer<Map.Entry<K, V>> lastLevelEvictedConsumer) {
+        Demotion<K, V> demotion;
+        while ((demotion = evicted.poll()) != null) {
+            if (demote(demotion, evicted)) {
+                onRemoval(demotion.key, demotion.value, RemovalCause.EVICTED);
+                lastLevelEvictedConsumer.accept(new AbstractMap.SimpleImmutableEntry<>(demotion.key, demotion.value));
+            }
+        }
+    }
+
+    /**
+     * @return true if the element has been evicted from the last level
+     */
+    private boolean demote(Demotion<K, V> demotion, Queue<Demotion<K, V>> evicted) {
+        synchronized (getLock(demotion.key)) {
+            // the element has been read, removed or put again meanwhile
+            if (demotions.get(demotion.key) != demotion)
+                return false;
+            try {
+                // an element evicted by evict() could have been put again before it became a pending demotion
+                if (levels.stream().anyMatch(level -> level.contains(demotion.key)))
+                    return false;
+                if (demotion.nextLevelIndex >= levels.size()) {
+                    promotionPolicy.remove(demotion.key);
+                    return true;
+                }
+                levels.get(demotion.nextLevelIndex).put(demotion.key, demotion.value,
+                        demotionConsumer(demotion.nextLevelIndex + 1, evicted));
+            } catch (RuntimeException e) {
+                // the caller's operation has succeeded, so the element is dropped rather than the exception thrown
+                log.error("Couldn't move the element with the key " + demotion.key + " to the level "
+                        + demotion.nextLevelIndex, e);
+            } finally {
+                demotions.remove(demotion.key, demotion);
+            }
+            return false;
+        }
+    }
+
+    private Consumer<Map.Entry<K, V>> demotionConsumer(int nextLevelIndex, Queue<Demotion<K, V>> evicted) {
+        return evictedEntry -> {
+            Demotion<K, V> demotion = new Demotion<>(evictedEntry.getKey(), evictedEntry.getValue(), nextLevelIndex);
+            demotions.put(demotion.key, demotion);
+            evicted.add(demotion);
+        };
+    }
+
+    private Object getLock(K key) {
+        int hash = key.hashCode();
+        // spread higher bits as ConcurrentHashMap does
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    @Override
+    public int getSize() {
+        return levels.stream()
+                .mapToInt(Cache::getSize)
+                .reduce(demotions.size(), Integer::sum);
+    }
+
+    /**
+     * Concatenates streams of the levels and pending demotions. An element moved between levels during the traversal
+     * can be seen twice or not seen at all
+     */
+    @Override
+    public Stream<K> keys() {
+        return Stream.concat(
+                levels.stream()
+                        .map(Cache::keys)
+                        .reduce(Stream::concat)
+                        .orElseGet(Stream::empty),
+                demotions.keySet().stream());
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return Stream.concat(
+                levels.stream()
+                        .map(Cache::entries)
+                        .reduce(Stream::concat)
+                        .orElseGet(Stream::empty),
+                demotions.values().stream()
+                        .map(demotion -> new AbstractMap.SimpleImmutableEntry<>(demotion.key, demotion.value)));
+    }
+
+    @Override
+    public int getCapacity() {
+        return (int) Math.min(Integer.MAX_VALUE, levels.stream()
+                .mapToLong(Cache::getCapacity)
+                .reduce(0, ConcurrentMultiLevelCache::saturatedSum));
+    }
+
+    /**
+     * Resizes the levels in proportion to their capacities. Elements over reduced capacities of levels are moved to the
+     * next levels by puts and clean ups
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        MultiLevelCache.setLevelCapacities(levels, capacity);
+    }
+
+    @Override
+    public long getWeight() {
+        return levels.stream()
+                .mapToLong(Cache::getWeight)
+                .reduce(0, ConcurrentMultiLevelCache::saturatedSum);
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return levels.stream()
+                .mapToLong(Cache::getMaxWeight)
+                .reduce(0, ConcurrentMultiLevelCache::saturatedSum);
+    }
+
+    @Override
+    public boolean isFull() {
+        return levels.stream().allMatch(Cache::isFull);
+    }
+
+    /**
+     * Moves a few elements over reduced capacities of levels to the next levels and cleans the levels up
+     */
+    @Override
+    public void cleanUp() {
+        Queue<Demotion<K, V>> evicted = new ArrayDeque<>();
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            Cache<K, V> level = levels.get(levelIndex);
+            Consumer<Map.Entry<K, V>> demotionConsumer = demotionConsumer(levelIndex + 1, evicted);
+            for (int i = 0; i < SHRINK_STEP && level.getSize() > level.getCapacity(); i++) {
+                Optional<Map.Entry<K, V>> levelEvicted = level.evict();
+                if (!levelEvicted.isPresent())
+                    break;
+                demotionConsumer.accept(levelEvicted.get());
+            }
+            // a level over its capacity would evict elements by its clean up instead of moving them
+            if (level.getSize() <= level.getCapacity())
+                level.cleanUp();
+        }
+        scheduleDemotions(evicted, dropped -> {});
+    }
+
+    /**
+     * @return unmodifiable list of levels, starting with the first one
+     */
+    public List<Cache<K, V>> getLevels() {
+        return levels;
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return statsCounter.snapshot();
+    }
+
+    /**
+     * @return statistics of every level, starting with the first one
+     */
+    public List<CacheStats> getLevelStats() {
+        return levels.stream()
+                .map(Cache::getStats)
+                .collect(Collectors.toList());
+    }
+
+    private static long saturatedSum(long one, long another) {
+        long sum = one + another;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+}
@@ -0,0 +1,173 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.metrics.LatencyHistogram;
+import ru.glaizier.key.value.cache3.metrics.Operation;
+
+/**
+ * Cache that records latencies of get, put, evict and remove of the underlying cache to histograms.
+ * Compute and the operations built on it are recorded as puts. Failed operations are recorded too.
+ * Thread-safe if the underlying cache is thread-safe
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class InstrumentedCache<K, V> implements Cache<K, V> {
+
+    private final Cache<K, V> cache;
+
+    private final Map<Operation, LatencyHistogram> histograms;
+
+    public InstrumentedCache(@Nonnull Cache<K, V> cache) {
+        Objects.requireNonNull(cache, "cache");
+        this.cache = cache;
+        this.histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values())
+            histograms.put(operation, new LatencyHistogram());
+    }
+
+    /**
+     * Records to the histograms of another instrumented cache. Used for views of the same cache
+     */
+    InstrumentedCache(Cache<K, V> cache, InstrumentedCache<?, ?> histogramsOwner) {
+        this.cache = cache;
+        this.histograms = histogramsOwner.histograms;
+    }
+
+    public LatencyHistogram getHistogram(@Nonnull Operation operation) {
+        Objects.requireNonNull(operation, "operation");
+        return histograms.get(operation);
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        long start = System.nanoTime();
+        try {
+            return cache.get(key);
+        } finally {
+            histograms.get(Operation.GET).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        long start = System.nanoTime();
+        try {
+            return cache.put(key, value);
+        } finally {
+            histograms.get(Operation.PUT).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        long start = System.nanoTime();
+        try {
+            cache.put(key, value, evictedConsumer);
+        } finally {
+            histograms.get(Operation.PUT).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        long start = System.nanoTime();
+        try {
+            return cache.compute(key, remappingFunction);
+        } finally {
+            histograms.get(Operation.PUT).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        long start = System.nanoTime();
+        try {
+            return cache.evict();
+        } finally {
+            histograms.get(Operation.EVICT).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        long start = System.nanoTime();
+        try {
+            return cache.remove(key);
+        } finally {
+            histograms.get(Operation.REMOVE).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        return cache.removeQuietly(key);
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        return cache.contains(key);
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return cache.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return cache.entries();
+    }
+
+    @Override
+    public int getCapacity() {
+        return cache.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        cache.setCapacity(capacity);
+    }
+
+    @Override
+    public boolean isFull() {
+        return cache.isFull();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+}
@@ -0,0 +1,220 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.metrics.MissRatioSnapshot;
+
+/**
+ * Periodically moves capacity between levels of a multi level cache, keeping the sum of their capacities, so the
+ * sizes of the levels follow the traffic. The cache is wrapped in a MissRatioTrackingCache, whose curve of the gets of
+ * the whole cache estimates the hits H(c) of the first levels of total capacity c, as the levels evict to each other
+ * like one LRU cache. So the hits of level i are H(c1 + ... + ci) - H(c1 + ... + ci-1).
+ * Moving capacity keeps the total capacity and so the hits of the whole cache, it only moves hits between levels.
+ * Deeper levels are slower, so a step of capacity is moved to the level that moves the most hits up, counting a hit
+ * once per level it moves up by, if they are more than a share of the gets. Otherwise, a step of an upper level whose
+ * last step moves fewer hits than half of that share is moved down, so capacity of the upper levels, e.g. RAM, that
+ * hardly serves anything is given back. The gap between the shares keeps a step from moving back and forth. Max
+ * capacities, e.g. the memory budget, bound the levels. At most one step is moved per period and the curve is reset
+ * after every period, so every decision is made on the traffic since the previous one.
+ * The first level wins ties of moves up and gives capacity back first. Shrunk levels move their overflow to the next
+ * levels with the clean ups of the cache and with puts.
+ * The cache and its levels must be thread-safe, e.g. ConcurrentMultiLevelCache of SynchronizedCaches. The curve
+ * should be built for the sum of the capacities
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class LevelRebalancer<K, V> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    // share of the gets a step must move up, so a step that hardly moves hits isn't worth moving elements
+    private static final double MIN_MOVED_HITS = 0.01;
+
+    // share of the gets a step may move down, so capacity that has just been moved up isn't moved back
+    private static final double MAX_MOVED_DOWN_HITS = MIN_MOVED_HITS / 2;
+
+    private final MissRatioTrackingCache<K, V> cache;
+
+    private final List<Cache<K, V>> levels;
+
+    private final List<Integer> maxCapacities;
+
+    private final int step;
+
+    private final ScheduledFuture<?> periodicRebalance;
+
+    // only one rebalance at a time
+    private final Lock rebalanceLock = new ReentrantLock();
+
+    /**
+     * @param cache         multi level cache of the levels, which records the stream of gets of the whole cache
+     * @param levels        levels of the cache, starting with the first one
+     * @param maxCapacities max capacity of every level, e.g. the memory and the disk budgets
+     * @param step          number of elements moved between levels by one rebalance
+     * @param scheduler     executes rebalances. Isn't shut down by the rebalancer
+     */
+    public LevelRebalancer(@Nonnull MissRatioTrackingCache<K, V> cache, @Nonnull List<? extends Cache<K, V>> levels,
+                           @Nonnull List<Integer> maxCapacities, int step, long period, @Nonnull TimeUnit unit,
+                           @Nonnull ScheduledExecutorService scheduler) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(levels, "levels");
+        Objects.requireNonNull(maxCapacities, "maxCapacities");
+        Objects.requireNonNull(unit, "unit");
+        Objects.requireNonNull(scheduler, "scheduler");
+        if (levels.size() < 2)
+            throw new IllegalArgumentException("Levels can't be less than 2!");
+        if (maxCapacities.size() != levels.size())
+            throw new IllegalArgumentException("Every level must have a max capacity!");
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            if (maxCapacities.get(levelIndex) < levels.get(levelIndex).getCapacity())
+                throw new IllegalArgumentException("Max capacity can't be less than capacity of the level!");
+        }
+        if (step <= 0)
+            throw new IllegalArgumentException("Step can't be less than 1!");
+        if (period <= 0)
+            throw new IllegalArgumentException("Period must be positive!");
+        this.cache = cache;
+        this.levels = Collections.unmodifiableList(new ArrayList<>(levels));
+        this.maxCapacities = Collections.unmodifiableList(new ArrayList<>(maxCapacities));
+        this.step = step;
+        this.periodicRebalance = scheduler.scheduleWithFixedDelay(this::rebalanceQuietly, period, period, unit);
+    }
+
+    /**
+     * Moves a step of capacity up if it pays off or down if it hardly serves anything and starts a new period of
+     * measurements
+     *
+     * @return true if capacity has been moved
+     */
+    public boolean rebalance() {
+        rebalanceLock.lock();
+        try {
+            MissRatioSnapshot snapshot = cache.getMissRatioCurve().snapshot();
+            cache.getMissRatioCurve().reset();
+            return moveUp(snapshot) || moveDown(snapshot);
+        } finally {
+            rebalanceLock.unlock();
+        }
+    }
+
+    /**
+     * @return capacities of the levels, starting with the first one
+     */
+    public List<Integer> getCapacities() {
+        List<Integer> capacities = new ArrayList<>(levels.size());
+        for (Cache<K, V> level : levels)
+            capacities.add(level.getCapacity());
+        return capacities;
+    }
+
+    /**
+     * Stops periodic rebalances. Capacities of the levels stay as they are
+     */
+    @Override
+    public void close() {
+        periodicRebalance.cancel(false);
+    }
+
+    private void rebalanceQuietly() {
+        try {
+            rebalance();
+        } catch (RuntimeException e) {
+            log.error("Couldn't rebalance levels", e);
+        }
+    }
+
+    private boolean moveUp(MissRatioSnapshot snapshot) {
+        int receiver = -1;
+        int donor = -1;
+        double bestMovedHits = MIN_MOVED_HITS * snapshot.getTotal();
+        // capacity moved up from the donor grows the total capacity of the levels from the receiver to the donor
+        for (int growing = 0; growing < levels.size() - 1; growing++) {
+            if (levels.get(growing).getCapacity() + step > maxCapacities.get(growing))
+                continue;
+            long capacityAbove = 0;
+            for (int levelIndex = 0; levelIndex < growing; levelIndex++)
+                capacityAbove += levels.get(levelIndex).getCapacity();
+            double movedHits = 0;
+            for (int shrinking = growing + 1; shrinking < levels.size(); shrinking++) {
+                capacityAbove += levels.get(shrinking - 1).getCapacity();
+                // hits of level shrinking - 1 and the levels above it that have been hits of the levels below
+                movedHits += hits(snapshot, capacityAbove + step) - hits(snapshot, capacityAbove);
+                if (levels.get(shrinking).getCapacity() > step && movedHits > bestMovedHits) {
+                    receiver = growing;
+                    donor = shrinking;
+                    bestMovedHits = movedHits;
+                }
+            }
+        }
+        if (receiver == -1)
+            return false;
+        move(donor, receiver);
+        log.info("Moved {} elements of capacity from level {} to level {}: estimated {} hits moved up",
+                step, donor, receiver, Math.round(bestMovedHits));
+        return true;
+    }
+
+    private boolean moveDown(MissRatioSnapshot snapshot) {
+        int receiver = -1;
+        int donor = -1;
+        double bestMovedHits = MAX_MOVED_DOWN_HITS * snapshot.getTotal();
+        // capacity moved down from the donor shrinks the total capacity of the levels from the donor to the receiver
+        for (int shrinking = 0; shrinking < levels.size() - 1; shrinking++) {
+            if (levels.get(shrinking).getCapacity() <= step)
+                continue;
+            long capacityAbove = 0;
+            for (int levelIndex = 0; levelIndex < shrinking; levelIndex++)
+                capacityAbove += levels.get(levelIndex).getCapacity();
+            double movedHits = 0;
+            for (int growing = shrinking + 1; growing < levels.size(); growing++) {
+                capacityAbove += levels.get(growing - 1).getCapacity();
+                // hits of the last step of level growing - 1 and the levels above it
+                movedHits += hits(snapshot, capacityAbove) - hits(snapshot, capacityAbove - step);
+                if (levels.get(growing).getCapacity() + step <= maxCapacities.get(growing)
+                        && movedHits < bestMovedHits) {
+                    receiver = growing;
+                    donor = shrinking;
+                    bestMovedHits = movedHits;
+                }
+            }
+        }
+        if (receiver == -1)
+            return false;
+        move(donor, receiver);
+        log.info("Moved {} elements of capacity from level {} to level {}: estimated {} hits moved down",
+                step, donor, receiver, Math.round(bestMovedHits));
+        return true;
+    }
+
+    private void move(int donor, int receiver) {
+        // shrink first, so the sum of capacities never exceeds the budget
+        Cache<K, V> donorLevel = levels.get(donor);
+        donorLevel.setCapacity(donorLevel.getCapacity() - step);
+        Cache<K, V> receiverLevel = levels.get(receiver);
+        receiverLevel.setCapacity(receiverLevel.getCapacity() + step);
+        cache.cleanUp();
+    }
+
+    /**
+     * @return estimated hits of the first levels of the total capacity
+     */
+    private static double hits(MissRatioSnapshot snapshot, long capacity) {
+        return snapshot.getTotal() * snapshot.getHitRatio((int) Math.min(Integer.MAX_VALUE, capacity));
+    }
+}
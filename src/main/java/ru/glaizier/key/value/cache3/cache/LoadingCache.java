@@ -0,0 +1,431 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.cache.stats.StatsCounter;
+
+/**
+ * Cache that loads absent values with the loader and refreshes values asynchronously after they have been written
+ * some time ago. A read of a value that needs to be refreshed returns the current value immediately and triggers one
+ * reload in the background, so hot keys never turn into a synchronous miss.
+ * Reloads are put to the underlying cache from the executor's threads, so the underlying cache must be thread-safe
+ * (e.g. SynchronizedCache).
+ * With a negative cache, keys the loader hasn't found are not loaded again until their marks expire.
+ * Write times of keys that have left the underlying cache bypassing this cache (e.g. evicted in the background or
+ * after a shrink) are swept once there are twice as many of them as elements in the underlying cache.
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+// We don't use local locks for locking (we use locks in the heap)
+@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+public class LoadingCache<K, V> implements Cache<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final long NO_REFRESH = -1;
+
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 16);
+
+    // write times are not swept while there are fewer of them
+    private static final int MIN_SWEEP_SIZE = 64;
+
+    private final Cache<K, V> cache;
+
+    private final CacheLoader<K, V> loader;
+
+    private final long refreshAfterWriteNanos;
+
+    private final Executor executor;
+
+    private final LongSupplier ticker;
+
+    // null if misses of the loader are not cached
+    @Nullable
+    private final NegativeCache<K> negativeCache;
+
+    // hits and misses of get and load times
+    private final StatsCounter statsCounter;
+
+    // the last write for every key in the cache
+    private final ConcurrentMap<K, WriteTime> writeTimes = new ConcurrentHashMap<>();
+
+    // guard a write to the underlying cache together with its write time, so a reload can check that the key hasn't
+    // been written and put the loaded value in one step. Striped by the key's hash
+    private final Object[] locks = new Object[STRIPES];
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    // loads and reloads that are in progress. Used to load every key only once at a time
+    private final ConcurrentMap<K, CompletableFuture<Optional<V>>> loads = new ConcurrentHashMap<>();
+
+    public LoadingCache(@Nonnull Cache<K, V> cache, @Nonnull CacheLoader<K, V> loader) {
+        this(cache, loader, NO_REFRESH, TimeUnit.NANOSECONDS, ForkJoinPool.commonPool(), System::nanoTime, null,
+                StatsCounter.disabled());
+    }
+
+    public LoadingCache(@Nonnull Cache<K, V> cache, @Nonnull CacheLoader<K, V> loader,
+                        @Nonnull NegativeCache<K> negativeCache) {
+        this(cache, loader, NO_REFRESH, TimeUnit.NANOSECONDS, ForkJoinPool.commonPool(), System::nanoTime,
+                Objects.requireNonNull(negativeCache, "negativeCache"), StatsCounter.disabled());
+    }
+
+    public LoadingCache(@Nonnull Cache<K, V> cache, @Nonnull CacheLoader<K, V> loader,
+                        long refreshAfterWrite, @Nonnull TimeUnit unit) {
+        this(cache, loader, refreshAfterWrite, unit, ForkJoinPool.commonPool());
+    }
+
+    public LoadingCache(@Nonnull Cache<K, V> cache, @Nonnull CacheLoader<K, V> loader,
+                        long refreshAfterWrite, @Nonnull TimeUnit unit, @Nonnull Executor executor) {
+        this(cache, loader, refreshAfterWrite, unit, executor, null);
+    }
+
+    /**
+     * @param negativeCache keys the loader hasn't found recently or null to call the loader on every miss
+     */
+    public LoadingCache(@Nonnull Cache<K, V> cache, @Nonnull CacheLoader<K, V> loader,
+                        long refreshAfterWrite, @Nonnull TimeUnit unit, @Nonnull Executor executor,
+                        @Nullable NegativeCache<K> negativeCache) {
+        this(cache, loader, refreshAfterWrite, unit, executor, negativeCache, StatsCounter.disabled());
+    }
+
+    public LoadingCache(@Nonnull Cache<K, V> cache, @Nonnull CacheLoader<K, V> loader,
+                        long refreshAfterWrite, @Nonnull TimeUnit unit, @Nonnull Executor executor,
+                        @Nullable NegativeCache<K> negativeCache, @Nonnull StatsCounter statsCounter) {
+        this(cache, loader, refreshAfterWrite, unit, executor, System::nanoTime, negativeCache, statsCounter);
+        if (refreshAfterWrite <= 0)
+            throw new IllegalArgumentException("Refresh after write must be positive!");
+    }
+
+    LoadingCache(Cache<K, V> cache, CacheLoader<K, V> loader, long refreshAfterWrite, TimeUnit unit,
+                 Executor executor, LongSupplier ticker, @Nullable NegativeCache<K> negativeCache,
+                 StatsCounter statsCounter) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(loader, "loader");
+        Objects.requireNonNull(unit, "unit");
+        Objects.requireNonNull(executor, "executor");
+        Objects.requireNonNull(ticker, "ticker");
+        Objects.requireNonNull(statsCounter, "statsCounter");
+        this.cache = cache;
+        this.loader = loader;
+        this.refreshAfterWriteNanos = refreshAfterWrite == NO_REFRESH ? NO_REFRESH : unit.toNanos(refreshAfterWrite);
+        this.executor = executor;
+        this.ticker = ticker;
+        this.negativeCache = negativeCache;
+        this.statsCounter = statsCounter;
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
+    }
+
+    /**
+     * Returns the cached value and triggers an asynchronous reload if the value is old enough. Loads the value
+     * synchronously if it's absent and not known to be absent at the origin.
+     */
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Optional<V> cached = cache.get(key);
+        if (cached.isPresent()) {
+            statsCounter.recordHit();
+            if (needsRefresh(key))
+                refresh(key);
+            return cached;
+        }
+        statsCounter.recordMiss();
+        return load(key);
+    }
+
+    /**
+     * Reloads the value for the key asynchronously. The current value (if any) is served until the reload finishes.
+     * Does nothing if the key is already being loaded.
+     */
+    public void refresh(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        CompletableFuture<Optional<V>> reload = new CompletableFuture<>();
+        if (loads.putIfAbsent(key, reload) != null)
+            return;
+        WriteTime prevWriteTime = writeTimes.get(key);
+        try {
+            executor.execute(() -> reload(key, prevWriteTime, reload));
+        } catch (RuntimeException e) {
+            loads.remove(key, reload);
+            reload.completeExceptionally(e);
+            log.warn("Couldn't schedule refresh of the key " + key, e);
+        }
+    }
+
+    private void reload(K key, @Nullable WriteTime prevWriteTime, CompletableFuture<Optional<V>> reload) {
+        long start = ticker.getAsLong();
+        try {
+            Optional<V> loaded = loader.load(key);
+            statsCounter.recordLoadSuccess(ticker.getAsLong() - start);
+            List<K> evicted = new ArrayList<>();
+            synchronized (getLock(key)) {
+                // don't overwrite the value if it has been written by somebody else during the reload
+                if (writeTimes.get(key) == prevWriteTime) {
+                    if (loaded.isPresent()) {
+                        putLocked(key, loaded.get(), e -> evicted.add(e.getKey()));
+                    } else {
+                        writeTimes.remove(key);
+                        cache.remove(key);
+                        markAbsent(key);
+                    }
+                }
+            }
+            forgetEvicted(evicted);
+            sweepWriteTimesIfNeeded();
+            reload.complete(loaded);
+        } catch (RuntimeException e) {
+            // keep serving the stale value. The next read will try to refresh it again
+            statsCounter.recordLoadFailure(ticker.getAsLong() - start);
+            log.warn("Couldn't refresh the key " + key, e);
+            reload.completeExceptionally(e);
+        } finally {
+            loads.remove(key, reload);
+        }
+    }
+
+    private Optional<V> load(K key) {
+        if (negativeCache != null && negativeCache.isAbsent(key))
+            return Optional.empty();
+        CompletableFuture<Optional<V>> newLoad = new CompletableFuture<>();
+        CompletableFuture<Optional<V>> load = loads.putIfAbsent(key, newLoad);
+        if (load != null)
+            return load.join();
+
+        long start = ticker.getAsLong();
+        try {
+            Optional<V> loaded = loader.load(key);
+            statsCounter.recordLoadSuccess(ticker.getAsLong() - start);
+            if (loaded.isPresent())
+                put(key, loaded.get());
+            else
+                markAbsent(key);
+            newLoad.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            statsCounter.recordLoadFailure(ticker.getAsLong() - start);
+            newLoad.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, newLoad);
+        }
+    }
+
+    private void markAbsent(K key) {
+        if (negativeCache != null)
+            negativeCache.markAbsent(key);
+    }
+
+    private boolean needsRefresh(K key) {
+        if (refreshAfterWriteNanos == NO_REFRESH)
+            return false;
+        WriteTime writeTime = writeTimes.get(key);
+        // the value was put to the underlying cache bypassing this cache
+        if (writeTime == null)
+            return true;
+        return ticker.getAsLong() - writeTime.nanos >= refreshAfterWriteNanos;
+    }
+
+    private Object getLock(K key) {
+        int hash = key.hashCode();
+        // spread higher bits as ConcurrentHashMap does
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    @GuardedBy("locks")
+    private void putLocked(K key, V value, Consumer<Map.Entry<K, V>> evictedConsumer) {
+        if (negativeCache != null)
+            negativeCache.invalidate(key);
+        writeTimes.put(key, new WriteTime(ticker.getAsLong()));
+        cache.put(key, value, evictedConsumer);
+    }
+
+    // an evicted key may have been put again concurrently, so its write time is removed only if it's still absent.
+    // Must be called without holding a lock, as the locks of evicted keys are taken one by one
+    private void forgetEvicted(Collection<K> evicted) {
+        for (K key : evicted) {
+            synchronized (getLock(key)) {
+                if (!cache.contains(key))
+                    writeTimes.remove(key);
+            }
+        }
+    }
+
+    // a write of a new key is the only way for write times to grow, so it's enough to check them after writes
+    private void sweepWriteTimesIfNeeded() {
+        int size = writeTimes.size();
+        if (size <= 2 * MIN_SWEEP_SIZE || size <= 2 * cache.getSize() || !sweeping.compareAndSet(false, true))
+            return;
+        try {
+            forgetEvicted(writeTimes.keySet());
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        List<Map.Entry<K, V>> evicted = new ArrayList<>();
+        put(key, value, evicted::add);
+        return evicted.stream().findFirst();
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        List<K> evictedKeys = new ArrayList<>();
+        synchronized (getLock(key)) {
+            putLocked(key, value, evicted -> {
+                evictedKeys.add(evicted.getKey());
+                evictedConsumer.accept(evicted);
+            });
+        }
+        forgetEvicted(evictedKeys);
+        sweepWriteTimesIfNeeded();
+    }
+
+    /**
+     * Computes in the underlying cache without loading, so the function gets null for a value that hasn't been loaded
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        Optional<V> computed;
+        synchronized (getLock(key)) {
+            if (negativeCache != null)
+                negativeCache.invalidate(key);
+            // a reload in progress mustn't overwrite the computed value
+            writeTimes.put(key, new WriteTime(ticker.getAsLong()));
+            computed = cache.compute(key, remappingFunction);
+            if (!computed.isPresent())
+                writeTimes.remove(key);
+        }
+        // the underlying compute doesn't return what it has evicted
+        sweepWriteTimesIfNeeded();
+        return computed;
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        Optional<Map.Entry<K, V>> evicted = cache.evict();
+        evicted.ifPresent(e -> forgetEvicted(Collections.singletonList(e.getKey())));
+        return evicted;
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        synchronized (getLock(key)) {
+            writeTimes.remove(key);
+            return cache.remove(key);
+        }
+    }
+
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        synchronized (getLock(key)) {
+            writeTimes.remove(key);
+            return cache.removeQuietly(key);
+        }
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        return cache.contains(key);
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return cache.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return cache.entries();
+    }
+
+    @Override
+    public int getCapacity() {
+        return cache.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        cache.setCapacity(capacity);
+    }
+
+    @Override
+    public boolean isFull() {
+        return cache.isFull();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return statsCounter.snapshot();
+    }
+
+    @Override
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    // compared by identity, so a reload can tell a write from another one made at the same time
+    private static final class WriteTime {
+
+        private final long nanos;
+
+        private WriteTime(long nanos) {
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,524 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import static java.lang.String.format;
+import java.lang.invoke.MethodHandles;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.cache.stats.StatsCounter;
+
+/**
+ * In-memory LRU cache that fuses the storage and the strategy of a SimpleCache into one hash table. A node of the table
+ * holds the key, the value, the link of its bucket and the links of the access order, so every operation hashes the
+ * key once and an element costs one object instead of the entries of a storage map, a strategy map and a list node.
+ * Bounded by the number of elements, by their total weight or by both, like SimpleCache.
+ * Wrap it with SynchronizedCache to use it from several threads
+ *
+ * @author GlaIZier
+ */
+@NotThreadSafe
+public class LruMemoryCache<K, V> implements Cache<K, V> {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final int MIN_TABLE_SIZE = 16;
+
+    private static final int MAX_TABLE_SIZE = 1 << 30;
+
+    private static final float LOAD_FACTOR = 0.75f;
+
+    // max number of elements over a reduced capacity evicted by one put or clean up
+    private static final int SHRINK_STEP = 16;
+
+    // volatile, so a capacity set from another thread (e.g. by JMX) is seen by the next put. The cache itself isn't
+    // thread-safe, so a put concurrent with the change may still use the previous capacity
+    private volatile int capacity;
+
+    // null if the cache is not weight-bounded
+    @Nullable
+    private final Weigher<K, V> weigher;
+
+    private final long maxWeight;
+
+    private long weight;
+
+    private final StatsCounter statsCounter;
+
+    @Nullable
+    private final RemovalListener<K, V> removalListener;
+
+    private Node<K, V>[] table;
+
+    private int size;
+
+    // the least recently used
+    @Nullable
+    private Node<K, V> head;
+
+    // the most recently used
+    @Nullable
+    private Node<K, V> tail;
+
+    private static class Node<K, V> {
+        private final K key;
+        private final int hash;
+        private V value;
+        // next node of the bucket
+        private Node<K, V> next;
+        // less and more recently used nodes
+        private Node<K, V> before;
+        private Node<K, V> after;
+
+        private Node(K key, int hash, V value, Node<K, V> next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    public LruMemoryCache(int capacity) {
+        this(capacity, null, Long.MAX_VALUE);
+    }
+
+    public LruMemoryCache(int capacity, @Nonnull StatsCounter statsCounter) {
+        this(capacity, null, Long.MAX_VALUE, statsCounter, null);
+    }
+
+    public LruMemoryCache(@Nonnull Weigher<K, V> weigher, long maxWeight) {
+        this(Integer.MAX_VALUE, Objects.requireNonNull(weigher, "weigher"), maxWeight);
+    }
+
+    public LruMemoryCache(int capacity, @Nullable Weigher<K, V> weigher, long maxWeight) {
+        this(capacity, weigher, maxWeight, StatsCounter.disabled(), null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public LruMemoryCache(int capacity, @Nullable Weigher<K, V> weigher, long maxWeight,
+                          @Nonnull StatsCounter statsCounter, @Nullable RemovalListener<K, V> removalListener) {
+        Objects.requireNonNull(statsCounter, "statsCounter");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity can't be less than 1!");
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("Max weight can't be less than 1!");
+        this.capacity = capacity;
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        this.statsCounter = statsCounter;
+        this.removalListener = removalListener;
+        // tables for big capacities grow on demand
+        this.table = (Node<K, V>[]) new Node<?, ?>[tableSizeFor(Math.min(capacity, MIN_TABLE_SIZE * 64) / LOAD_FACTOR)];
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        return Optional.ofNullable(getOrNull(key));
+    }
+
+    @Override
+    public V getOrNull(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Node<K, V> node = find(key, hash(key));
+        if (node == null) {
+            statsCounter.recordMiss();
+            return null;
+        }
+        moveToTail(node);
+        statsCounter.recordHit();
+        return node.value;
+    }
+
+    /**
+     * A weight-bounded cache or a cache over its reduced capacity can evict more than one element during put.
+     * Only the first one is returned in this case. Use put with a consumer to get all of them
+     */
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        if (weigher != null || size > capacity) {
+            List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+            put(key, value, evicted::add);
+            return evicted.stream().findFirst();
+        }
+
+        int hash = hash(key);
+        Node<K, V> node = find(key, hash);
+        if (node != null) {
+            replace(node, value);
+            return Optional.empty();
+        }
+        Optional<Map.Entry<K, V>> evicted = size >= capacity ? evict() : Optional.empty();
+        insert(key, hash, value);
+        statsCounter.recordPut();
+        return evicted;
+    }
+
+    @Override
+    public void putQuietly(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        putToSink(key, value, (evictedKey, evictedValue) -> {});
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        putToSink(key, value, (evictedKey, evictedValue) ->
+                evictedConsumer.accept(new AbstractMap.SimpleImmutableEntry<>(evictedKey, evictedValue)));
+    }
+
+    private void putToSink(K key, V value, BiConsumer<? super K, ? super V> evictedSink) {
+        shrink(evictedSink);
+        if (weigher != null) {
+            putWeighted(key, value, evictedSink);
+            return;
+        }
+
+        int hash = hash(key);
+        Node<K, V> node = find(key, hash);
+        if (node != null) {
+            replace(node, value);
+            return;
+        }
+        if (size >= capacity)
+            evict(evictedSink);
+        insert(key, hash, value);
+        statsCounter.recordPut();
+    }
+
+    private void putWeighted(K key, V value, BiConsumer<? super K, ? super V> evictedSink) {
+        long elementWeight = weigh(key, value);
+        if (elementWeight > maxWeight)
+            throw new IllegalArgumentException(format("Weight %d of the element with the key %s exceeds max weight %d!",
+                    elementWeight, key, maxWeight));
+        int hash = hash(key);
+        // the previous value mustn't be counted in the weight and mustn't be evicted to make room for the new one
+        Node<K, V> prevNode = find(key, hash);
+        if (prevNode != null) {
+            removeNode(prevNode);
+            onRemoval(key, prevNode.value, RemovalCause.REPLACED);
+        }
+        // one element is evicted by the capacity, elements over a reduced capacity are evicted by shrink
+        boolean full = size >= capacity;
+        while (full || weight + elementWeight > maxWeight) {
+            if (!evict(evictedSink))
+                break;
+            full = false;
+        }
+        insert(key, hash, value);
+        weight += elementWeight;
+        statsCounter.recordPut();
+    }
+
+    /**
+     * Looks the key up once. Weight-bounded caches compute with get followed by put or remove
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        if (weigher != null)
+            return Cache.super.compute(key, remappingFunction);
+
+        int hash = hash(key);
+        Node<K, V> node = find(key, hash);
+        V oldValue = node == null ? null : node.value;
+        V newValue = remappingFunction.apply(key, oldValue);
+        if (newValue == null) {
+            if (node != null) {
+                removeNode(node);
+                onRemoval(key, oldValue, RemovalCause.EXPLICIT);
+            }
+        } else if (node == null) {
+            shrink((evictedKey, evictedValue) -> {});
+            if (size >= capacity)
+                evict((evictedKey, evictedValue) -> {});
+            insert(key, hash, newValue);
+            statsCounter.recordPut();
+        } else if (newValue != oldValue) {
+            replace(node, newValue);
+        }
+        return Optional.ofNullable(newValue);
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        Node<K, V> evicted = head;
+        if (evicted == null)
+            return Optional.empty();
+        removeNode(evicted);
+        onRemoval(evicted.key, evicted.value, RemovalCause.EVICTED);
+        return Optional.of(new AbstractMap.SimpleImmutableEntry<>(evicted.key, evicted.value));
+    }
+
+    @Override
+    public boolean evict(@Nonnull BiConsumer<? super K, ? super V> evictedSink) {
+        Objects.requireNonNull(evictedSink, "evictedSink");
+        Node<K, V> evicted = head;
+        if (evicted == null)
+            return false;
+        removeNode(evicted);
+        onRemoval(evicted.key, evicted.value, RemovalCause.EVICTED);
+        evictedSink.accept(evicted.key, evicted.value);
+        return true;
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Node<K, V> node = find(key, hash(key));
+        if (node == null)
+            return Optional.empty();
+        removeNode(node);
+        onRemoval(key, node.value, RemovalCause.EXPLICIT);
+        return Optional.of(node.value);
+    }
+
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Node<K, V> node = find(key, hash(key));
+        if (node == null)
+            return Optional.empty();
+        removeNode(node);
+        return Optional.of(node.value);
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        return find(key, hash(key)) != null;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Streams a snapshot of the keys from the least recently used one, so the stream doesn't depend on later writes
+     */
+    @Override
+    public Stream<K> keys() {
+        Object[] keys = new Object[size];
+        int i = 0;
+        for (Node<K, V> node = head; node != null; node = node.after)
+            keys[i++] = node.key;
+        @SuppressWarnings("unchecked")
+        Stream<K> stream = (Stream<K>) Arrays.stream(keys);
+        return stream;
+    }
+
+    /**
+     * Streams a snapshot of the elements from the least recently used one
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Stream<Map.Entry<K, V>> entries() {
+        Object[] keys = new Object[size];
+        Object[] values = new Object[size];
+        int i = 0;
+        for (Node<K, V> node = head; node != null; node = node.after, i++) {
+            keys[i] = node.key;
+            values[i] = node.value;
+        }
+        return IntStream.range(0, keys.length)
+                .mapToObj(j -> new AbstractMap.SimpleImmutableEntry<>((K) keys[j], (V) values[j]));
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Elements over a reduced capacity stay in the cache until puts and clean ups evict them. The table doesn't shrink.
+     * May be called without the synchronization of the other operations
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity can't be less than 1!");
+        this.capacity = capacity;
+    }
+
+    @Override
+    public boolean isFull() {
+        return size >= capacity || getWeight() >= getMaxWeight();
+    }
+
+    @Override
+    public long getWeight() {
+        return weigher == null ? size : weight;
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return weigher == null ? capacity : maxWeight;
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return statsCounter.snapshot();
+    }
+
+    /**
+     * Evicts a few elements over a reduced capacity
+     */
+    @Override
+    public void cleanUp() {
+        shrink((evictedKey, evictedValue) -> {});
+    }
+
+    /**
+     * Evicts at most SHRINK_STEP elements over the capacity, so a reduced capacity is reached incrementally by puts
+     * and clean ups
+     */
+    private void shrink(BiConsumer<? super K, ? super V> evictedSink) {
+        for (int i = 0; i < SHRINK_STEP && size > capacity; i++)
+            evict(evictedSink);
+    }
+
+    @Nullable
+    private Node<K, V> find(K key, int hash) {
+        for (Node<K, V> node = table[hash & (table.length - 1)]; node != null; node = node.next) {
+            if (node.hash == hash && (node.key == key || node.key.equals(key)))
+                return node;
+        }
+        return null;
+    }
+
+    private void insert(K key, int hash, V value) {
+        if (size >= table.length * LOAD_FACTOR && table.length < MAX_TABLE_SIZE)
+            resize();
+        int bucket = hash & (table.length - 1);
+        Node<K, V> node = new Node<>(key, hash, value, table[bucket]);
+        table[bucket] = node;
+        linkToTail(node);
+        size++;
+    }
+
+    private void replace(Node<K, V> node, V value) {
+        V prevValue = node.value;
+        node.value = value;
+        moveToTail(node);
+        onRemoval(node.key, prevValue, RemovalCause.REPLACED);
+        statsCounter.recordPut();
+    }
+
+    private void removeNode(Node<K, V> node) {
+        int bucket = node.hash & (table.length - 1);
+        if (table[bucket] == node) {
+            table[bucket] = node.next;
+        } else {
+            Node<K, V> prev = table[bucket];
+            while (prev.next != node)
+                prev = prev.next;
+            prev.next = node.next;
+        }
+        unlink(node);
+        size--;
+        if (weigher != null)
+            weight -= weigh(node.key, node.value);
+    }
+
+    private void moveToTail(Node<K, V> node) {
+        if (node == tail)
+            return;
+        unlink(node);
+        linkToTail(node);
+    }
+
+    private void linkToTail(Node<K, V> node) {
+        node.before = tail;
+        node.after = null;
+        if (tail == null)
+            head = node;
+        else
+            tail.after = node;
+        tail = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.before == null)
+            head = node.after;
+        else
+            node.before.after = node.after;
+        if (node.after == null)
+            tail = node.before;
+        else
+            node.after.before = node.before;
+        node.before = null;
+        node.after = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize() {
+        Node<K, V>[] newTable = (Node<K, V>[]) new Node<?, ?>[table.length * 2];
+        for (Node<K, V> bucketHead : table) {
+            Node<K, V> node = bucketHead;
+            while (node != null) {
+                Node<K, V> next = node.next;
+                int bucket = node.hash & (newTable.length - 1);
+                node.next = newTable[bucket];
+                newTable[bucket] = node;
+                node = next;
+            }
+        }
+        table = newTable;
+    }
+
+    private void onRemoval(K key, V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        if (removalListener == null)
+            return;
+        try {
+            removalListener.onRemoval(key, value, cause);
+        } catch (RuntimeException e) {
+            // the element has already left the cache, so the operation isn't failed because of the listener
+            log.error("Removal listener has failed for the key " + key, e);
+        }
+    }
+
+    private long weigh(K key, V value) {
+        long elementWeight = Objects.requireNonNull(weigher).weigh(key, value);
+        if (elementWeight < 0)
+            throw new IllegalStateException(format("Negative weight %d of the element with the key %s!", elementWeight, key));
+        return elementWeight;
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        // spread high bits to the low ones used by the table
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSizeFor(float elements) {
+        int size = MIN_TABLE_SIZE;
+        while (size < elements && size < MAX_TABLE_SIZE)
+            size <<= 1;
+        return size;
+    }
+}
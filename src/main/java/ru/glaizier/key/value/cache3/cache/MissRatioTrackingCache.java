@@ -0,0 +1,150 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.metrics.MissRatioCurve;
+
+/**
+ * Cache that records keys of gets and computes to a miss ratio curve to estimate hit ratios of other capacities.
+ * Puts are not recorded, as a put usually follows a missed get of the same key.
+ * Thread-safe if the underlying cache is thread-safe
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class MissRatioTrackingCache<K, V> implements Cache<K, V> {
+
+    private final Cache<K, V> cache;
+
+    private final MissRatioCurve<K> missRatioCurve;
+
+    public MissRatioTrackingCache(@Nonnull Cache<K, V> cache, @Nonnull MissRatioCurve<K> missRatioCurve) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(missRatioCurve, "missRatioCurve");
+        this.cache = cache;
+        this.missRatioCurve = missRatioCurve;
+    }
+
+    public MissRatioCurve<K> getMissRatioCurve() {
+        return missRatioCurve;
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        missRatioCurve.record(key);
+        return cache.get(key);
+    }
+
+    @Override
+    public V getOrNull(@Nonnull K key) {
+        missRatioCurve.record(key);
+        return cache.getOrNull(key);
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        return cache.put(key, value);
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        cache.put(key, value, evictedConsumer);
+    }
+
+    @Override
+    public void putQuietly(@Nonnull K key, @Nonnull V value) {
+        cache.putQuietly(key, value);
+    }
+
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        missRatioCurve.record(key);
+        return cache.compute(key, remappingFunction);
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        return cache.evict();
+    }
+
+    @Override
+    public boolean evict(@Nonnull BiConsumer<? super K, ? super V> evictedSink) {
+        return cache.evict(evictedSink);
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        return cache.remove(key);
+    }
+
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        return cache.removeQuietly(key);
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        return cache.contains(key);
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return cache.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return cache.entries();
+    }
+
+    @Override
+    public int getCapacity() {
+        return cache.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        cache.setCapacity(capacity);
+    }
+
+    @Override
+    public boolean isFull() {
+        return cache.isFull();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+}
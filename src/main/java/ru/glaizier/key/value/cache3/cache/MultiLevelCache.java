@@ -1,63 +1,149 @@
 package ru.glaizier.key.value.cache3.cache;
 
-import static java.lang.String.format;
 import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.IntStream;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.cache.promotion.AlwaysPromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.promotion.PromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.cache.stats.StatsCounter;
+
 /**
  * Multi level cache implementation which evicts elements from first (top) levels to below ones.
- * Equal keys can't be present in different levels
+ * Equal keys can't be present in different levels.
+ * The stats counter records hits and misses of the whole cache, while every level records its own statistics.
+ * The removal listener gets elements that leave the whole cache. Listeners of levels get elements moved between levels
  * To make a concurrent SimpleCache, the same strategy as in ConcurrentLruStrategy can be used. In this case,
  * a new method 'peek' in Cache is needed
  */
 @NotThreadSafe
 public class MultiLevelCache<K extends Serializable, V extends Serializable> implements Cache<K, V> {
 
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    // max number of elements over a reduced capacity of a level moved by one clean up
+    private static final int SHRINK_STEP = 16;
+
     private final List<Cache<K, V>> levels;
 
+    private final PromotionPolicy<K> promotionPolicy;
+
+    // null if misses are not cached
+    @Nullable
+    private final NegativeCache<K> negativeCache;
+
+    private final StatsCounter statsCounter;
+
+    @Nullable
+    private final RemovalListener<K, V> removalListener;
+
     @SafeVarargs
     public MultiLevelCache(Cache<K, V>... levels) {
         this(Arrays.asList(levels));
     }
 
     public MultiLevelCache(List<Cache<K, V>> levels) {
+        this(levels, new AlwaysPromotionPolicy<>());
+    }
+
+    public MultiLevelCache(List<Cache<K, V>> levels, PromotionPolicy<K> promotionPolicy) {
+        this(levels, promotionPolicy, null);
+    }
+
+    /**
+     * @param negativeCache keys that have been missed recently. Misses of these keys don't probe the levels
+     */
+    public MultiLevelCache(List<Cache<K, V>> levels, PromotionPolicy<K> promotionPolicy,
+                           @Nullable NegativeCache<K> negativeCache) {
+        this(levels, promotionPolicy, negativeCache, StatsCounter.disabled());
+    }
+
+    public MultiLevelCache(List<Cache<K, V>> levels, PromotionPolicy<K> promotionPolicy,
+                           @Nullable NegativeCache<K> negativeCache, @Nonnull StatsCounter statsCounter) {
+        this(levels, promotionPolicy, negativeCache, statsCounter, null);
+    }
+
+    public MultiLevelCache(List<Cache<K, V>> levels, PromotionPolicy<K> promotionPolicy,
+                           @Nullable NegativeCache<K> negativeCache, @Nonnull StatsCounter statsCounter,
+                           @Nullable RemovalListener<K, V> removalListener) {
         Objects.requireNonNull(levels, "levels");
+        Objects.requireNonNull(promotionPolicy, "promotionPolicy");
+        Objects.requireNonNull(statsCounter, "statsCounter");
         if (levels.isEmpty()) {
             throw new IllegalArgumentException("Levels must not be empty!");
         }
         this.levels = Collections.unmodifiableList(levels);
+        this.promotionPolicy = promotionPolicy;
+        this.negativeCache = negativeCache;
+        this.statsCounter = statsCounter;
+        this.removalListener = removalListener;
     }
 
     /**
-     * Searches key in all levels and puts found to the first level
+     * Searches key in all levels and puts found to the first level if the promotion policy allows it.
+     * Otherwise, the element stays in its level, which has already registered the hit.
+     * A promotion to weight-bounded levels can push elements out of the last level. They are passed to the removal
+     * listener, see get(key, evictedConsumer) to get them too
      */
     @Override
     public Optional<V> get(@Nonnull K key) {
+        return Optional.ofNullable(getOrNull(key));
+    }
+
+    @Override
+    public V getOrNull(@Nonnull K key) {
+        return getOrNull(key, evicted -> {});
+    }
+
+    /**
+     * Same as get but passes every element pushed out of the last level by the promotion to the consumer
+     */
+    public Optional<V> get(@Nonnull K key, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        return Optional.ofNullable(getOrNull(key, evictedConsumer));
+    }
+
+    private V getOrNull(K key, Consumer<Map.Entry<K, V>> evictedConsumer) {
         Objects.requireNonNull(key, "key");
-        Optional<V> foundOpt = levels.stream()
-                .map(cache -> cache.get(key))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .findFirst();
-        // move element to the first level
-        return foundOpt.map(foundValue -> {
-            remove(key);
-            put(key, foundValue).ifPresent(evicted -> {
-                throw new IllegalStateException(format("Element %s-%s has been evicted during get method!",
-                        evicted.getKey(), evicted.getValue()));
-            });
-            return foundValue;
-        });
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        if (negativeCache != null && negativeCache.isAbsent(key)) {
+            statsCounter.recordMiss();
+            return null;
+        }
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            V found = levels.get(levelIndex).getOrNull(key);
+            if (found != null) {
+                statsCounter.recordHit();
+                if (levelIndex > 0 && promotionPolicy.hit(key, levelIndex)) {
+                    // move element to the first level. The level doesn't count it as a removal
+                    levels.get(levelIndex).removeQuietly(key);
+                    putRec(key, found, 0, evictedConsumer);
+                }
+                return found;
+            }
+        }
+        statsCounter.recordMiss();
+        if (negativeCache != null)
+            negativeCache.markAbsent(key);
+        return null;
     }
 
     /**
@@ -67,46 +153,70 @@ public class MultiLevelCache<K extends Serializable, V extends Serializable> imp
     public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
         Objects.requireNonNull(key, "key");
         Objects.requireNonNull(value, "value");
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        put(key, value, evicted::add);
+        return evicted.stream().findFirst();
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        if (negativeCache != null)
+            negativeCache.invalidate(key);
         // Removes the key if it already in the cache
-        remove(key);
-        return putRec(key, value, 0);
+        removeFromLevels(key).ifPresent(prevValue -> onRemoval(key, prevValue, RemovalCause.REPLACED));
+        statsCounter.recordPut();
+        putRec(key, value, 0, evictedConsumer);
     }
 
     /**
      * It evicts consequently from levels by putting evicted elements to other levels starting with first non-empty level
      * l0 -> ev0 + l1 -> ev1 + l2 -> el2 ...
+     * Weight-bounded levels can evict several elements from the last level. Only the first one is returned, while all
+     * of them are passed to the removal listener, see evict(evictedSink) to get them too
      */
     @Override
     public Optional<Map.Entry<K, V>> evict() {
-        Optional<Integer> levelIndexToEvict = IntStream.range(0, levels.size())
-                .filter(i -> !levels.get(i).isEmpty())
-                .boxed()
-                .findFirst();
-
-        return levelIndexToEvict
-                .flatMap(levelIndex -> levels.get(levelIndex).evict())
-                .flatMap(firstEvicted -> putRec(firstEvicted.getKey(), firstEvicted.getValue(), levelIndexToEvict.orElseThrow(IllegalStateException::new) + 1));
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        evict((evictedKey, evictedValue) ->
+                evicted.add(new AbstractMap.SimpleImmutableEntry<>(evictedKey, evictedValue)));
+        return evicted.stream().findFirst();
     }
 
     /**
-     * Puts the element to the start level and gets the evicted from the last level
+     * Passes every element evicted from the last level to the sink
+     *
+     * @return true if an element has been evicted from a level
      */
-    private Optional<Map.Entry<K, V>> put(K key, V value, int startLevelIndex) {
-        Optional<Map.Entry<K, V>> curEvicted = Optional.of(new AbstractMap.SimpleImmutableEntry<>(key, value));
-        for (int levelIndex = startLevelIndex; levelIndex < levels.size() && curEvicted.isPresent(); levelIndex++) {
-            curEvicted = levels.get(levelIndex).put(curEvicted.get().getKey(), curEvicted.get().getValue());
+    @Override
+    public boolean evict(@Nonnull BiConsumer<? super K, ? super V> evictedSink) {
+        Objects.requireNonNull(evictedSink, "evictedSink");
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            if (levels.get(levelIndex).isEmpty())
+                continue;
+            int nextLevelIndex = levelIndex + 1;
+            return levels.get(levelIndex).evict((firstEvictedKey, firstEvictedValue) ->
+                    putRec(firstEvictedKey, firstEvictedValue, nextLevelIndex,
+                            evicted -> evictedSink.accept(evicted.getKey(), evicted.getValue())));
         }
-        return curEvicted;
+        return false;
     }
 
     /**
-     * Puts recursively the element to the start level and gets the evicted from the last level
+     * Puts recursively the element to the current level and passes the evicted from the last level to the consumer.
+     * A weight-bounded level can evict several elements, every one of them goes to the next level
      */
-    private Optional<Map.Entry<K, V>> putRec(K key, V value, int curLevelIndex) {
-        if (curLevelIndex >= levels.size())
-            return Optional.of(new AbstractMap.SimpleImmutableEntry<>(key, value));
-        Optional<Map.Entry<K, V>> curEvictedOpt = levels.get(curLevelIndex).put(key, value);
-        return curEvictedOpt.flatMap(curEvicted -> putRec(curEvicted.getKey(), curEvicted.getValue(), curLevelIndex + 1));
+    private void putRec(K key, V value, int curLevelIndex, Consumer<Map.Entry<K, V>> lastLevelEvictedConsumer) {
+        if (curLevelIndex >= levels.size()) {
+            promotionPolicy.remove(key);
+            onRemoval(key, value, RemovalCause.EVICTED);
+            lastLevelEvictedConsumer.accept(new AbstractMap.SimpleImmutableEntry<>(key, value));
+            return;
+        }
+        levels.get(curLevelIndex).put(key, value, curEvicted ->
+                putRec(curEvicted.getKey(), curEvicted.getValue(), curLevelIndex + 1, lastLevelEvictedConsumer));
     }
 
     /**
@@ -115,16 +225,41 @@ public class MultiLevelCache<K extends Serializable, V extends Serializable> imp
     @Override
     public Optional<V> remove(@Nonnull K key) {
         Objects.requireNonNull(key, "key");
-        return levels.stream()
-                .filter(level -> level.contains(key))
-                .findFirst()
-                .flatMap(level -> level.remove(key));
+        promotionPolicy.remove(key);
+        Optional<V> removed = removeFromLevels(key);
+        removed.ifPresent(removedValue -> onRemoval(key, removedValue, RemovalCause.EXPLICIT));
+        return removed;
+    }
+
+    private void onRemoval(K key, V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        if (removalListener == null)
+            return;
+        try {
+            removalListener.onRemoval(key, value, cause);
+        } catch (RuntimeException e) {
+            log.error("Removal listener has failed for the key " + key, e);
+        }
+    }
+
+    private Optional<V> removeFromLevels(K key) {
+        for (Cache<K, V> level : levels) {
+            if (level.contains(key))
+                return level.remove(key);
+        }
+        return Optional.empty();
     }
 
     @Override
     public boolean contains(@Nonnull K key) {
         Objects.requireNonNull(key, "key");
-        return levels.stream().anyMatch(level -> level.contains(key));
+        if (negativeCache != null && negativeCache.isAbsent(key))
+            return false;
+        for (Cache<K, V> level : levels) {
+            if (level.contains(key))
+                return true;
+        }
+        return false;
     }
 
     @Override
@@ -134,10 +269,132 @@ public class MultiLevelCache<K extends Serializable, V extends Serializable> imp
                 .reduce(0, Integer::sum);
     }
 
+    /**
+     * Concatenates streams of the levels, starting with the first one
+     */
+    @Override
+    public Stream<K> keys() {
+        return levels.stream()
+                .map(Cache::keys)
+                .reduce(Stream::concat)
+                .orElseGet(Stream::empty);
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return levels.stream()
+                .map(Cache::entries)
+                .reduce(Stream::concat)
+                .orElseGet(Stream::empty);
+    }
+
+    /**
+     * Weight-only bounded levels have unbounded capacity, so the sum is saturated
+     */
     @Override
     public int getCapacity() {
+        return (int) Math.min(Integer.MAX_VALUE, levels.stream()
+                .mapToLong(Cache::getCapacity)
+                .reduce(0, MultiLevelCache::saturatedSum));
+    }
+
+    /**
+     * Resizes the levels in proportion to their capacities. Elements over reduced capacities of levels are moved to the
+     * next levels by puts and clean ups
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        setLevelCapacities(levels, capacity);
+    }
+
+    @Override
+    public long getWeight() {
         return levels.stream()
-                .mapToInt(Cache::getCapacity)
-                .reduce(0, Integer::sum);
+                .mapToLong(Cache::getWeight)
+                .reduce(0, MultiLevelCache::saturatedSum);
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return levels.stream()
+                .mapToLong(Cache::getMaxWeight)
+                .reduce(0, MultiLevelCache::saturatedSum);
+    }
+
+    @Override
+    public boolean isFull() {
+        return levels.stream().allMatch(Cache::isFull);
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return statsCounter.snapshot();
+    }
+
+    /**
+     * Moves a few elements over reduced capacities of levels to the next levels and cleans the levels up
+     */
+    @Override
+    public void cleanUp() {
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            Cache<K, V> level = levels.get(levelIndex);
+            int nextLevelIndex = levelIndex + 1;
+            for (int i = 0; i < SHRINK_STEP && level.getSize() > level.getCapacity(); i++) {
+                if (!level.evict((evictedKey, evictedValue) ->
+                        putRec(evictedKey, evictedValue, nextLevelIndex, evicted -> {})))
+                    break;
+            }
+            // a level over its capacity would evict elements by its clean up instead of moving them
+            if (level.getSize() <= level.getCapacity())
+                level.cleanUp();
+        }
+    }
+
+    /**
+     * @return unmodifiable list of levels, starting with the first one
+     */
+    public List<Cache<K, V>> getLevels() {
+        return levels;
+    }
+
+    /**
+     * @return statistics of every level, starting with the first one
+     */
+    public List<CacheStats> getLevelStats() {
+        return levels.stream()
+                .map(Cache::getStats)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Splits the capacity between the levels in proportion to their current capacities, every level gets at least 1
+     */
+    static void setLevelCapacities(List<? extends Cache<?, ?>> levels, int capacity) {
+        if (capacity < levels.size())
+            throw new IllegalArgumentException("Capacity can't be less than the number of levels!");
+        long[] cumulativeCapacities = new long[levels.size()];
+        long cumulative = 0;
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            cumulative += levels.get(levelIndex).getCapacity();
+            cumulativeCapacities[levelIndex] = cumulative;
+        }
+        int[] capacities = new int[levels.size()];
+        int assigned = 0;
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            // the next levels need at least 1 each
+            // capacities of weight-only bounded levels are huge, so the product could overflow a long
+            long proportional = (long) ((double) cumulativeCapacities[levelIndex] / cumulative * capacity);
+            int assignedAfter = (int) Math.min(capacity - (levels.size() - levelIndex - 1),
+                    Math.max(assigned + 1, proportional));
+            capacities[levelIndex] = assignedAfter - assigned;
+            assigned = assignedAfter;
+        }
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++)
+            levels.get(levelIndex).setCapacity(capacities[levelIndex]);
+    }
+
+    private static long saturatedSum(long one, long another) {
+        long sum = one + another;
+        return sum < 0 ? Long.MAX_VALUE : sum;
     }
 }
@@ -0,0 +1,101 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bounded set of keys known to be absent. A key is forgotten after the time to live or when the set is full and the
+ * key is the oldest one, so repeated lookups of nonexistent keys can be answered without probing levels or the origin
+ * while memory stays bounded
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class NegativeCache<K> {
+
+    private final int maxSize;
+
+    private final long timeToLiveNanos;
+
+    private final LongSupplier ticker;
+
+    // key -> time when the key is forgotten. In the insertion order, so the first key expires first
+    @GuardedBy("this")
+    private final LinkedHashMap<K, Long> expirationTimes;
+
+    public NegativeCache(int maxSize, long timeToLive, @Nonnull TimeUnit unit) {
+        this(maxSize, timeToLive, unit, System::nanoTime);
+    }
+
+    NegativeCache(int maxSize, long timeToLive, TimeUnit unit, LongSupplier ticker) {
+        Objects.requireNonNull(unit, "unit");
+        Objects.requireNonNull(ticker, "ticker");
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Max size can't be less than 1!");
+        if (timeToLive <= 0)
+            throw new IllegalArgumentException("Time to live must be positive!");
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.ticker = ticker;
+        this.expirationTimes = new LinkedHashMap<K, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Long> eldest) {
+                return size() > NegativeCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return true if the key has been marked as absent and the mark hasn't expired yet
+     */
+    public synchronized boolean isAbsent(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Long expirationTime = expirationTimes.get(key);
+        if (expirationTime == null)
+            return false;
+        if (ticker.getAsLong() - expirationTime < 0)
+            return true;
+        expirationTimes.remove(key);
+        return false;
+    }
+
+    public synchronized void markAbsent(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        long now = ticker.getAsLong();
+        removeExpired(now);
+        // reinsert to move the key to the end of the expiration order
+        expirationTimes.remove(key);
+        expirationTimes.put(key, now + timeToLiveNanos);
+    }
+
+    /**
+     * Must be called when a value for the key appears
+     */
+    public synchronized void invalidate(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        expirationTimes.remove(key);
+    }
+
+    public synchronized void clear() {
+        expirationTimes.clear();
+    }
+
+    public synchronized int getSize() {
+        return expirationTimes.size();
+    }
+
+    @GuardedBy("this")
+    private void removeExpired(long now) {
+        Iterator<Long> iterator = expirationTimes.values().iterator();
+        while (iterator.hasNext() && now - iterator.next() >= 0)
+            iterator.remove();
+    }
+}
@@ -0,0 +1,164 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.storage.offheap.OffHeapStorage;
+
+/**
+ * Cache on top of an off-heap storage that evicts by CLOCK of the storage instead of a strategy, so the heap doesn't
+ * hold the keys either. It evicts when the capacity is reached or when the off-heap memory of the segment of a put
+ * element is exhausted. Concurrent puts of new keys can exceed the capacity by the number of putting threads.
+ * Slabs are direct byte buffers, so -XX:MaxDirectMemorySize must allow the max bytes of the storage
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class OffHeapCache<K extends Serializable, V extends Serializable> implements Cache<K, V> {
+
+    // max number of elements over a reduced capacity evicted by one put or clean up
+    private static final int SHRINK_STEP = 16;
+
+    private final OffHeapStorage<K, V> storage;
+
+    private volatile int capacity;
+
+    public OffHeapCache(@Nonnull OffHeapStorage<K, V> storage, int capacity) {
+        Objects.requireNonNull(storage, "storage");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity can't be less than 1!");
+        this.storage = storage;
+        this.capacity = capacity;
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        return storage.get(key);
+    }
+
+    /**
+     * More than one element can be evicted during put if the segment of the element is full.
+     * Only the first one is returned in this case. Use put with a consumer to get all of them
+     */
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        put(key, value, evicted::add);
+        return evicted.stream().findFirst();
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        shrink(evictedConsumer);
+        if (storage.getSize() >= capacity && !storage.contains(key))
+            storage.evict().ifPresent(evictedConsumer);
+        storage.put(key, value, evictedConsumer);
+    }
+
+    /**
+     * Atomic, as well as the other read-modify-write operations built on it. Makes room by the capacity after the
+     * function has added a new key, so a failed replace or an absent result doesn't evict anything. The new element is
+     * referenced and gets a second chance. Doesn't make room by the memory, so it fails with StorageException if the
+     * memory of the segment is exhausted
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        shrink(evicted -> {});
+        boolean[] added = new boolean[1];
+        Optional<V> computed = storage.compute(key, (k, oldValue) -> {
+            V newValue = remappingFunction.apply(k, oldValue);
+            added[0] = oldValue == null && newValue != null;
+            return newValue;
+        });
+        if (added[0] && storage.getSize() > capacity)
+            storage.evict();
+        return computed;
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        return storage.evict();
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        return storage.remove(key);
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        return storage.contains(key);
+    }
+
+    @Override
+    public int getSize() {
+        return storage.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return storage.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return storage.entries();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Elements over a reduced capacity stay in the cache until puts and clean ups evict them
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity can't be less than 1!");
+        this.capacity = capacity;
+    }
+
+    @Override
+    public boolean isFull() {
+        return getSize() >= capacity;
+    }
+
+    /**
+     * Evicts a few elements over a reduced capacity
+     */
+    @Override
+    public void cleanUp() {
+        shrink(evicted -> {});
+    }
+
+    /**
+     * Evicts at most SHRINK_STEP elements over the capacity, so a reduced capacity is reached incrementally by puts
+     * and clean ups
+     */
+    private void shrink(Consumer<Map.Entry<K, V>> evictedConsumer) {
+        for (int i = 0; i < SHRINK_STEP && storage.getSize() > capacity; i++) {
+            Optional<Map.Entry<K, V>> evicted = storage.evict();
+            if (!evicted.isPresent())
+                break;
+            evictedConsumer.accept(evicted.get());
+        }
+    }
+}
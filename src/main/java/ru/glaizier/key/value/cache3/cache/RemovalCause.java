@@ -0,0 +1,30 @@
+package ru.glaizier.key.value.cache3.cache;
+
+/**
+ * Reason why an element has left a cache
+ *
+ * @author GlaIZier
+ */
+public enum RemovalCause {
+
+    /**
+     * Removed by the user
+     */
+    EXPLICIT,
+
+    /**
+     * Value has been overwritten by a put of the same key
+     */
+    REPLACED,
+
+    /**
+     * Evicted by the strategy to make room for other elements
+     */
+    EVICTED,
+
+    /**
+     * Value has been collected by GC
+     */
+    COLLECTED
+
+}
@@ -0,0 +1,20 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Listens to elements leaving a cache. Called synchronously by the cache that removes the element, so expensive
+ * listeners should be wrapped with AsyncRemovalListener
+ *
+ * @author GlaIZier
+ */
+@FunctionalInterface
+public interface RemovalListener<K, V> {
+
+    /**
+     * @param value null if the cause is COLLECTED
+     */
+    void onRemoval(@Nonnull K key, @Nullable V value, @Nonnull RemovalCause cause);
+
+}
@@ -1,20 +1,38 @@
 package ru.glaizier.key.value.cache3.cache;
 
+import static java.lang.String.format;
+import java.lang.invoke.MethodHandles;
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.cache.stats.StatsCounter;
 import ru.glaizier.key.value.cache3.cache.strategy.Strategy;
 import ru.glaizier.key.value.cache3.storage.Storage;
 
 /**
  * Simple cache that updates strategy's statistics on get and put.
  * To make a concurrent SimpleCache, the same strategy as in ConcurrentLruStrategy can be used. In this case,
- * a new method 'peek' in Cache is needed
+ * a new method 'peek' in Cache is needed.
+ * The cache can be bounded by the number of elements, by their total weight or by both.
+ * Statistics are recorded to the stats counter, which records nothing by default. Every element that leaves the cache is
+ * passed to the removal listener if there is one.
+ * Elements the storage drops on its own (see ReferenceStorage) are purged before puts and evictions. Such storages
+ * can't be used with a weight-bounded cache.
  *
  * @author GlaIZier
  */
@@ -22,58 +40,259 @@ import ru.glaizier.key.value.cache3.storage.Storage;
 @NotThreadSafe
 public class SimpleCache<K, V> implements Cache<K, V> {
 
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    // max number of elements over a reduced capacity evicted by one put or clean up
+    private static final int SHRINK_STEP = 16;
+
     private final Storage<K, V> storage;
 
     private final Strategy<K> strategy;
 
-    private final int capacity;
+    // volatile, so a capacity set from another thread (e.g. by JMX) is seen by the next put. The cache itself isn't
+    // thread-safe, so a put concurrent with the change may still use the previous capacity
+    private volatile int capacity;
+
+    // null if the cache is not weight-bounded
+    @Nullable
+    private final Weigher<K, V> weigher;
+
+    private final long maxWeight;
+
+    private long weight;
+
+    private final StatsCounter statsCounter;
+
+    @Nullable
+    private final RemovalListener<K, V> removalListener;
 
     public SimpleCache(Storage<K, V> storage, Strategy<K> strategy, int capacity) {
+        this(storage, strategy, capacity, null, Long.MAX_VALUE);
+    }
+
+    public SimpleCache(Storage<K, V> storage, Strategy<K> strategy, int capacity, @Nonnull StatsCounter statsCounter) {
+        this(storage, strategy, capacity, null, Long.MAX_VALUE, statsCounter);
+    }
+
+    public SimpleCache(Storage<K, V> storage, Strategy<K> strategy, @Nonnull Weigher<K, V> weigher, long maxWeight) {
+        this(storage, strategy, Integer.MAX_VALUE, Objects.requireNonNull(weigher, "weigher"), maxWeight);
+    }
+
+    public SimpleCache(Storage<K, V> storage, Strategy<K> strategy, int capacity, @Nullable Weigher<K, V> weigher,
+                       long maxWeight) {
+        this(storage, strategy, capacity, weigher, maxWeight, StatsCounter.disabled());
+    }
+
+    public SimpleCache(Storage<K, V> storage, Strategy<K> strategy, int capacity, @Nullable Weigher<K, V> weigher,
+                       long maxWeight, @Nonnull StatsCounter statsCounter) {
+        this(storage, strategy, capacity, weigher, maxWeight, statsCounter, null);
+    }
+
+    public SimpleCache(Storage<K, V> storage, Strategy<K> strategy, int capacity, @Nullable Weigher<K, V> weigher,
+                       long maxWeight, @Nonnull StatsCounter statsCounter,
+                       @Nullable RemovalListener<K, V> removalListener) {
+        Objects.requireNonNull(statsCounter, "statsCounter");
         if (capacity <= 0)
             throw new IllegalArgumentException("Capacity can't be less than 1!");
+        if (maxWeight <= 0)
+            throw new IllegalArgumentException("Max weight can't be less than 1!");
+        // the weight of dropped values is unknown, so it would never be subtracted
+        if (weigher != null && storage.dropsElements())
+            throw new IllegalArgumentException("Weight-bounded cache can't be used with a storage that drops elements!");
         this.storage = storage;
         this.strategy = strategy;
         this.capacity = capacity;
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        this.statsCounter = statsCounter;
+        this.removalListener = removalListener;
     }
 
     @Override
     public Optional<V> get(@Nonnull K key) {
+        return Optional.ofNullable(getOrNull(key));
+    }
+
+    @Override
+    public V getOrNull(@Nonnull K key) {
         // update statistics only if this key is present in the storage
-        return storage.get(key)
-            .map(v -> {
-                strategy.use(key);
-                return v;
-            });
+        V found = storage.getOrNull(key);
+        if (found != null) {
+            strategy.use(key);
+            statsCounter.recordHit();
+        } else {
+            statsCounter.recordMiss();
+        }
+        return found;
     }
 
+    /**
+     * A weight-bounded cache or a cache over its reduced capacity can evict more than one element during put.
+     * Only the first one is returned in this case. Use put with a consumer to get all of them
+     */
     @Override
     public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
         Objects.requireNonNull(key);
         Objects.requireNonNull(value);
 
+        purge();
+        if (weigher != null || getSize() > capacity) {
+            List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+            put(key, value, evicted::add);
+            return evicted.stream().findFirst();
+        }
+
         Optional<Map.Entry<K, V>> evicted = Optional.empty();
         if (isFull() && !contains(key)) {
             evicted = evict();
         }
 
-        strategy.use(key);
-        storage.put(key, value);
+        store(key, value);
         return evicted;
     }
 
+    @Override
+    public void putQuietly(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+
+        putToSink(key, value, (evictedKey, evictedValue) -> {});
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(evictedConsumer);
+
+        putToSink(key, value, (evictedKey, evictedValue) ->
+                evictedConsumer.accept(new AbstractMap.SimpleImmutableEntry<>(evictedKey, evictedValue)));
+    }
+
+    private void putToSink(K key, V value, BiConsumer<? super K, ? super V> evictedSink) {
+        purge();
+        shrink(evictedSink);
+        if (weigher != null) {
+            putWeighted(key, value, evictedSink);
+            return;
+        }
+
+        if (isFull() && !contains(key))
+            evict(evictedSink);
+        store(key, value);
+    }
+
+    private void putWeighted(K key, V value, BiConsumer<? super K, ? super V> evictedSink) {
+        long elementWeight = weigh(key, value);
+        if (elementWeight > maxWeight)
+            throw new IllegalArgumentException(format("Weight %d of the element with the key %s exceeds max weight %d!",
+                    elementWeight, key, maxWeight));
+        // the previous value mustn't be counted in the weight and mustn't be evicted to make room for the new one
+        removeQuietly(key).ifPresent(prevValue -> onRemoval(key, prevValue, RemovalCause.REPLACED));
+        // one element is evicted by the capacity, elements over a reduced capacity are evicted by shrink
+        boolean full = getSize() >= capacity;
+        while (full || weight + elementWeight > maxWeight) {
+            if (!evict(evictedSink))
+                break;
+            full = false;
+        }
+
+        strategy.use(key);
+        storage.putQuietly(key, value);
+        weight += elementWeight;
+        statsCounter.recordPut();
+    }
+
+    private void store(K key, V value) {
+        strategy.use(key);
+        storage.put(key, value).ifPresent(prevValue -> onRemoval(key, prevValue, RemovalCause.REPLACED));
+        statsCounter.recordPut();
+    }
+
     @Override
     public Optional<Map.Entry<K, V>> evict() {
-        return strategy.evict()
-                .map(evictedKey -> {
-                    V evictedValue = storage.remove(evictedKey).orElseThrow(IllegalStateException::new);
-                    return new AbstractMap.SimpleImmutableEntry<>(evictedKey, evictedValue);
-                });
+        List<Map.Entry<K, V>> evicted = new ArrayList<>(1);
+        evict((evictedKey, evictedValue) ->
+                evicted.add(new AbstractMap.SimpleImmutableEntry<>(evictedKey, evictedValue)));
+        return evicted.stream().findFirst();
+    }
+
+    @Override
+    public boolean evict(@Nonnull BiConsumer<? super K, ? super V> evictedSink) {
+        Objects.requireNonNull(evictedSink);
+        purge();
+        K evictedKey;
+        while ((evictedKey = strategy.evictOrNull()) != null) {
+            Optional<V> evictedValueOpt = storage.remove(evictedKey);
+            if (!evictedValueOpt.isPresent()) {
+                // the value has been collected after the clean up
+                onRemoval(evictedKey, null, RemovalCause.COLLECTED);
+                continue;
+            }
+            V evictedValue = evictedValueOpt.get();
+            if (weigher != null)
+                weight -= weigh(evictedKey, evictedValue);
+            onRemoval(evictedKey, evictedValue, RemovalCause.EVICTED);
+            evictedSink.accept(evictedKey, evictedValue);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Purges elements the storage has dropped and evicts a few elements over a reduced capacity
+     */
+    @Override
+    public void cleanUp() {
+        purge();
+        shrink((evictedKey, evictedValue) -> {});
+    }
+
+    private void purge() {
+        storage.purge(key -> {
+            strategy.remove(key);
+            onRemoval(key, null, RemovalCause.COLLECTED);
+        });
+    }
+
+    /**
+     * Evicts at most SHRINK_STEP elements over the capacity, so a reduced capacity is reached incrementally by puts
+     * and clean ups
+     */
+    private void shrink(BiConsumer<? super K, ? super V> evictedSink) {
+        for (int i = 0; i < SHRINK_STEP && getSize() > capacity; i++) {
+            if (!evict(evictedSink))
+                break;
+        }
     }
 
     @Override
     public Optional<V> remove(@Nonnull K key) {
+        Optional<V> removed = removeQuietly(key);
+        removed.ifPresent(removedValue -> onRemoval(key, removedValue, RemovalCause.EXPLICIT));
+        return removed;
+    }
+
+    private void onRemoval(K key, @Nullable V value, RemovalCause cause) {
+        statsCounter.recordRemoval(cause);
+        if (removalListener == null)
+            return;
+        try {
+            removalListener.onRemoval(key, value, cause);
+        } catch (RuntimeException e) {
+            // the element has already left the cache, so the operation isn't failed because of the listener
+            log.error("Removal listener has failed for the key " + key, e);
+        }
+    }
+
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        Objects.requireNonNull(key);
         strategy.remove(key);
-        return storage.remove(key);
+        Optional<V> removed = storage.remove(key);
+        if (weigher != null)
+            removed.ifPresent(removedValue -> weight -= weigh(key, removedValue));
+        return removed;
     }
 
     @Override
@@ -86,8 +305,56 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         return storage.getSize();
     }
 
+    @Override
+    public Stream<K> keys() {
+        return storage.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return storage.entries();
+    }
+
     @Override
     public int getCapacity() {
         return capacity;
     }
+
+    /**
+     * Elements over a reduced capacity stay in the cache until puts and clean ups evict them.
+     * May be called without the synchronization of the other operations
+     */
+    @Override
+    public void setCapacity(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity can't be less than 1!");
+        this.capacity = capacity;
+    }
+
+    @Override
+    public boolean isFull() {
+        return getSize() >= capacity || getWeight() >= getMaxWeight();
+    }
+
+    @Override
+    public long getWeight() {
+        return weigher == null ? getSize() : weight;
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return weigher == null ? capacity : maxWeight;
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return statsCounter.snapshot();
+    }
+
+    private long weigh(K key, V value) {
+        long elementWeight = Objects.requireNonNull(weigher).weigh(key, value);
+        if (elementWeight < 0)
+            throw new IllegalStateException(format("Negative weight %d of the element with the key %s!", elementWeight, key));
+        return elementWeight;
+    }
 }
@@ -1,12 +1,20 @@
 package ru.glaizier.key.value.cache3.cache;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
 import ru.glaizier.key.value.cache3.storage.StorageException;
 
 /**
@@ -18,10 +26,36 @@ public class SynchronizedCache<K, V> implements Cache<K, V> {
     @GuardedBy("lock")
     private final Cache<K, V> cache;
 
-    private final Object lock = new Object();
+    private final Object lock;
 
     public SynchronizedCache(Cache<K, V> cache) {
+        this(cache, new Object());
+    }
+
+    private SynchronizedCache(Cache<K, V> cache, Object lock) {
         this.cache = cache;
+        this.lock = lock;
+    }
+
+    /**
+     * Returns levels of the underlying multi level cache guarded by the lock of this cache, so they can be read and
+     * resized concurrently with the operations on this cache. Views of instrumented levels share their histograms.
+     * A single level cache is the only level of itself
+     */
+    @SuppressWarnings("unchecked")
+    public List<Cache<K, V>> getLevels() {
+        if (!(cache instanceof MultiLevelCache))
+            return Collections.singletonList(this);
+        return ((MultiLevelCache<?, ?>) cache).getLevels().stream()
+                .map(level -> synchronizedLevel((Cache<K, V>) level))
+                .collect(Collectors.toList());
+    }
+
+    private Cache<K, V> synchronizedLevel(Cache<K, V> level) {
+        Cache<K, V> synchronizedLevel = new SynchronizedCache<>(level, lock);
+        return level instanceof InstrumentedCache
+                ? new InstrumentedCache<>(synchronizedLevel, (InstrumentedCache<?, ?>) level)
+                : synchronizedLevel;
     }
 
     @Override
@@ -31,6 +65,13 @@ public class SynchronizedCache<K, V> implements Cache<K, V> {
         }
     }
 
+    @Override
+    public V getOrNull(@Nonnull K key) throws StorageException {
+        synchronized (lock){
+            return cache.getOrNull(key);
+        }
+    }
+
     @Override
     public Optional<V> remove(@Nonnull K key) throws StorageException {
         synchronized (lock){
@@ -38,6 +79,13 @@ public class SynchronizedCache<K, V> implements Cache<K, V> {
         }
     }
 
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        synchronized (lock){
+            return cache.removeQuietly(key);
+        }
+    }
+
     @Override
     public boolean contains(@Nonnull K key) throws StorageException {
         synchronized (lock){
@@ -52,6 +100,27 @@ public class SynchronizedCache<K, V> implements Cache<K, V> {
         }
     }
 
+    /**
+     * Created under the lock and traversed without it, so caches that can't be traversed concurrently with writes
+     * (e.g. LruMemoryCache) stream snapshots
+     */
+    @Override
+    public Stream<K> keys() {
+        synchronized (lock){
+            return cache.keys();
+        }
+    }
+
+    /**
+     * Created under the lock and traversed without it, so a parallel stream reads values in parallel
+     */
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        synchronized (lock){
+            return cache.entries();
+        }
+    }
+
     @Override
     public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
         synchronized (lock){
@@ -59,6 +128,31 @@ public class SynchronizedCache<K, V> implements Cache<K, V> {
         }
     }
 
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        synchronized (lock){
+            cache.put(key, value, evictedConsumer);
+        }
+    }
+
+    @Override
+    public void putQuietly(@Nonnull K key, @Nonnull V value) {
+        synchronized (lock){
+            cache.putQuietly(key, value);
+        }
+    }
+
+    /**
+     * Atomic, as well as the other read-modify-write operations built on it
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        synchronized (lock){
+            return cache.compute(key, remappingFunction);
+        }
+    }
+
     @Override
     public Optional<Map.Entry<K, V>> evict() {
         synchronized (lock){
@@ -66,6 +160,13 @@ public class SynchronizedCache<K, V> implements Cache<K, V> {
         }
     }
 
+    @Override
+    public boolean evict(@Nonnull BiConsumer<? super K, ? super V> evictedSink) {
+        synchronized (lock){
+            return cache.evict(evictedSink);
+        }
+    }
+
     @Override
     public int getCapacity() {
         synchronized (lock){
@@ -73,4 +174,46 @@ public class SynchronizedCache<K, V> implements Cache<K, V> {
         }
     }
 
+    @Override
+    public void setCapacity(int capacity) {
+        synchronized (lock){
+            cache.setCapacity(capacity);
+        }
+    }
+
+    @Override
+    public boolean isFull() {
+        synchronized (lock){
+            return cache.isFull();
+        }
+    }
+
+    @Override
+    public long getWeight() {
+        synchronized (lock){
+            return cache.getWeight();
+        }
+    }
+
+    @Override
+    public long getMaxWeight() {
+        synchronized (lock){
+            return cache.getMaxWeight();
+        }
+    }
+
+    @Override
+    public CacheStats getStats() {
+        synchronized (lock){
+            return cache.getStats();
+        }
+    }
+
+    @Override
+    public void cleanUp() {
+        synchronized (lock){
+            cache.cleanUp();
+        }
+    }
+
 }
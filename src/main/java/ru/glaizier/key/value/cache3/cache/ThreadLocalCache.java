@@ -0,0 +1,227 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+
+/**
+ * Cache that keeps a tiny direct-mapped cache of found elements for every thread in front of a shared cache, so
+ * repeated gets of a few hot keys take neither the locks of the shared cache nor allocate. Every write through this
+ * cache bumps a global version, which makes all the thread-local elements stale. Meant for read-mostly immutable
+ * values: writes to the shared cache that bypass this one are not seen by the threads that have read the key before.
+ * Local hits don't reach the shared cache, so they are neither counted in its statistics nor refresh its order of
+ * eviction. Every thread that has called get keeps its local cache until the thread dies.
+ * Thread-safe if the underlying cache is thread-safe
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class ThreadLocalCache<K, V> implements Cache<K, V> {
+
+    private static final int DEFAULT_SLOTS = 64;
+
+    private final Cache<K, V> cache;
+
+    private final int mask;
+
+    // bumped after every write, so the elements read before it are stale
+    private final AtomicLong version = new AtomicLong();
+
+    private final ThreadLocal<Slots<V>> localSlots;
+
+    /**
+     * Direct-mapped cache of one thread. A slot holds a key, its found value and the version it was read at
+     */
+    private static class Slots<V> {
+        private final Object[] keys;
+        private final Object[] values;
+        private final long[] versions;
+
+        private Slots(int size) {
+            keys = new Object[size];
+            values = new Object[size];
+            versions = new long[size];
+        }
+    }
+
+    public ThreadLocalCache(@Nonnull Cache<K, V> cache) {
+        this(cache, DEFAULT_SLOTS);
+    }
+
+    /**
+     * @param slots power of two, number of elements every thread keeps
+     */
+    public ThreadLocalCache(@Nonnull Cache<K, V> cache, int slots) {
+        Objects.requireNonNull(cache, "cache");
+        if (slots <= 0 || Integer.bitCount(slots) != 1)
+            throw new IllegalArgumentException("Slots must be a positive power of two!");
+        this.cache = cache;
+        this.mask = slots - 1;
+        this.localSlots = ThreadLocal.withInitial(() -> new Slots<>(slots));
+    }
+
+    /**
+     * Returns the same Optional instance while the element is in the local cache
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Optional<V> get(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Slots<V> slots = localSlots.get();
+        int slot = slot(key);
+        // read before the shared cache, so a write during the read makes the element stale
+        long curVersion = version.get();
+        Object slotKey = slots.keys[slot];
+        if (slots.versions[slot] == curVersion && (slotKey == key || key.equals(slotKey)))
+            return (Optional<V>) slots.values[slot];
+
+        Optional<V> found = cache.get(key);
+        if (found.isPresent()) {
+            slots.keys[slot] = key;
+            slots.values[slot] = found;
+            slots.versions[slot] = curVersion;
+        }
+        return found;
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        try {
+            return cache.put(key, value);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        try {
+            cache.put(key, value, evictedConsumer);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        try {
+            return cache.compute(key, remappingFunction);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        try {
+            return cache.evict();
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        try {
+            return cache.remove(key);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        try {
+            return cache.removeQuietly(key);
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the local elements of all the threads, e.g. after the shared cache has been written bypassing this one
+     */
+    public void invalidateLocal() {
+        version.incrementAndGet();
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        return cache.contains(key);
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return cache.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return cache.entries();
+    }
+
+    @Override
+    public int getCapacity() {
+        return cache.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        cache.setCapacity(capacity);
+    }
+
+    @Override
+    public boolean isFull() {
+        return cache.isFull();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    /**
+     * Statistics of the shared cache, which doesn't see local hits
+     */
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    /**
+     * Makes the local elements stale too, so elements purged by the shared cache are not served locally
+     */
+    @Override
+    public void cleanUp() {
+        try {
+            cache.cleanUp();
+        } finally {
+            version.incrementAndGet();
+        }
+    }
+
+    private int slot(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Calculates the weight of a cache element. Weight-bounded caches evict elements until the total weight fits the
+ * max weight. The weight of the same element must not change over time
+ *
+ * @author GlaIZier
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+    /**
+     * @return non-negative weight of the element
+     */
+    long weigh(@Nonnull K key, @Nonnull V value);
+
+}
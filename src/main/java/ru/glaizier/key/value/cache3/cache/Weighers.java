@@ -0,0 +1,54 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+import ru.glaizier.key.value.cache3.storage.StorageException;
+import ru.glaizier.key.value.cache3.util.Entry;
+
+/**
+ * @author GlaIZier
+ */
+public final class Weighers {
+    private Weighers() {
+    }
+
+    /**
+     * Every element weighs 1, so the weight is the number of elements
+     */
+    public static <K, V> Weigher<K, V> singleton() {
+        return (key, value) -> 1;
+    }
+
+    /**
+     * Estimates the weight of an element as the size of its serialized form in bytes (the same form as in file
+     * storages). Every element is serialized to be weighed, so prefer a custom weigher for big values
+     */
+    public static <K extends Serializable, V extends Serializable> Weigher<K, V> serializedSize() {
+        return (key, value) -> {
+            CountingOutputStream counter = new CountingOutputStream();
+            try (ObjectOutputStream oos = new ObjectOutputStream(counter)) {
+                oos.writeObject(new Entry<>(key, value));
+            } catch (IOException e) {
+                throw new StorageException(e.getMessage(), e);
+            }
+            return counter.count;
+        };
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.storage.Storage;
+
+/**
+ * Cache that acknowledges puts and removes after updating the underlying (memory) cache and writes them to the backing
+ * storage later. Repeated writes of a key are coalesced into one write of the latest value. Dirty elements are flushed
+ * in batches when there are enough of them for a batch or when the flush interval passes. If there are maxDirty dirty
+ * elements, callers flush a batch themselves before returning. Failures of such a flush are logged, and the elements
+ * stay dirty.
+ * Misses of the underlying cache are read from dirty elements and then from the backing storage without caching them,
+ * as a concurrent put could be overwritten by such a read. Evictions from the underlying cache don't touch the backing
+ * storage, which holds all the elements. Size and capacity are the ones of the underlying cache.
+ * The underlying cache and the backing storage must be thread-safe.
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+// We don't use local locks for locking (we use locks in the heap)
+@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+public class WriteBehindCache<K, V> implements Cache<K, V>, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final int STRIPES = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 16);
+
+    private final Cache<K, V> cache;
+
+    private final Storage<K, V> backing;
+
+    private final int maxBatchSize;
+
+    private final int maxDirty;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ScheduledFuture<?> periodicFlush;
+
+    // latest not flushed write for every dirty key
+    private final ConcurrentMap<K, Write<V>> dirty = new ConcurrentHashMap<>();
+
+    // dirty keys in the order they have become dirty
+    private final Queue<K> dirtyKeys = new ConcurrentLinkedQueue<>();
+
+    // guard a write to the underlying cache together with marking the key dirty, so they are in the same order for
+    // concurrent writes of a key. Striped by the key's hash
+    private final Object[] locks = new Object[STRIPES];
+
+    // only one flush at a time, so writes of a key can't be reordered
+    private final Lock flushLock = new ReentrantLock();
+
+    // true if a batch flush is scheduled
+    private final AtomicBoolean batchFlushScheduled = new AtomicBoolean();
+
+    /**
+     * Put or remove that waits to be written to the backing storage. Compared by identity
+     */
+    private static class Write<V> {
+        // null for a remove
+        @Nullable
+        private final V value;
+
+        private Write(@Nullable V value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * @param maxBatchSize  number of dirty elements that triggers a flush and max number of elements written by it
+     * @param maxDirty      number of dirty elements after which callers flush synchronously
+     * @param flushInterval max time before a dirty element is flushed if the flusher keeps up
+     * @param scheduler     executes flushes. Isn't shut down by the cache
+     */
+    public WriteBehindCache(@Nonnull Cache<K, V> cache, @Nonnull Storage<K, V> backing, int maxBatchSize, int maxDirty,
+                            long flushInterval, @Nonnull TimeUnit unit, @Nonnull ScheduledExecutorService scheduler) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(backing, "backing");
+        Objects.requireNonNull(unit, "unit");
+        Objects.requireNonNull(scheduler, "scheduler");
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("Max batch size can't be less than 1!");
+        if (maxDirty < maxBatchSize)
+            throw new IllegalArgumentException("Max dirty can't be less than max batch size!");
+        if (flushInterval <= 0)
+            throw new IllegalArgumentException("Flush interval must be positive!");
+        this.cache = cache;
+        this.backing = backing;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDirty = maxDirty;
+        this.scheduler = scheduler;
+        for (int i = 0; i < locks.length; i++)
+            locks[i] = new Object();
+        this.periodicFlush = scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, unit);
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Optional<V> cached = cache.get(key);
+        if (cached.isPresent())
+            return cached;
+        Write<V> write = dirty.get(key);
+        return write != null ? Optional.ofNullable(write.value) : backing.get(key);
+    }
+
+    @Override
+    public Optional<Map.Entry<K, V>> put(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Optional<Map.Entry<K, V>> evicted;
+        synchronized (getLock(key)) {
+            evicted = cache.put(key, value);
+            markDirtyLocked(key, value);
+        }
+        afterWrite();
+        return evicted;
+    }
+
+    @Override
+    public void put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        synchronized (getLock(key)) {
+            cache.put(key, value, evictedConsumer);
+            markDirtyLocked(key, value);
+        }
+        afterWrite();
+    }
+
+    /**
+     * Computes in the underlying cache under the key's lock, so it's atomic with puts and removes through this cache
+     * and with other computes if the underlying compute is atomic. A value absent in the underlying cache is read from
+     * dirty elements and the backing storage
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        Optional<V> computed;
+        synchronized (getLock(key)) {
+            computed = cache.compute(key, (k, cachedValue) -> {
+                V oldValue = cachedValue;
+                if (oldValue == null) {
+                    Write<V> write = dirty.get(k);
+                    oldValue = write != null ? write.value : backing.get(k).orElse(null);
+                }
+                V newValue = remappingFunction.apply(k, oldValue);
+                if (newValue != oldValue)
+                    markDirtyLocked(k, newValue);
+                return newValue;
+            });
+        }
+        afterWrite();
+        return computed;
+    }
+
+    /**
+     * Evicts from the underlying cache only. The evicted element stays in the backing storage
+     */
+    @Override
+    public Optional<Map.Entry<K, V>> evict() {
+        return cache.evict();
+    }
+
+    /**
+     * Removes the element from the underlying cache and the backing storage. The backing storage is read if the
+     * element is not in the underlying cache to return the removed value
+     */
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Optional<V> removed;
+        Write<V> prevWrite;
+        synchronized (getLock(key)) {
+            removed = cache.remove(key);
+            prevWrite = markDirtyLocked(key, null);
+        }
+        afterWrite();
+        if (removed.isPresent())
+            return removed;
+        return prevWrite != null ? Optional.ofNullable(prevWrite.value) : backing.get(key);
+    }
+
+    /**
+     * Removes the element from the underlying cache only, as an eviction does
+     */
+    @Override
+    public Optional<V> removeQuietly(@Nonnull K key) {
+        return cache.removeQuietly(key);
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        if (cache.contains(key))
+            return true;
+        Write<V> write = dirty.get(key);
+        return write != null ? write.value != null : backing.contains(key);
+    }
+
+    /**
+     * @return the previous not flushed write of the key
+     */
+    @GuardedBy("locks")
+    private Write<V> markDirtyLocked(K key, @Nullable V value) {
+        Write<V> prevWrite = dirty.put(key, new Write<>(value));
+        if (prevWrite == null)
+            dirtyKeys.add(key);
+        return prevWrite;
+    }
+
+    /**
+     * Flushes a batch in the calling thread if there are too many dirty elements or schedules it if there are enough
+     * of them for a batch. Called after the key's lock is released, so a slow flush doesn't block other writes
+     */
+    private void afterWrite() {
+        int dirtyCount = dirty.size();
+        if (dirtyCount >= maxDirty) {
+            // back-pressure: the flusher doesn't keep up. The write has already succeeded, so a failure of the backing
+            // storage, which may be the one of another key, is only logged
+            flushBatchQuietly();
+        } else if (dirtyCount >= maxBatchSize && batchFlushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    batchFlushScheduled.set(false);
+                    flushBatchQuietly();
+                });
+            } catch (RuntimeException e) {
+                batchFlushScheduled.set(false);
+                log.warn("Couldn't schedule a flush", e);
+            }
+        }
+    }
+
+    private Object getLock(K key) {
+        int hash = key.hashCode();
+        // spread higher bits as ConcurrentHashMap does
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    /**
+     * Writes all dirty elements to the backing storage in the calling thread
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (!dirty.isEmpty()) {
+                if (flushLocked(Integer.MAX_VALUE) == 0)
+                    break;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushBatch() {
+        flushLock.lock();
+        try {
+            flushLocked(maxBatchSize);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of written elements
+     */
+    @GuardedBy("flushLock")
+    private int flushLocked(int limit) {
+        int written = 0;
+        int polled = 0;
+        // keys dirtied during the flush are left to the next one
+        int queued = dirtyKeys.size();
+        K key;
+        while (written < limit && polled++ < queued && (key = dirtyKeys.poll()) != null) {
+            Write<V> write = dirty.get(key);
+            if (write == null)
+                continue;
+            try {
+                if (write.value != null)
+                    backing.put(key, write.value);
+                else
+                    backing.remove(key);
+            } catch (RuntimeException e) {
+                // keep the element dirty to retry it with the next flush
+                dirtyKeys.add(key);
+                throw e;
+            }
+            written++;
+            // a newer write of the key has come during the write, so the key stays dirty
+            if (!dirty.remove(key, write))
+                dirtyKeys.add(key);
+        }
+        return written;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Couldn't flush to the backing storage", e);
+        }
+    }
+
+    private void flushBatchQuietly() {
+        try {
+            flushBatch();
+        } catch (RuntimeException e) {
+            log.error("Couldn't flush to the backing storage", e);
+        }
+    }
+
+    /**
+     * @return number of elements that haven't been written to the backing storage yet
+     */
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Stops periodic flushes and flushes all dirty elements
+     */
+    @Override
+    public void close() {
+        periodicFlush.cancel(false);
+        flush();
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    /**
+     * Streams keys of the underlying cache. The backing storage streams all of them
+     */
+    @Override
+    public Stream<K> keys() {
+        return cache.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return cache.entries();
+    }
+
+    @Override
+    public int getCapacity() {
+        return cache.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        cache.setCapacity(capacity);
+    }
+
+    @Override
+    public boolean isFull() {
+        return cache.isFull();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    @Override
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+}
@@ -0,0 +1,19 @@
+package ru.glaizier.key.value.cache3.cache.promotion;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Moves every hit to the first level
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class AlwaysPromotionPolicy<K> implements PromotionPolicy<K> {
+
+    @Override
+    public boolean hit(@Nonnull K key, int levelIndex) {
+        return true;
+    }
+
+}
@@ -0,0 +1,41 @@
+package ru.glaizier.key.value.cache3.cache.promotion;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.util.FrequencySketch;
+
+/**
+ * Moves a key to the first level when its recent frequency of lower level hits estimated by a count-min sketch
+ * reaches the threshold. Unlike HitCountPromotionPolicy, it uses constant memory and forgets old hits
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class FrequencyPromotionPolicy<K> implements PromotionPolicy<K> {
+
+    private final int minFrequency;
+
+    private final FrequencySketch<K> sketch;
+
+    /**
+     * @param minFrequency number of recent hits to promote a key. Not greater than FrequencySketch.MAX_FREQUENCY
+     * @param expectedKeys number of distinct keys expected in lower levels
+     */
+    public FrequencyPromotionPolicy(int minFrequency, int expectedKeys) {
+        if (minFrequency <= 0 || minFrequency > FrequencySketch.MAX_FREQUENCY)
+            throw new IllegalArgumentException("Min frequency must be in [1, " + FrequencySketch.MAX_FREQUENCY + "]!");
+        this.minFrequency = minFrequency;
+        this.sketch = new FrequencySketch<>(expectedKeys);
+    }
+
+    @Override
+    public boolean hit(@Nonnull K key, int levelIndex) {
+        Objects.requireNonNull(key, "key");
+        sketch.increment(key);
+        return sketch.frequency(key) >= minFrequency;
+    }
+
+}
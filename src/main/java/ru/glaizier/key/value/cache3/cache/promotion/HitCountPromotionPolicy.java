@@ -0,0 +1,46 @@
+package ru.glaizier.key.value.cache3.cache.promotion;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Moves a key to the first level after it has been hit the given number of times in lower levels.
+ * Counts are exact, so the policy keeps a counter for every key that has been hit in lower levels until the key is
+ * promoted or leaves the cache
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class HitCountPromotionPolicy<K> implements PromotionPolicy<K> {
+
+    private final int hits;
+
+    private final ConcurrentMap<K, Integer> counts = new ConcurrentHashMap<>();
+
+    public HitCountPromotionPolicy(int hits) {
+        if (hits <= 0)
+            throw new IllegalArgumentException("Hits can't be less than 1!");
+        this.hits = hits;
+    }
+
+    @Override
+    public boolean hit(@Nonnull K key, int levelIndex) {
+        Objects.requireNonNull(key, "key");
+        int count = counts.merge(key, 1, Integer::sum);
+        if (count < hits)
+            return false;
+        counts.remove(key);
+        return true;
+    }
+
+    @Override
+    public void remove(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        counts.remove(key);
+    }
+
+}
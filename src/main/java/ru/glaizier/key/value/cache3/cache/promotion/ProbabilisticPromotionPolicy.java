@@ -0,0 +1,30 @@
+package ru.glaizier.key.value.cache3.cache.promotion;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Moves a hit to the first level with the given probability. Keeps no state, but a key hit n times is promoted with
+ * the probability 1 - (1 - p)^n, so hot keys get to the first level quickly while one-off hits mostly stay in place
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class ProbabilisticPromotionPolicy<K> implements PromotionPolicy<K> {
+
+    private final double probability;
+
+    public ProbabilisticPromotionPolicy(double probability) {
+        if (probability <= 0 || probability > 1)
+            throw new IllegalArgumentException("Probability must be in (0, 1]!");
+        this.probability = probability;
+    }
+
+    @Override
+    public boolean hit(@Nonnull K key, int levelIndex) {
+        return ThreadLocalRandom.current().nextDouble() < probability;
+    }
+
+}
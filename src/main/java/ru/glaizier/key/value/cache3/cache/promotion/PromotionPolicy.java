@@ -0,0 +1,28 @@
+package ru.glaizier.key.value.cache3.cache.promotion;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Decides whether an element found in a lower level of a multi level cache is moved to the first level.
+ * An element that is not promoted is served from its current level.
+ * Moving every hit is not always worth it as it can cascade evictions through every lower level
+ *
+ * @author GlaIZier
+ */
+public interface PromotionPolicy<K> {
+
+    /**
+     * Registers a hit of the key in a lower level
+     *
+     * @param levelIndex index of the level where the key has been found. Greater than 0
+     * @return true if the key should be moved to the first level
+     */
+    boolean hit(@Nonnull K key, int levelIndex);
+
+    /**
+     * Tells the policy that the key has left the cache, so its statistics can be dropped
+     */
+    default void remove(@Nonnull K key) {
+    }
+
+}
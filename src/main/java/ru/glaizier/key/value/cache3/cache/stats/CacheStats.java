@@ -0,0 +1,130 @@
+package ru.glaizier.key.value.cache3.cache.stats;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+import ru.glaizier.key.value.cache3.cache.RemovalCause;
+
+/**
+ * Immutable snapshot of statistics of a cache
+ *
+ * @author GlaIZier
+ */
+@Immutable
+public final class CacheStats {
+
+    public static final CacheStats EMPTY = new CacheStats(0, 0, 0, new long[RemovalCause.values().length], 0, 0, 0);
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long putCount;
+
+    // indexed by the ordinal of the cause
+    private final long[] removalCounts;
+
+    private final long loadSuccessCount;
+
+    private final long loadFailureCount;
+
+    private final long totalLoadTimeNanos;
+
+    CacheStats(long hitCount, long missCount, long putCount, long[] removalCounts, long loadSuccessCount,
+               long loadFailureCount, long totalLoadTimeNanos) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.removalCounts = removalCounts;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTimeNanos = totalLoadTimeNanos;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return ratio of hits to requests or 1 if there were no requests
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public double getMissRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 0.0 : (double) missCount / requestCount;
+    }
+
+    public long getPutCount() {
+        return putCount;
+    }
+
+    public long getRemovalCount(@Nonnull RemovalCause cause) {
+        Objects.requireNonNull(cause, "cause");
+        return removalCounts[cause.ordinal()];
+    }
+
+    public long getEvictionCount() {
+        return getRemovalCount(RemovalCause.EVICTED);
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long getTotalLoadTimeNanos() {
+        return totalLoadTimeNanos;
+    }
+
+    /**
+     * @return average time spent on a load or 0 if there were no loads
+     */
+    public double getAverageLoadPenaltyNanos() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return loadCount == 0 ? 0.0 : (double) totalLoadTimeNanos / loadCount;
+    }
+
+    /**
+     * @return sum of these and other statistics, e.g. to aggregate statistics of several caches
+     */
+    public CacheStats plus(@Nonnull CacheStats other) {
+        Objects.requireNonNull(other, "other");
+        long[] removals = new long[removalCounts.length];
+        for (int i = 0; i < removals.length; i++)
+            removals[i] = removalCounts[i] + other.removalCounts[i];
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount, putCount + other.putCount,
+                removals, loadSuccessCount + other.loadSuccessCount, loadFailureCount + other.loadFailureCount,
+                totalLoadTimeNanos + other.totalLoadTimeNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", putCount=" + putCount +
+                ", removalCounts=" + Arrays.toString(removalCounts) +
+                ", loadSuccessCount=" + loadSuccessCount +
+                ", loadFailureCount=" + loadFailureCount +
+                ", totalLoadTimeNanos=" + totalLoadTimeNanos +
+                '}';
+    }
+}
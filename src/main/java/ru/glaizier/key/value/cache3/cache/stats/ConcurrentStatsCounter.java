@@ -0,0 +1,81 @@
+package ru.glaizier.key.value.cache3.cache.stats;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.cache.RemovalCause;
+
+/**
+ * Counter on LongAdders, so threads recording at the same time don't contend on the same memory.
+ * A snapshot taken during recording may be inconsistent between counters
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class ConcurrentStatsCounter implements StatsCounter {
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder putCount = new LongAdder();
+
+    // indexed by the ordinal of the cause
+    private final LongAdder[] removalCounts = new LongAdder[RemovalCause.values().length];
+
+    private final LongAdder loadSuccessCount = new LongAdder();
+
+    private final LongAdder loadFailureCount = new LongAdder();
+
+    private final LongAdder totalLoadTime = new LongAdder();
+
+    public ConcurrentStatsCounter() {
+        for (int i = 0; i < removalCounts.length; i++)
+            removalCounts[i] = new LongAdder();
+    }
+
+    @Override
+    public void recordHit() {
+        hitCount.increment();
+    }
+
+    @Override
+    public void recordMiss() {
+        missCount.increment();
+    }
+
+    @Override
+    public void recordPut() {
+        putCount.increment();
+    }
+
+    @Override
+    public void recordRemoval(@Nonnull RemovalCause cause) {
+        Objects.requireNonNull(cause, "cause");
+        removalCounts[cause.ordinal()].increment();
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTimeNanos) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTimeNanos);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTimeNanos) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTimeNanos);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        long[] removals = new long[removalCounts.length];
+        for (int i = 0; i < removals.length; i++)
+            removals[i] = removalCounts[i].sum();
+        return new CacheStats(hitCount.sum(), missCount.sum(), putCount.sum(), removals, loadSuccessCount.sum(),
+                loadFailureCount.sum(), totalLoadTime.sum());
+    }
+}
@@ -0,0 +1,42 @@
+package ru.glaizier.key.value.cache3.cache.stats;
+
+import javax.annotation.Nonnull;
+
+import ru.glaizier.key.value.cache3.cache.RemovalCause;
+
+/**
+ * @author GlaIZier
+ */
+enum DisabledStatsCounter implements StatsCounter {
+
+    INSTANCE;
+
+    @Override
+    public void recordHit() {
+    }
+
+    @Override
+    public void recordMiss() {
+    }
+
+    @Override
+    public void recordPut() {
+    }
+
+    @Override
+    public void recordRemoval(@Nonnull RemovalCause cause) {
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTimeNanos) {
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTimeNanos) {
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return CacheStats.EMPTY;
+    }
+}
@@ -0,0 +1,35 @@
+package ru.glaizier.key.value.cache3.cache.stats;
+
+import javax.annotation.Nonnull;
+
+import ru.glaizier.key.value.cache3.cache.RemovalCause;
+
+/**
+ * Accumulates statistics of a cache. Implementations must be cheap enough to be called on every operation
+ *
+ * @author GlaIZier
+ */
+public interface StatsCounter {
+
+    void recordHit();
+
+    void recordMiss();
+
+    void recordPut();
+
+    void recordRemoval(@Nonnull RemovalCause cause);
+
+    void recordLoadSuccess(long loadTimeNanos);
+
+    void recordLoadFailure(long loadTimeNanos);
+
+    CacheStats snapshot();
+
+    /**
+     * @return counter that records nothing
+     */
+    static StatsCounter disabled() {
+        return DisabledStatsCounter.INSTANCE;
+    }
+
+}
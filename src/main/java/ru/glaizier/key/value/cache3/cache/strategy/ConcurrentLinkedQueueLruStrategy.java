@@ -21,7 +21,12 @@ public class ConcurrentLinkedQueueLruStrategy<K> implements Strategy<K> {
 
     @Override
     public Optional<K> evict() {
-        return Optional.ofNullable(q.poll());
+        return Optional.ofNullable(evictOrNull());
+    }
+
+    @Override
+    public K evictOrNull() {
+        return q.poll();
     }
 
     /**
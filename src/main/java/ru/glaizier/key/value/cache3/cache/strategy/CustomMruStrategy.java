@@ -22,12 +22,16 @@ public class CustomMruStrategy<K> implements Strategy<K> {
 
     @Override
     public Optional<K> evict() {
+        return Optional.ofNullable(evictOrNull());
+    }
+
+    @Override
+    public K evictOrNull() {
         // remove from queue if found key
-        return Optional.ofNullable(queue.getHead())
-                .map(evicted -> {
-                    queue.remove(evicted);
-                    return evicted;
-                });
+        K evicted = queue.getHead();
+        if (evicted != null)
+            queue.remove(evicted);
+        return evicted;
     }
 
     @Override
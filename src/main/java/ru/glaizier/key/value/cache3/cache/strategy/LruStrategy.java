@@ -2,6 +2,7 @@ package ru.glaizier.key.value.cache3.cache.strategy;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.Optional;
@@ -24,13 +25,21 @@ public class LruStrategy<K> implements Strategy<K> {
      */
     @Override
     public Optional<K> evict() {
+        return Optional.ofNullable(evictOrNull());
+    }
+
+    /**
+     * O(1)
+     */
+    @Override
+    public K evictOrNull() {
         // Find first element for eviction and remove it if it was found
-        return queue.stream()
-                .findFirst()
-                .map(evictedKey -> {
-                    queue.remove(evictedKey);
-                    return evictedKey;
-                });
+        Iterator<K> iterator = queue.iterator();
+        if (!iterator.hasNext())
+            return null;
+        K evictedKey = iterator.next();
+        iterator.remove();
+        return evictedKey;
     }
 
     /**
@@ -26,10 +26,16 @@ public class MruStrategy<K> implements Strategy<K> {
 
     @Override
     public Optional<K> evict() {
+        return ofNullable(evictOrNull());
+    }
+
+    @Override
+    public K evictOrNull() {
         if (queue.isEmpty())
-            return empty();
+            return null;
         K lastAdded = queue.lastKey();
-        return of(queue.remove(lastAdded)).map(v -> lastAdded);
+        queue.remove(lastAdded);
+        return lastAdded;
     }
 
     @Override
@@ -1,6 +1,7 @@
 package ru.glaizier.key.value.cache3.cache.strategy;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Optional;
 
 /**
@@ -17,6 +18,16 @@ public interface Strategy<K> {
      */
     Optional<K> evict();
 
+    /**
+     * Same as evict without allocating an Optional
+     *
+     * @return evicted key or null if there are no keys
+     */
+    @Nullable
+    default K evictOrNull() {
+        return evict().orElse(null);
+    }
+
     /**
      * Tells the strategy that current key element was recently used. Also, can be used to add new key to statistics
      *
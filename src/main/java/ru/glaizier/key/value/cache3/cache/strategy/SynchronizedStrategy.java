@@ -30,6 +30,13 @@ public class SynchronizedStrategy<K> implements Strategy<K> {
         }
     }
 
+    @Override
+    public K evictOrNull() {
+        synchronized (lock) {
+            return strategy.evictOrNull();
+        }
+    }
+
     @Override
     public boolean use(@Nonnull K key) {
         Objects.requireNonNull(key, "key");
@@ -0,0 +1,49 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+/**
+ * Live view of a cache for JMX clients like jconsole. Latencies are 0 unless the cache is an InstrumentedCache
+ *
+ * @author GlaIZier
+ */
+public interface CacheMXBean {
+
+    int getSize();
+
+    int getCapacity();
+
+    /**
+     * Makes the capacity writable, e.g. to shrink a level when the heap is short. A reduced capacity is reached
+     * incrementally
+     */
+    void setCapacity(int capacity);
+
+    long getWeight();
+
+    long getMaxWeight();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getEvictionCount();
+
+    /**
+     * @return evictions per second since the previous call
+     */
+    double getEvictionRate();
+
+    long getGetLatencyP50Nanos();
+
+    long getGetLatencyP99Nanos();
+
+    long getGetLatencyP999Nanos();
+
+    long getPutLatencyP50Nanos();
+
+    long getPutLatencyP99Nanos();
+
+    long getPutLatencyP999Nanos();
+
+}
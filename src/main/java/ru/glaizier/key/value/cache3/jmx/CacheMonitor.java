@@ -0,0 +1,138 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.cache.Cache;
+import ru.glaizier.key.value.cache3.cache.InstrumentedCache;
+import ru.glaizier.key.value.cache3.metrics.LatencySnapshot;
+import ru.glaizier.key.value.cache3.metrics.Operation;
+
+/**
+ * CacheMXBean of a thread-safe cache
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class CacheMonitor implements CacheMXBean {
+
+    private final Cache<?, ?> cache;
+
+    private final LongSupplier ticker;
+
+    @GuardedBy("this")
+    private long lastEvictionCount;
+
+    @GuardedBy("this")
+    private long lastEvictionRateTime;
+
+    public CacheMonitor(@Nonnull Cache<?, ?> cache) {
+        this(cache, System::nanoTime);
+    }
+
+    CacheMonitor(Cache<?, ?> cache, LongSupplier ticker) {
+        Objects.requireNonNull(cache, "cache");
+        Objects.requireNonNull(ticker, "ticker");
+        this.cache = cache;
+        this.ticker = ticker;
+        this.lastEvictionCount = cache.getStats().getEvictionCount();
+        this.lastEvictionRateTime = ticker.getAsLong();
+    }
+
+    @Override
+    public int getSize() {
+        return cache.getSize();
+    }
+
+    @Override
+    public int getCapacity() {
+        return cache.getCapacity();
+    }
+
+    @Override
+    public void setCapacity(int capacity) {
+        cache.setCapacity(capacity);
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    @Override
+    public long getHitCount() {
+        return cache.getStats().getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return cache.getStats().getMissCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return cache.getStats().getHitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.getStats().getEvictionCount();
+    }
+
+    @Override
+    public synchronized double getEvictionRate() {
+        long evictionCount = cache.getStats().getEvictionCount();
+        long now = ticker.getAsLong();
+        long elapsedNanos = now - lastEvictionRateTime;
+        double rate = elapsedNanos <= 0 ? 0 : (evictionCount - lastEvictionCount) * 1e9 / elapsedNanos;
+        lastEvictionCount = evictionCount;
+        lastEvictionRateTime = now;
+        return rate;
+    }
+
+    @Override
+    public long getGetLatencyP50Nanos() {
+        return getLatency(Operation.GET, 50);
+    }
+
+    @Override
+    public long getGetLatencyP99Nanos() {
+        return getLatency(Operation.GET, 99);
+    }
+
+    @Override
+    public long getGetLatencyP999Nanos() {
+        return getLatency(Operation.GET, 99.9);
+    }
+
+    @Override
+    public long getPutLatencyP50Nanos() {
+        return getLatency(Operation.PUT, 50);
+    }
+
+    @Override
+    public long getPutLatencyP99Nanos() {
+        return getLatency(Operation.PUT, 99);
+    }
+
+    @Override
+    public long getPutLatencyP999Nanos() {
+        return getLatency(Operation.PUT, 99.9);
+    }
+
+    private long getLatency(Operation operation, double percentile) {
+        if (!(cache instanceof InstrumentedCache))
+            return 0;
+        LatencySnapshot snapshot = ((InstrumentedCache<?, ?>) cache).getHistogram(operation).snapshot();
+        return snapshot.getValueAtPercentile(percentile);
+    }
+}
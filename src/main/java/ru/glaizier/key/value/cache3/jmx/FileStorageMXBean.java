@@ -0,0 +1,28 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+/**
+ * Live view of a file storage for JMX clients like jconsole
+ *
+ * @author GlaIZier
+ */
+public interface FileStorageMXBean {
+
+    String getFolder();
+
+    int getSize();
+
+    /**
+     * @return number of files in the folder. Greater than the size if there are unreferenced files
+     */
+    long getFileCount();
+
+    long getDiskBytes();
+
+    /**
+     * Deletes unreferenced files older than a minute
+     *
+     * @return number of deleted files
+     */
+    int compact();
+
+}
@@ -0,0 +1,49 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.storage.file.AbstractFileStorage;
+
+/**
+ * FileStorageMXBean of a thread-safe file storage
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class FileStorageMonitor implements FileStorageMXBean {
+
+    private final AbstractFileStorage<?, ?> storage;
+
+    public FileStorageMonitor(@Nonnull AbstractFileStorage<?, ?> storage) {
+        Objects.requireNonNull(storage, "storage");
+        this.storage = storage;
+    }
+
+    @Override
+    public String getFolder() {
+        return storage.getFolder().toString();
+    }
+
+    @Override
+    public int getSize() {
+        return storage.getSize();
+    }
+
+    @Override
+    public long getFileCount() {
+        return storage.getFileCount();
+    }
+
+    @Override
+    public long getDiskBytes() {
+        return storage.getDiskBytes();
+    }
+
+    @Override
+    public int compact() {
+        return storage.compact();
+    }
+}
@@ -0,0 +1,30 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live view of the hottest keys for JMX clients like jconsole
+ *
+ * @author GlaIZier
+ */
+public interface HeavyHittersMXBean {
+
+    /**
+     * @return the hottest keys with their counts and rates, the hottest first
+     */
+    List<String> getHotKeys();
+
+    /**
+     * @return estimated accesses per second of the hottest keys
+     */
+    Map<String, Double> getHotKeyRates();
+
+    long getDroppedCount();
+
+    /**
+     * Forgets all the keys and starts a new window
+     */
+    void reset();
+
+}
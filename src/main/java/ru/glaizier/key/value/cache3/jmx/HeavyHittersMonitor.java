@@ -0,0 +1,65 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+import static java.util.stream.Collectors.toList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.metrics.HeavyHitters;
+import ru.glaizier.key.value.cache3.metrics.HotKey;
+
+/**
+ * HeavyHittersMXBean that shows up to top keys. Keys are shown by their toString()
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class HeavyHittersMonitor implements HeavyHittersMXBean {
+
+    private static final int DEFAULT_TOP = 10;
+
+    private final HeavyHitters<?> heavyHitters;
+
+    private final int top;
+
+    public HeavyHittersMonitor(@Nonnull HeavyHitters<?> heavyHitters) {
+        this(heavyHitters, DEFAULT_TOP);
+    }
+
+    public HeavyHittersMonitor(@Nonnull HeavyHitters<?> heavyHitters, int top) {
+        Objects.requireNonNull(heavyHitters, "heavyHitters");
+        if (top <= 0)
+            throw new IllegalArgumentException("Top can't be less than 1!");
+        this.heavyHitters = heavyHitters;
+        this.top = top;
+    }
+
+    @Override
+    public List<String> getHotKeys() {
+        return heavyHitters.getTop(top).stream()
+                .map(HotKey::toString)
+                .collect(toList());
+    }
+
+    @Override
+    public Map<String, Double> getHotKeyRates() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (HotKey<?> hotKey : heavyHitters.getTop(top))
+            rates.put(String.valueOf(hotKey.getKey()), hotKey.getRate());
+        return rates;
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return heavyHitters.getDroppedCount();
+    }
+
+    @Override
+    public void reset() {
+        heavyHitters.reset();
+    }
+}
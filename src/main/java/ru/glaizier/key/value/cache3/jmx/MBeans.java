@@ -0,0 +1,103 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import ru.glaizier.key.value.cache3.cache.Cache;
+import ru.glaizier.key.value.cache3.cache.ConcurrentMultiLevelCache;
+import ru.glaizier.key.value.cache3.cache.SynchronizedCache;
+import ru.glaizier.key.value.cache3.metrics.HeavyHitters;
+import ru.glaizier.key.value.cache3.metrics.MissRatioCurve;
+import ru.glaizier.key.value.cache3.storage.file.AbstractFileStorage;
+
+/**
+ * Registers caches, storages, heavy hitters and miss ratio curves in the platform MBean server under the
+ * "ru.glaizier.key.value.cache3" domain
+ *
+ * @author GlaIZier
+ */
+public final class MBeans {
+
+    public static final String DOMAIN = "ru.glaizier.key.value.cache3";
+
+    private MBeans() {
+    }
+
+    public static ObjectName registerCache(@Nonnull String name, @Nonnull Cache<?, ?> cache) throws JMException {
+        Objects.requireNonNull(name, "name");
+        return register(new ObjectName(DOMAIN + ":type=Cache,name=" + ObjectName.quote(name)), new CacheMonitor(cache));
+    }
+
+    /**
+     * Registers the cache and every level of it. Levels are registered with the level property. Levels of the cache
+     * are thread-safe themselves
+     *
+     * @return names of the cache and the levels
+     */
+    public static List<ObjectName> registerMultiLevelCache(@Nonnull String name,
+                                                           @Nonnull ConcurrentMultiLevelCache<?, ?> cache)
+            throws JMException {
+        return registerMultiLevelCache(name, cache, cache.getLevels());
+    }
+
+    /**
+     * Registers the synchronized multi level cache and every level of it. Levels are read and resized under the lock
+     * of the cache
+     *
+     * @return names of the cache and the levels
+     */
+    public static List<ObjectName> registerMultiLevelCache(@Nonnull String name,
+                                                           @Nonnull SynchronizedCache<?, ?> cache) throws JMException {
+        return registerMultiLevelCache(name, cache, cache.getLevels());
+    }
+
+    private static List<ObjectName> registerMultiLevelCache(String name, Cache<?, ?> cache,
+                                                            List<? extends Cache<?, ?>> levels) throws JMException {
+        List<ObjectName> names = new ArrayList<>();
+        names.add(registerCache(name, cache));
+        for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+            ObjectName levelName = new ObjectName(DOMAIN + ":type=CacheLevel,name=" + ObjectName.quote(name)
+                    + ",level=" + levelIndex);
+            names.add(register(levelName, new CacheMonitor(levels.get(levelIndex))));
+        }
+        return names;
+    }
+
+    public static ObjectName registerFileStorage(@Nonnull String name,
+                                                 @Nonnull AbstractFileStorage<?, ?> storage) throws JMException {
+        Objects.requireNonNull(name, "name");
+        return register(new ObjectName(DOMAIN + ":type=FileStorage,name=" + ObjectName.quote(name)),
+                new FileStorageMonitor(storage));
+    }
+
+    public static ObjectName registerHeavyHitters(@Nonnull String name,
+                                                  @Nonnull HeavyHitters<?> heavyHitters) throws JMException {
+        Objects.requireNonNull(name, "name");
+        return register(new ObjectName(DOMAIN + ":type=HeavyHitters,name=" + ObjectName.quote(name)),
+                new HeavyHittersMonitor(heavyHitters));
+    }
+
+    public static ObjectName registerMissRatioCurve(@Nonnull String name,
+                                                    @Nonnull MissRatioCurve<?> missRatioCurve) throws JMException {
+        Objects.requireNonNull(name, "name");
+        return register(new ObjectName(DOMAIN + ":type=MissRatioCurve,name=" + ObjectName.quote(name)),
+                new MissRatioMonitor(missRatioCurve));
+    }
+
+    public static void unregister(@Nonnull ObjectName name) throws JMException {
+        Objects.requireNonNull(name, "name");
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    private static ObjectName register(ObjectName name, Object mBean) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        return server.registerMBean(mBean, name).getObjectName();
+    }
+}
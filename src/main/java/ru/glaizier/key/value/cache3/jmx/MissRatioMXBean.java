@@ -0,0 +1,26 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+import java.util.Map;
+
+/**
+ * Live view of a miss ratio curve for JMX clients like jconsole
+ *
+ * @author GlaIZier
+ */
+public interface MissRatioMXBean {
+
+    /**
+     * @return estimated miss ratios of an LRU cache by capacities from 0.1x to 10x of the capacity of the curve
+     */
+    Map<Integer, Double> getCurve();
+
+    double getSamplingRate();
+
+    int getSampledKeyCount();
+
+    /**
+     * Forgets all the keys and accesses
+     */
+    void reset();
+
+}
@@ -0,0 +1,43 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.metrics.MissRatioCurve;
+
+/**
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class MissRatioMonitor implements MissRatioMXBean {
+
+    private final MissRatioCurve<?> missRatioCurve;
+
+    public MissRatioMonitor(@Nonnull MissRatioCurve<?> missRatioCurve) {
+        Objects.requireNonNull(missRatioCurve, "missRatioCurve");
+        this.missRatioCurve = missRatioCurve;
+    }
+
+    @Override
+    public Map<Integer, Double> getCurve() {
+        return missRatioCurve.snapshot().getCurve();
+    }
+
+    @Override
+    public double getSamplingRate() {
+        return missRatioCurve.getSamplingRate();
+    }
+
+    @Override
+    public int getSampledKeyCount() {
+        return missRatioCurve.snapshot().getSampledKeyCount();
+    }
+
+    @Override
+    public void reset() {
+        missRatioCurve.reset();
+    }
+}
@@ -0,0 +1,203 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Tracks the most accessed keys with the Space-Saving algorithm: a fixed number of counters, where a new key replaces
+ * the key with the least count and inherits its count as the error. Every key accessed more than total / capacity
+ * times is guaranteed to be tracked.
+ * Counters are kept in a min-heap, so an access takes O(log capacity). An access that finds the counters locked by
+ * another thread is dropped instead of waiting, so tracking doesn't become a hot spot itself. Rates are scaled by the
+ * share of dropped accesses.
+ * Counts are accumulated in a window that starts with the creation or reset()
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class HeavyHitters<K> {
+
+    private final int capacity;
+
+    private final LongSupplier ticker;
+
+    private final Lock lock = new ReentrantLock();
+
+    @GuardedBy("lock")
+    private final Map<K, Counter<K>> counters;
+
+    // min-heap by count
+    @GuardedBy("lock")
+    private final Counter<K>[] heap;
+
+    @GuardedBy("lock")
+    private int size;
+
+    @GuardedBy("lock")
+    private long recorded;
+
+    @GuardedBy("lock")
+    private long windowStart;
+
+    private final LongAdder dropped = new LongAdder();
+
+    private static class Counter<K> {
+        private K key;
+        private long count;
+        private long error;
+        private int heapIndex;
+    }
+
+    /**
+     * @param capacity number of tracked keys. The more keys are tracked, the more precise the counts are
+     */
+    public HeavyHitters(int capacity) {
+        this(capacity, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    HeavyHitters(int capacity, @Nonnull LongSupplier ticker) {
+        Objects.requireNonNull(ticker, "ticker");
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity can't be less than 1!");
+        this.capacity = capacity;
+        this.ticker = ticker;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = (Counter<K>[]) new Counter<?>[capacity];
+        this.windowStart = ticker.getAsLong();
+    }
+
+    public void record(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        if (!lock.tryLock()) {
+            dropped.increment();
+            return;
+        }
+        try {
+            recorded++;
+            Counter<K> counter = counters.get(key);
+            if (counter == null && size < capacity) {
+                counter = new Counter<>();
+                counter.key = key;
+                counter.count = 1;
+                counter.heapIndex = size;
+                heap[size++] = counter;
+                counters.put(key, counter);
+                siftUp(counter.heapIndex);
+                return;
+            }
+            if (counter == null) {
+                // replace the least accessed key
+                counter = heap[0];
+                counters.remove(counter.key);
+                counter.error = counter.count;
+                counter.key = key;
+                counters.put(key, counter);
+            }
+            counter.count++;
+            siftDown(counter.heapIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return up to n most accessed keys, the most accessed first
+     */
+    public List<HotKey<K>> getTop(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("N can't be negative!");
+        lock.lock();
+        try {
+            double seconds = Math.max(1, ticker.getAsLong() - windowStart) / (double) TimeUnit.SECONDS.toNanos(1);
+            long droppedCount = dropped.sum();
+            double scale = recorded == 0 ? 1 : (double) (recorded + droppedCount) / recorded;
+            Counter<K>[] sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted, Comparator.comparingLong((Counter<K> counter) -> counter.count).reversed());
+            List<HotKey<K>> top = new ArrayList<>(Math.min(n, size));
+            for (int i = 0; i < Math.min(n, size); i++) {
+                Counter<K> counter = sorted[i];
+                top.add(new HotKey<>(counter.key, counter.count, counter.error, counter.count * scale / seconds));
+            }
+            return top;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets all the keys and starts a new window
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            counters.clear();
+            Arrays.fill(heap, null);
+            size = 0;
+            recorded = 0;
+            dropped.reset();
+            windowStart = ticker.getAsLong();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of accesses dropped because of contention in the current window
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @GuardedBy("lock")
+    private void siftUp(int index) {
+        Counter<K> counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= counter.count)
+                break;
+            heap[index] = heap[parent];
+            heap[index].heapIndex = index;
+            index = parent;
+        }
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+
+    @GuardedBy("lock")
+    private void siftDown(int index) {
+        Counter<K> counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count)
+                child++;
+            if (heap[child].count >= counter.count)
+                break;
+            heap[index] = heap[child];
+            heap[index].heapIndex = index;
+            index = child;
+        }
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+}
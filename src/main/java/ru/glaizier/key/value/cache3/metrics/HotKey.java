@@ -0,0 +1,57 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Key tracked by HeavyHitters with its estimated number of accesses
+ *
+ * @author GlaIZier
+ */
+@Immutable
+public final class HotKey<K> {
+
+    private final K key;
+
+    private final long count;
+
+    private final long error;
+
+    private final double rate;
+
+    HotKey(K key, long count, long error, double rate) {
+        this.key = key;
+        this.count = count;
+        this.error = error;
+        this.rate = rate;
+    }
+
+    public K getKey() {
+        return key;
+    }
+
+    /**
+     * @return estimated number of accesses in the current window. Overestimates by not more than the error
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return max overestimation of the count
+     */
+    public long getError() {
+        return error;
+    }
+
+    /**
+     * @return estimated accesses per second in the current window
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s=%d(+-%d, %.1f/s)", key, count, error, rate);
+    }
+}
@@ -0,0 +1,105 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Lock-free log-linear histogram of latencies in nanoseconds (like HdrHistogram). Values less than 64 are counted
+ * exactly, greater ones fall into one of 32 linear buckets of their power of two, so any recorded value is reported with
+ * the relative error less than 1/32.
+ * Besides the snapshot of all recorded values, snapshots of the values recorded since the previous interval snapshot
+ * can be taken
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class LatencyHistogram {
+
+    // number of the highest bits of a value that are kept
+    private static final int PRECISION_BITS = 6;
+
+    private static final int EXACT_BUCKETS = 1 << PRECISION_BITS;
+
+    private static final int SUB_BUCKETS = EXACT_BUCKETS >> 1;
+
+    // values up to 2^63 - 1: the highest bit is 62
+    static final int BUCKETS = EXACT_BUCKETS + (62 - PRECISION_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong max = new AtomicLong();
+
+    private final AtomicLong intervalMax = new AtomicLong();
+
+    // cumulative counts at the time of the last interval snapshot
+    @GuardedBy("this")
+    private long[] intervalStartCounts = new long[BUCKETS];
+
+    /**
+     * Negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        updateMax(max, value);
+        updateMax(intervalMax, value);
+    }
+
+    /**
+     * @return all values recorded so far
+     */
+    public LatencySnapshot snapshot() {
+        return new LatencySnapshot(copyCounts(), max.get());
+    }
+
+    /**
+     * @return values recorded since the previous call of this method or since creation
+     */
+    public synchronized LatencySnapshot intervalSnapshot() {
+        long intervalMaxValue = intervalMax.getAndSet(0);
+        long[] current = copyCounts();
+        long[] interval = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            interval[i] = current[i] - intervalStartCounts[i];
+        intervalStartCounts = current;
+        return new LatencySnapshot(interval, intervalMaxValue);
+    }
+
+    private long[] copyCounts() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            copy[i] = counts.get(i);
+        return copy;
+    }
+
+    static int index(long value) {
+        if (value < EXACT_BUCKETS)
+            return (int) value;
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - PRECISION_BITS + 1;
+        // the highest bits of the value in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        int top = (int) (value >>> shift);
+        return EXACT_BUCKETS + (shift - 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the greatest value that falls into the bucket
+     */
+    static long highestValue(int index) {
+        if (index < EXACT_BUCKETS)
+            return index;
+        int shift = (index - EXACT_BUCKETS) / SUB_BUCKETS + 1;
+        long top = (index - EXACT_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // retry
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Immutable snapshot of a LatencyHistogram. Percentiles are reported as the greatest value of their bucket, but not
+ * greater than the max
+ *
+ * @author GlaIZier
+ */
+@Immutable
+public final class LatencySnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long max;
+
+    LatencySnapshot(long[] counts, long max) {
+        this.counts = counts;
+        long total = 0;
+        for (long bucketCount : counts)
+            total += bucketCount;
+        this.count = total;
+        this.max = max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return value which the given percent of the recorded values don't exceed or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be in [0, 100]!");
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(LatencyHistogram.highestValue(i), max);
+        }
+        return max;
+    }
+
+    public double getMean() {
+        if (count == 0)
+            return 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++)
+            sum += (double) counts[i] * Math.min(LatencyHistogram.highestValue(i), max);
+        return sum / count;
+    }
+
+    public long getP50() {
+        return getValueAtPercentile(50);
+    }
+
+    public long getP99() {
+        return getValueAtPercentile(99);
+    }
+
+    public long getP999() {
+        return getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public String toString() {
+        return "LatencySnapshot{" +
+                "count=" + count +
+                ", p50=" + getP50() +
+                ", p99=" + getP99() +
+                ", p99.9=" + getP999() +
+                ", max=" + max +
+                '}';
+    }
+}
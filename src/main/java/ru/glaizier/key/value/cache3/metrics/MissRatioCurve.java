@@ -0,0 +1,252 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Estimates the miss ratio an LRU cache would have at every capacity from 0.1x to 10x of the given one with SHARDS:
+ * only keys whose hash is below a threshold are tracked, and reuse distances between their accesses scaled by the
+ * sampling rate are collected into a histogram. The first access of a key is a miss at any capacity.
+ * At most maxKeys keys are tracked: when there are more, the threshold is lowered to drop the keys with the greatest
+ * hashes, so the sampling rate adapts to the number of distinct keys. Every access is weighted by the rate it has been
+ * sampled at.
+ * Reuse distances are counted with a Fenwick tree over the times of the last accesses, so a sampled access takes
+ * O(log maxKeys) and accesses of not sampled keys take a hash only.
+ * Accesses are accumulated since the creation or reset()
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class MissRatioCurve<K> {
+
+    private static final double DEFAULT_SAMPLING_RATE = 0.01;
+
+    private static final int DEFAULT_MAX_KEYS = 8 * 1024;
+
+    // hashes are taken modulo this
+    private static final int MODULUS = 1 << 24;
+
+    private static final int MAX_CAPACITY_FACTOR = 10;
+
+    private static final int BUCKETS = 1000;
+
+    private final int capacity;
+
+    private final int maxKeys;
+
+    private final int initialThreshold;
+
+    // width of a bucket of the histogram in elements
+    private final double bucketWidth;
+
+    // keys with hashes below it are sampled
+    private volatile int threshold;
+
+    private final Lock lock = new ReentrantLock();
+
+    @GuardedBy("lock")
+    private final Map<K, Sample<K>> samples = new HashMap<>();
+
+    // the greatest hash first
+    @GuardedBy("lock")
+    private final PriorityQueue<Sample<K>> byHash =
+            new PriorityQueue<>(Comparator.comparingInt((Sample<K> sample) -> sample.hash).reversed());
+
+    // Fenwick tree that has 1 at the time of the last access of every sampled key
+    @GuardedBy("lock")
+    private final int[] lastAccesses;
+
+    @GuardedBy("lock")
+    private int time;
+
+    // weighted number of accesses by reuse distance. The last one holds longer distances and first accesses
+    @GuardedBy("lock")
+    private final double[] histogram = new double[BUCKETS + 1];
+
+    @GuardedBy("lock")
+    private double total;
+
+    private static class Sample<K> {
+        private final K key;
+        private final int hash;
+        private int time;
+
+        private Sample(K key, int hash, int time) {
+            this.key = key;
+            this.hash = hash;
+            this.time = time;
+        }
+    }
+
+    /**
+     * @param capacity capacity the curve is estimated around
+     */
+    public MissRatioCurve(int capacity) {
+        this(capacity, DEFAULT_SAMPLING_RATE, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * @param samplingRate initial share of tracked keys in (0, 1]
+     * @param maxKeys      max number of tracked keys
+     */
+    public MissRatioCurve(int capacity, double samplingRate, int maxKeys) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity can't be less than 1!");
+        if (samplingRate <= 0 || samplingRate > 1)
+            throw new IllegalArgumentException("Sampling rate must be in (0, 1]!");
+        if (maxKeys <= 0)
+            throw new IllegalArgumentException("Max keys can't be less than 1!");
+        this.capacity = capacity;
+        this.maxKeys = maxKeys;
+        this.initialThreshold = (int) Math.max(1, Math.round(samplingRate * MODULUS));
+        this.threshold = initialThreshold;
+        this.bucketWidth = (double) capacity * MAX_CAPACITY_FACTOR / BUCKETS;
+        // a live key has one time, so the times are compacted not more often than every maxKeys accesses
+        this.lastAccesses = new int[2 * maxKeys + 1];
+    }
+
+    public void record(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        int hash = hash(key);
+        if (hash >= threshold)
+            return;
+        lock.lock();
+        try {
+            // the threshold could have been lowered meanwhile
+            if (hash >= threshold)
+                return;
+            if (time == lastAccesses.length - 1)
+                compactTimes();
+            int now = ++time;
+            double weight = (double) MODULUS / threshold;
+            total += weight;
+            Sample<K> sample = samples.get(key);
+            if (sample == null) {
+                histogram[BUCKETS] += weight;
+                sample = new Sample<>(key, hash, now);
+                samples.put(key, sample);
+                byHash.add(sample);
+                add(now, 1);
+                if (samples.size() > maxKeys)
+                    lowerThreshold();
+                return;
+            }
+            // number of distinct sampled keys accessed since the previous access of the key
+            int distance = sum(now - 1) - sum(sample.time);
+            add(sample.time, -1);
+            add(now, 1);
+            sample.time = now;
+            histogram[bucket(distance * weight)] += weight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public MissRatioSnapshot snapshot() {
+        lock.lock();
+        try {
+            double[] cumulative = new double[BUCKETS];
+            double hits = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                hits += histogram[i];
+                cumulative[i] = hits;
+            }
+            return new MissRatioSnapshot(capacity, bucketWidth, cumulative, total, getSamplingRate(), samples.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets all the keys and accesses and restores the initial sampling rate
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            samples.clear();
+            byHash.clear();
+            Arrays.fill(lastAccesses, 0);
+            time = 0;
+            Arrays.fill(histogram, 0);
+            total = 0;
+            threshold = initialThreshold;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double getSamplingRate() {
+        return (double) threshold / MODULUS;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @GuardedBy("lock")
+    private void lowerThreshold() {
+        int newThreshold = byHash.peek().hash;
+        while (!byHash.isEmpty() && byHash.peek().hash >= newThreshold) {
+            Sample<K> dropped = byHash.poll();
+            samples.remove(dropped.key);
+            add(dropped.time, -1);
+        }
+        threshold = newThreshold;
+    }
+
+    /**
+     * Renumbers the last accesses from 1 keeping their order
+     */
+    @GuardedBy("lock")
+    private void compactTimes() {
+        List<Sample<K>> byTime = new ArrayList<>(samples.values());
+        byTime.sort(Comparator.comparingInt(sample -> sample.time));
+        Arrays.fill(lastAccesses, 0);
+        time = 0;
+        for (Sample<K> sample : byTime) {
+            sample.time = ++time;
+            add(time, 1);
+        }
+    }
+
+    @GuardedBy("lock")
+    private void add(int index, int delta) {
+        for (; index < lastAccesses.length; index += index & -index)
+            lastAccesses[index] += delta;
+    }
+
+    @GuardedBy("lock")
+    private int sum(int index) {
+        int sum = 0;
+        for (; index > 0; index -= index & -index)
+            sum += lastAccesses[index];
+        return sum;
+    }
+
+    private int bucket(double distance) {
+        return (int) Math.min(BUCKETS, distance / bucketWidth);
+    }
+
+    private static int hash(Object key) {
+        // murmur3 finalizer, so close hash codes are spread over the modulus
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & (MODULUS - 1);
+    }
+}
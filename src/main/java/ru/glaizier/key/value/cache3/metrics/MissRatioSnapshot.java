@@ -0,0 +1,96 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * Immutable snapshot of a MissRatioCurve. Miss ratios between the bounds of a bucket of reuse distances are
+ * interpolated linearly
+ *
+ * @author GlaIZier
+ */
+@Immutable
+public final class MissRatioSnapshot {
+
+    // capacities of the curve relative to the capacity it is estimated around
+    private static final double[] CURVE_FACTORS = {0.1, 0.25, 0.5, 0.75, 1, 1.25, 1.5, 2, 3, 4, 5, 7.5, 10};
+
+    private final int capacity;
+
+    private final double bucketWidth;
+
+    // weighted number of accesses with reuse distances up to the end of every bucket
+    private final double[] cumulativeHits;
+
+    private final double total;
+
+    private final double samplingRate;
+
+    private final int sampledKeyCount;
+
+    MissRatioSnapshot(int capacity, double bucketWidth, double[] cumulativeHits, double total, double samplingRate,
+                      int sampledKeyCount) {
+        this.capacity = capacity;
+        this.bucketWidth = bucketWidth;
+        this.cumulativeHits = cumulativeHits;
+        this.total = total;
+        this.samplingRate = samplingRate;
+        this.sampledKeyCount = sampledKeyCount;
+    }
+
+    /**
+     * @return estimated share of misses of an LRU cache of the given capacity or 0 if nothing has been recorded.
+     * Capacities over 10x of the capacity of the curve are estimated as 10x
+     */
+    public double getMissRatio(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Capacity can't be negative!");
+        if (total == 0)
+            return 0;
+        double position = Math.min(capacity / bucketWidth, cumulativeHits.length);
+        int fullBuckets = (int) position;
+        double hits = fullBuckets == 0 ? 0 : cumulativeHits[fullBuckets - 1];
+        if (fullBuckets < cumulativeHits.length) {
+            double bucketHits = cumulativeHits[fullBuckets] - hits;
+            hits += bucketHits * (position - fullBuckets);
+        }
+        return Math.max(0, 1 - hits / total);
+    }
+
+    public double getHitRatio(int capacity) {
+        return 1 - getMissRatio(capacity);
+    }
+
+    /**
+     * @return miss ratios by capacities from 0.1x to 10x of the capacity of the curve
+     */
+    public SortedMap<Integer, Double> getCurve() {
+        SortedMap<Integer, Double> curve = new TreeMap<>();
+        for (double factor : CURVE_FACTORS) {
+            int pointCapacity = (int) Math.max(1, Math.round(capacity * factor));
+            curve.put(pointCapacity, getMissRatio(pointCapacity));
+        }
+        return curve;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return estimated number of accesses
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    public double getSamplingRate() {
+        return samplingRate;
+    }
+
+    public int getSampledKeyCount() {
+        return sampledKeyCount;
+    }
+}
@@ -0,0 +1,18 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+/**
+ * Operation of a cache or a storage whose latency is measured
+ *
+ * @author GlaIZier
+ */
+public enum Operation {
+
+    GET,
+
+    PUT,
+
+    EVICT,
+
+    REMOVE
+
+}
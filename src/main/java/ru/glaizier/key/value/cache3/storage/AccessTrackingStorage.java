@@ -0,0 +1,94 @@
+package ru.glaizier.key.value.cache3.storage;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.metrics.HeavyHitters;
+
+/**
+ * Storage that records keys of gets, puts and removes to heavy hitters. Shows keys that saturate per-key locks of
+ * ConcurrentFileStorage or the disk worker of ConfinedFileStorage. Thread-safe if the underlying storage is thread-safe
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class AccessTrackingStorage<K, V> implements Storage<K, V> {
+
+    private final Storage<K, V> storage;
+
+    private final HeavyHitters<K> heavyHitters;
+
+    public AccessTrackingStorage(@Nonnull Storage<K, V> storage, @Nonnull HeavyHitters<K> heavyHitters) {
+        Objects.requireNonNull(storage, "storage");
+        Objects.requireNonNull(heavyHitters, "heavyHitters");
+        this.storage = storage;
+        this.heavyHitters = heavyHitters;
+    }
+
+    public HeavyHitters<K> getHeavyHitters() {
+        return heavyHitters;
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) throws StorageException {
+        heavyHitters.record(key);
+        return storage.get(key);
+    }
+
+    @Override
+    public Optional<V> put(@Nonnull K key, @Nonnull V value) throws StorageException {
+        heavyHitters.record(key);
+        return storage.put(key, value);
+    }
+
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+            throws StorageException {
+        heavyHitters.record(key);
+        return storage.compute(key, remappingFunction);
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) throws StorageException {
+        heavyHitters.record(key);
+        return storage.remove(key);
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) throws StorageException {
+        return storage.contains(key);
+    }
+
+    @Override
+    public int getSize() {
+        return storage.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return storage.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return storage.entries();
+    }
+
+    @Override
+    public void purge(@Nonnull Consumer<? super K> purgedConsumer) {
+        storage.purge(purgedConsumer);
+    }
+
+    @Override
+    public boolean dropsElements() {
+        return storage.dropsElements();
+    }
+}
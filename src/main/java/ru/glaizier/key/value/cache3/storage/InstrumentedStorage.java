@@ -0,0 +1,118 @@
+package ru.glaizier.key.value.cache3.storage;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.metrics.LatencyHistogram;
+import ru.glaizier.key.value.cache3.metrics.Operation;
+
+/**
+ * Storage that records latencies of get, put and remove of the underlying storage to histograms.
+ * Compute and the operations built on it are recorded as puts. Failed operations are recorded too.
+ * Thread-safe if the underlying storage is thread-safe
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class InstrumentedStorage<K, V> implements Storage<K, V> {
+
+    private final Storage<K, V> storage;
+
+    private final Map<Operation, LatencyHistogram> histograms = new EnumMap<>(Operation.class);
+
+    public InstrumentedStorage(@Nonnull Storage<K, V> storage) {
+        Objects.requireNonNull(storage, "storage");
+        this.storage = storage;
+        for (Operation operation : Operation.values())
+            histograms.put(operation, new LatencyHistogram());
+    }
+
+    /**
+     * Storages don't evict, so the histogram of EVICT stays empty
+     */
+    public LatencyHistogram getHistogram(@Nonnull Operation operation) {
+        Objects.requireNonNull(operation, "operation");
+        return histograms.get(operation);
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) throws StorageException {
+        long start = System.nanoTime();
+        try {
+            return storage.get(key);
+        } finally {
+            histograms.get(Operation.GET).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<V> put(@Nonnull K key, @Nonnull V value) throws StorageException {
+        long start = System.nanoTime();
+        try {
+            return storage.put(key, value);
+        } finally {
+            histograms.get(Operation.PUT).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+            throws StorageException {
+        long start = System.nanoTime();
+        try {
+            return storage.compute(key, remappingFunction);
+        } finally {
+            histograms.get(Operation.PUT).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) throws StorageException {
+        long start = System.nanoTime();
+        try {
+            return storage.remove(key);
+        } finally {
+            histograms.get(Operation.REMOVE).record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) throws StorageException {
+        return storage.contains(key);
+    }
+
+    @Override
+    public int getSize() {
+        return storage.getSize();
+    }
+
+    @Override
+    public Stream<K> keys() {
+        return storage.keys();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return storage.entries();
+    }
+
+    @Override
+    public void purge(@Nonnull Consumer<? super K> purgedConsumer) {
+        storage.purge(purgedConsumer);
+    }
+
+    @Override
+    public boolean dropsElements() {
+        return storage.dropsElements();
+    }
+
+}
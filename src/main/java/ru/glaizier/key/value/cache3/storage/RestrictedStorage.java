@@ -1,16 +1,42 @@
 package ru.glaizier.key.value.cache3.storage;
 
+import java.util.AbstractMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
+ * Streams of keys and entries are weakly consistent: they don't fail on concurrent modifications, see every element
+ * that is present during the whole traversal exactly once and may or may not see the elements changed meanwhile.
+ * Their spliterators split well, so they can be scanned in parallel
+ *
  * @author GlaIZier
  */
 public interface RestrictedStorage<K, V> {
 
     Optional<V> get(@Nonnull K key) throws StorageException;
 
+    /**
+     * Same as get without allocating an Optional. In-memory implementations override it and build get on top of it
+     *
+     * @return value or null if the key was not found
+     */
+    @Nullable
+    default V getOrNull(@Nonnull K key) throws StorageException {
+        return get(key).orElse(null);
+    }
+
+    /**
+     * @return value or the default value if the key was not found
+     */
+    default V getOrDefault(@Nonnull K key, @Nullable V defaultValue) throws StorageException {
+        V value = getOrNull(key);
+        return value != null ? value : defaultValue;
+    }
+
     /**
      * @return removed value or empty if the key was not found.
      */
@@ -27,4 +53,17 @@ public interface RestrictedStorage<K, V> {
         return getSize() == 0;
     }
 
+    Stream<K> keys();
+
+    /**
+     * Reads values of the keys lazily, so they are read by the threads of a parallel stream. Elements removed after
+     * their keys have been streamed are skipped
+     */
+    default Stream<Map.Entry<K, V>> entries() {
+        return keys()
+                .map(key -> get(key).map(value -> (Map.Entry<K, V>) new AbstractMap.SimpleImmutableEntry<>(key, value)))
+                .filter(Optional::isPresent)
+                .map(Optional::get);
+    }
+
 }
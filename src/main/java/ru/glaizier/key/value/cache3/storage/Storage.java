@@ -1,11 +1,19 @@
 package ru.glaizier.key.value.cache3.storage;
 
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.annotation.Nonnull;
 
 /**
- * Interface for a key-value storage
+ * Interface for a key-value storage.
+ * Read-modify-write operations are built on compute. Thread-safe storages override compute to make all of them atomic,
+ * while the default one is a get followed by a put or a remove
  * @author GlaIZier
  */
 public interface Storage<K, V> extends RestrictedStorage<K, V> {
@@ -15,4 +23,103 @@ public interface Storage<K, V> extends RestrictedStorage<K, V> {
      */
     Optional<V> put(@Nonnull K key, @Nonnull V value) throws StorageException;
 
+    /**
+     * Same as put without returning the previous value, so implementations don't need to read or wrap it
+     */
+    default void putQuietly(@Nonnull K key, @Nonnull V value) throws StorageException {
+        put(key, value);
+    }
+
+    /**
+     * Replaces the value with the result of the function. Null result removes the element. If the function returns
+     * the same instance it has got, the storage is not written
+     *
+     * @param remappingFunction gets null if there is no element
+     * @return new value or empty if there is no element after the call
+     */
+    default Optional<V> compute(@Nonnull K key,
+                                @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+            throws StorageException {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        V oldValue = get(key).orElse(null);
+        V newValue = remappingFunction.apply(key, oldValue);
+        if (newValue == null) {
+            if (oldValue != null)
+                remove(key);
+        } else if (newValue != oldValue) {
+            put(key, newValue);
+        }
+        return Optional.ofNullable(newValue);
+    }
+
+    /**
+     * @param mappingFunction is called only if there is no element. Null result means no element
+     * @return present or computed value
+     */
+    default Optional<V> computeIfAbsent(@Nonnull K key, @Nonnull Function<? super K, ? extends V> mappingFunction)
+            throws StorageException {
+        Objects.requireNonNull(mappingFunction, "mappingFunction");
+        return compute(key, (k, oldValue) -> oldValue != null ? oldValue : mappingFunction.apply(k));
+    }
+
+    /**
+     * @return present value or empty if the value has been put
+     */
+    default Optional<V> putIfAbsent(@Nonnull K key, @Nonnull V value) throws StorageException {
+        Objects.requireNonNull(value, "value");
+        AtomicReference<V> presentValue = new AtomicReference<>();
+        compute(key, (k, oldValue) -> {
+            presentValue.set(oldValue);
+            return oldValue != null ? oldValue : value;
+        });
+        return Optional.ofNullable(presentValue.get());
+    }
+
+    /**
+     * Replaces the value only if it's equal to the old value
+     *
+     * @return true if the value has been replaced
+     */
+    default boolean replace(@Nonnull K key, @Nonnull V oldValue, @Nonnull V newValue) throws StorageException {
+        Objects.requireNonNull(oldValue, "oldValue");
+        Objects.requireNonNull(newValue, "newValue");
+        AtomicBoolean replaced = new AtomicBoolean();
+        compute(key, (k, presentValue) -> {
+            if (!oldValue.equals(presentValue))
+                return presentValue;
+            replaced.set(true);
+            return newValue;
+        });
+        return replaced.get();
+    }
+
+    /**
+     * Puts the value if there is no element or the result of the function of the present and given values otherwise.
+     * Null result removes the element
+     *
+     * @return new value or empty if the element has been removed
+     */
+    default Optional<V> merge(@Nonnull K key, @Nonnull V value,
+                              @Nonnull BiFunction<? super V, ? super V, ? extends V> remappingFunction)
+            throws StorageException {
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        return compute(key, (k, oldValue) -> oldValue == null ? value : remappingFunction.apply(oldValue, value));
+    }
+
+    /**
+     * Removes elements the storage has dropped on its own, e.g. values collected by GC, and passes their keys to the
+     * consumer. Does nothing by default
+     */
+    default void purge(@Nonnull Consumer<? super K> purgedConsumer) {
+    }
+
+    /**
+     * @return true if the storage can drop elements on its own, see purge
+     */
+    default boolean dropsElements() {
+        return false;
+    }
+
 }
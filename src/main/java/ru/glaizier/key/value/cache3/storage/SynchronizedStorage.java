@@ -1,7 +1,11 @@
 package ru.glaizier.key.value.cache3.storage;
 
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.GuardedBy;
@@ -31,6 +35,15 @@ public class SynchronizedStorage<K, V> implements Storage<K, V> {
         }
     }
 
+    @Override
+    public V getOrNull(@Nonnull K key) throws StorageException {
+        Objects.requireNonNull(key);
+
+        synchronized (lock) {
+            return storage.getOrNull(key);
+        }
+    }
+
     @Override
     public Optional<V> put(@Nonnull K key, @Nonnull V value) throws StorageException {
         Objects.requireNonNull(key);
@@ -41,6 +54,30 @@ public class SynchronizedStorage<K, V> implements Storage<K, V> {
         }
     }
 
+    @Override
+    public void putQuietly(@Nonnull K key, @Nonnull V value) throws StorageException {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+
+        synchronized (lock) {
+            storage.putQuietly(key, value);
+        }
+    }
+
+    /**
+     * Atomic, as well as the other read-modify-write operations built on it
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+            throws StorageException {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+
+        synchronized (lock) {
+            return storage.compute(key, remappingFunction);
+        }
+    }
 
     @Override
     public Optional<V> remove(@Nonnull K key) throws StorageException {
@@ -67,4 +104,35 @@ public class SynchronizedStorage<K, V> implements Storage<K, V> {
         }
     }
 
+    /**
+     * Not guarded by the lock, as streams of storages are weakly consistent on their own
+     */
+    @Override
+    public Stream<K> keys() {
+        return storage.keys();
+    }
+
+    /**
+     * Not guarded by the lock, so a parallel stream reads values in parallel
+     */
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return storage.entries();
+    }
+
+    @Override
+    public void purge(@Nonnull Consumer<? super K> purgedConsumer) {
+        Objects.requireNonNull(purgedConsumer);
+
+        synchronized (lock) {
+            storage.purge(purgedConsumer);
+        }
+    }
+
+    @Override
+    public boolean dropsElements() {
+        synchronized (lock) {
+            return storage.dropsElements();
+        }
+    }
 }
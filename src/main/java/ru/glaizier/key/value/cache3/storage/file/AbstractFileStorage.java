@@ -7,6 +7,7 @@ import ru.glaizier.key.value.cache3.storage.StorageException;
 import ru.glaizier.key.value.cache3.util.Entry;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.*;
@@ -17,14 +18,22 @@ import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static java.lang.String.format;
 import static java.util.stream.Collectors.toConcurrentMap;
+import static java.util.stream.Collectors.toList;
 
 
 @ThreadSafe
@@ -39,6 +48,9 @@ public abstract class AbstractFileStorage<K extends Serializable, V extends Seri
 
     protected static final Pattern FILENAME_PATTERN = Pattern.compile("^(\\d+)#(\\S+)\\.(ser)$");
 
+    // files younger than this can belong to puts in progress
+    private static final long DEFAULT_COMPACTION_MIN_AGE_MS = TimeUnit.MINUTES.toMillis(1);
+
     // By default ConcurrentMap is used
     protected final Map<K, Path> contents;
 
@@ -63,9 +75,7 @@ public abstract class AbstractFileStorage<K extends Serializable, V extends Seri
     }
 
     protected Stream<Entry<K, Path>> getFilesStream(Path folder) throws IOException {
-        return Files.walk(folder)
-            .filter(Files::isRegularFile)
-            .filter(path -> FILENAME_PATTERN.matcher(path.getFileName().toString()).find())
+        return getStorageFiles(folder)
             .map(path -> {
                 try {
                     return new Entry<>(deserialize(path).key, path);
@@ -77,6 +87,12 @@ public abstract class AbstractFileStorage<K extends Serializable, V extends Seri
             .filter(Objects::nonNull);
     }
 
+    private static Stream<Path> getStorageFiles(Path folder) throws IOException {
+        return Files.walk(folder)
+            .filter(Files::isRegularFile)
+            .filter(path -> FILENAME_PATTERN.matcher(path.getFileName().toString()).find());
+    }
+
     // call only from a constructor
     protected Map<K, Path> buildContents(Path folder) throws IOException {
         return getFilesStream(folder)
@@ -97,6 +113,135 @@ public abstract class AbstractFileStorage<K extends Serializable, V extends Seri
         return contents.size();
     }
 
+    // Thread-safe
+    @Override
+    public Stream<K> keys() {
+        return contents.keySet().stream();
+    }
+
+    /**
+     * Thread-safe. Files are deserialized lazily by the threads of the stream without the synchronization of the
+     * storage, so a parallel stream reads them in parallel. If the file of a key has been replaced meanwhile, the new
+     * one is read. Keys removed meanwhile are skipped
+     */
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return contents.entrySet().stream()
+            .map(entry -> read(entry.getKey(), entry.getValue()))
+            .filter(Objects::nonNull);
+    }
+
+    @Nullable
+    private Map.Entry<K, V> read(K key, Path path) {
+        while (true) {
+            try {
+                return new AbstractMap.SimpleImmutableEntry<>(key, deserialize(path).value);
+            } catch (StorageException e) {
+                Path curPath = contents.get(key);
+                // the file is broken if it's still referenced
+                if (path.equals(curPath))
+                    throw e;
+                if (curPath == null)
+                    return null;
+                path = curPath;
+            }
+        }
+    }
+
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    /**
+     * @return number of files of the storage in the folder including the ones not referenced by the storage
+     */
+    public long getFileCount() throws StorageException {
+        try (Stream<Path> files = getStorageFiles(folder)) {
+            return files.count();
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return total size of the files referenced by the storage
+     */
+    public long getDiskBytes() {
+        long bytes = 0;
+        for (Path path : contents.values()) {
+            try {
+                bytes += Files.size(path);
+            } catch (IOException e) {
+                // the file has been removed or replaced meanwhile
+                log.trace("Couldn't get size of " + path, e);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Thread-safe. Keys whose files are replaced or removed meanwhile can be missed
+     *
+     * @return keys ordered by the last modified time of their files, the most recently modified first
+     */
+    public List<K> getKeysByModifiedTime() {
+        List<Map.Entry<K, Long>> modifiedTimes = new ArrayList<>(contents.size());
+        for (Map.Entry<K, Path> entry : contents.entrySet()) {
+            try {
+                modifiedTimes.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(),
+                        Files.getLastModifiedTime(entry.getValue()).toMillis()));
+            } catch (IOException e) {
+                log.trace("Couldn't get modified time of " + entry.getValue(), e);
+            }
+        }
+        return modifiedTimes.stream()
+                .sorted(Comparator.comparing(Map.Entry<K, Long>::getValue).reversed())
+                .map(Map.Entry::getKey)
+                .collect(toList());
+    }
+
+    /**
+     * Deletes files of the folder that are not referenced by the storage and are older than a minute.
+     * Such files are left by failed removes and puts (see RedundantFileStorageException). The folder mustn't be shared
+     * with other storages
+     *
+     * @return number of deleted files
+     */
+    public int compact() throws StorageException {
+        return compact(DEFAULT_COMPACTION_MIN_AGE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Thread-safe. Files younger than minAge are kept because they can belong to puts in progress, which have created
+     * a file but haven't referenced it yet
+     */
+    public int compact(long minAge, @Nonnull TimeUnit unit) throws StorageException {
+        Objects.requireNonNull(unit, "unit");
+        long maxModifiedTime = System.currentTimeMillis() - unit.toMillis(minAge);
+        List<Path> files;
+        try (Stream<Path> filesStream = getStorageFiles(folder)) {
+            files = filesStream.collect(toList());
+        } catch (IOException e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        // taken after listing, so files referenced meanwhile are not deleted
+        Set<Path> referenced = new HashSet<>(contents.values());
+        int deleted = 0;
+        for (Path file : files) {
+            try {
+                if (referenced.contains(file) || Files.getLastModifiedTime(file).toMillis() > maxModifiedTime)
+                    continue;
+                if (!contents.containsValue(file) && Files.deleteIfExists(file))
+                    deleted++;
+            } catch (IOException e) {
+                log.warn("Couldn't compact " + file, e);
+            }
+        }
+        if (deleted > 0)
+            log.info("Deleted {} unreferenced files from {}", deleted, folder);
+        return deleted;
+    }
 
     // Not thread-safe. Call with proper sync if needed
     @SuppressWarnings("unchecked")
@@ -11,6 +11,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 
 import static java.util.Optional.empty;
@@ -102,6 +103,33 @@ public class ConcurrentFileStorage<K extends Serializable, V extends Serializabl
         }
     }
 
+    /**
+     * Computes under the key's lock, so the operations built on compute are atomic too
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+
+        Object newLock = new Object();
+        while (true) {
+            Object lock = locks.computeIfAbsent(key, k -> newLock);
+            synchronized (lock) {
+                if (lock != locks.get(key))
+                    continue;
+                try {
+                    // get, put and remove acquire the same lock again
+                    return super.compute(key, remappingFunction);
+                } finally {
+                    // the lock of a computed absent element mustn't stay
+                    if (lock == newLock && !contents.containsKey(key))
+                        locks.remove(key, lock);
+                }
+            }
+        }
+    }
+
     @Override
     public Optional<V> remove(@Nonnull K key) {
         Objects.requireNonNull(key, "key");
@@ -12,6 +12,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
 
 import static java.util.Optional.ofNullable;
 
@@ -35,8 +36,7 @@ public class ConfinedFileStorage<K extends Serializable, V extends Serializable>
     @Override
     public Optional<V> get(@Nonnull K key) {
         Objects.requireNonNull(key, "key");
-        Future<Optional<V>> task = diskWorker.submit(() -> ofNullable(contents.get(key))
-            .map(path -> deserialize(path).value));
+        Future<Optional<V>> task = diskWorker.submit(() -> getConfined(key));
         return getFutureValue(task);
     }
 
@@ -45,14 +45,29 @@ public class ConfinedFileStorage<K extends Serializable, V extends Serializable>
         Objects.requireNonNull(key, "key");
         Objects.requireNonNull(value, "value");
 
+        Future<Optional<V>> task = diskWorker.submit(() -> putConfined(key, value));
+        return getFutureValue(task);
+    }
+
+    /**
+     * Computes in the disk worker, so the operations built on compute are atomic too
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+
         Future<Optional<V>> task = diskWorker.submit(() -> {
-            Optional<Path> prevPathOpt = ofNullable(contents.get(key));
-            Optional<V> prevValueOpt = prevPathOpt
-                .map(prevPath -> deserialize(prevPath).value);
-            Path path = serialize(key, value);
-            contents.put(key, path);
-            prevPathOpt.ifPresent(this::removeFile);
-            return prevValueOpt;
+            V oldValue = getConfined(key).orElse(null);
+            V newValue = remappingFunction.apply(key, oldValue);
+            if (newValue == null) {
+                if (oldValue != null)
+                    removeConfined(key);
+            } else if (newValue != oldValue) {
+                putConfined(key, newValue);
+            }
+            return ofNullable(newValue);
         });
         return getFutureValue(task);
     }
@@ -61,15 +76,35 @@ public class ConfinedFileStorage<K extends Serializable, V extends Serializable>
     public Optional<V> remove(@Nonnull K key) {
         Objects.requireNonNull(key, "key");
 
-        Future<Optional<V>> task = diskWorker.submit(() -> {
-            Optional<Path> removedPathOpt = ofNullable(contents.remove(key));
-            Optional<V> prevValue = removedPathOpt.map(prevPath -> deserialize(prevPath).value);
-            removedPathOpt.ifPresent(this::removeFile);
-            return prevValue;
-        });
+        Future<Optional<V>> task = diskWorker.submit(() -> removeConfined(key));
         return getFutureValue(task);
     }
 
+    // call only from the disk worker
+    private Optional<V> getConfined(K key) {
+        return ofNullable(contents.get(key))
+            .map(path -> deserialize(path).value);
+    }
+
+    // call only from the disk worker
+    private Optional<V> putConfined(K key, V value) {
+        Optional<Path> prevPathOpt = ofNullable(contents.get(key));
+        Optional<V> prevValueOpt = prevPathOpt
+            .map(prevPath -> deserialize(prevPath).value);
+        Path path = serialize(key, value);
+        contents.put(key, path);
+        prevPathOpt.ifPresent(this::removeFile);
+        return prevValueOpt;
+    }
+
+    // call only from the disk worker
+    private Optional<V> removeConfined(K key) {
+        Optional<Path> removedPathOpt = ofNullable(contents.remove(key));
+        Optional<V> prevValue = removedPathOpt.map(prevPath -> deserialize(prevPath).value);
+        removedPathOpt.ifPresent(this::removeFile);
+        return prevValue;
+    }
+
     public boolean stopDiskWorker() throws InterruptedException {
         return stopDiskWorker(10);
     }
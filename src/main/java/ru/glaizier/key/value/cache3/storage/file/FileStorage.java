@@ -1,11 +1,8 @@
 package ru.glaizier.key.value.cache3.storage.file;
 
 import static java.util.Optional.ofNullable;
-import static java.util.stream.Collectors.toMap;
-import java.io.IOException;
 import java.io.Serializable;
 import java.nio.file.Path;
-import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -14,6 +11,10 @@ import javax.annotation.concurrent.NotThreadSafe;
 
 import ru.glaizier.key.value.cache3.storage.StorageException;
 
+/**
+ * Contents are kept in a concurrent map like in the thread-safe storages, so streams are weakly consistent when the
+ * storage is synchronized externally (see SynchronizedStorage)
+ */
 @NotThreadSafe
 public class FileStorage<K extends Serializable, V extends Serializable> extends AbstractFileStorage<K, V> {
 
@@ -25,12 +26,6 @@ public class FileStorage<K extends Serializable, V extends Serializable> extends
         super(folder);
     }
 
-    @Override
-    protected Map<K, Path> buildContents(Path folder) throws IOException {
-        return super.getFilesStream(folder)
-                .collect(toMap(entry -> entry.key, entry -> entry.value, (one, another) -> one));
-    }
-
     @Override
     public Optional<V> get(@Nonnull K key) throws StorageException {
         Objects.requireNonNull(key);
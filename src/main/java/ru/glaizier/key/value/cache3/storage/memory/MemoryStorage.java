@@ -4,11 +4,15 @@ import ru.glaizier.key.value.cache3.storage.Storage;
 
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
+import java.util.AbstractMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static java.util.Optional.ofNullable;
 
@@ -35,6 +39,12 @@ public class MemoryStorage<K, V> implements Storage<K, V> {
         return ofNullable(map.get(key));
     }
 
+    @Override
+    public V getOrNull(@Nonnull K key) {
+        Objects.requireNonNull(key);
+        return map.get(key);
+    }
+
     @Override
     public Optional<V> put(@Nonnull K key, @Nonnull V value) {
         Objects.requireNonNull(key);
@@ -42,6 +52,52 @@ public class MemoryStorage<K, V> implements Storage<K, V> {
         return ofNullable(map.put(key, value));
     }
 
+    @Override
+    public void putQuietly(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        map.put(key, value);
+    }
+
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(remappingFunction);
+        return ofNullable(map.compute(key, remappingFunction));
+    }
+
+    @Override
+    public Optional<V> computeIfAbsent(@Nonnull K key, @Nonnull Function<? super K, ? extends V> mappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(mappingFunction);
+        return ofNullable(map.computeIfAbsent(key, mappingFunction));
+    }
+
+    @Override
+    public Optional<V> putIfAbsent(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        return ofNullable(map.putIfAbsent(key, value));
+    }
+
+    @Override
+    public boolean replace(@Nonnull K key, @Nonnull V oldValue, @Nonnull V newValue) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        return map.replace(key, oldValue, newValue);
+    }
+
+    @Override
+    public Optional<V> merge(@Nonnull K key, @Nonnull V value,
+                             @Nonnull BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Objects.requireNonNull(remappingFunction);
+        return ofNullable(map.merge(key, value, remappingFunction));
+    }
+
     @Override
     public Optional<V> remove(@Nonnull K key) {
         Objects.requireNonNull(key);
@@ -59,4 +115,16 @@ public class MemoryStorage<K, V> implements Storage<K, V> {
         return map.size();
     }
 
+    @Override
+    public Stream<K> keys() {
+        return map.keySet().stream();
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        // entries of the map write through
+        return map.entrySet().stream()
+                .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), entry.getValue()));
+    }
+
 }
@@ -0,0 +1,210 @@
+package ru.glaizier.key.value.cache3.storage.memory;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.storage.Storage;
+
+/**
+ * Memory storage that holds values by soft or weak references, so GC can collect them under heap pressure instead of
+ * failing with OutOfMemoryError. A collected element is absent for get and contains but is counted in the size until
+ * it's purged. Caches on top of the storage purge it on their maintenance path, so their strategies forget collected
+ * keys. Weight-bounded caches can't account the weight of collected values, so SimpleCache rejects them.
+ * Levels of a multi level cache are exclusive, so a value collected in a level over the storage is lost rather than
+ * moved to the next level, and the next get is a miss of the whole cache. It suits the last level or a level whose
+ * misses are cheap to load
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class ReferenceStorage<K, V> implements Storage<K, V> {
+
+    public enum Strength {
+        /**
+         * Values are collected when the heap is about to be exhausted, the least recently used ones first
+         */
+        SOFT,
+
+        /**
+         * Values are collected as soon as they're not referenced from other places
+         */
+        WEAK
+    }
+
+    private final Strength strength;
+
+    private final ConcurrentMap<K, Reference<V>> map = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<V> queue = new ReferenceQueue<>();
+
+    private interface KeyReference<K> {
+        K getKey();
+    }
+
+    private static class SoftValueReference<K, V> extends SoftReference<V> implements KeyReference<K> {
+        private final K key;
+
+        private SoftValueReference(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+    }
+
+    private static class WeakValueReference<K, V> extends WeakReference<V> implements KeyReference<K> {
+        private final K key;
+
+        private WeakValueReference(K key, V value, ReferenceQueue<V> queue) {
+            super(value, queue);
+            this.key = key;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+    }
+
+    public ReferenceStorage(@Nonnull Strength strength) {
+        Objects.requireNonNull(strength, "strength");
+        this.strength = strength;
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        return dereference(map.get(key));
+    }
+
+    @Override
+    public V getOrNull(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        Reference<V> reference = map.get(key);
+        return reference == null ? null : reference.get();
+    }
+
+    @Override
+    public Optional<V> put(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        return dereference(map.put(key, reference(key, value)));
+    }
+
+    @Override
+    public void putQuietly(@Nonnull K key, @Nonnull V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        map.put(key, reference(key, value));
+    }
+
+    /**
+     * Atomic, as well as the other read-modify-write operations built on it. A collected value is passed as null
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        // keeps the new value reachable until it's returned
+        AtomicReference<V> newValue = new AtomicReference<>();
+        map.compute(key, (k, oldReference) -> {
+            V oldValue = oldReference == null ? null : oldReference.get();
+            newValue.set(remappingFunction.apply(k, oldValue));
+            if (newValue.get() == null)
+                return null;
+            return newValue.get() == oldValue ? oldReference : reference(k, newValue.get());
+        });
+        return Optional.ofNullable(newValue.get());
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        return dereference(map.remove(key));
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) {
+        Objects.requireNonNull(key, "key");
+        return get(key).isPresent();
+    }
+
+    /**
+     * @return number of elements including collected but not purged ones
+     */
+    @Override
+    public int getSize() {
+        return map.size();
+    }
+
+    /**
+     * Includes keys of collected but not purged values
+     */
+    @Override
+    public Stream<K> keys() {
+        return map.keySet().stream();
+    }
+
+    /**
+     * Skips collected values
+     */
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return map.entrySet().stream()
+                .map(entry -> {
+                    V value = entry.getValue().get();
+                    return value == null ? null
+                            : (Map.Entry<K, V>) new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), value);
+                })
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Passes keys of collected values that haven't been removed or replaced yet
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void purge(@Nonnull Consumer<? super K> purgedConsumer) {
+        Objects.requireNonNull(purgedConsumer, "purgedConsumer");
+        Reference<? extends V> reference;
+        while ((reference = queue.poll()) != null) {
+            K key = ((KeyReference<K>) reference).getKey();
+            if (map.remove(key, reference))
+                purgedConsumer.accept(key);
+        }
+    }
+
+    @Override
+    public boolean dropsElements() {
+        return true;
+    }
+
+    private Reference<V> reference(K key, V value) {
+        return strength == Strength.SOFT
+                ? new SoftValueReference<>(key, value, queue)
+                : new WeakValueReference<>(key, value, queue);
+    }
+
+    private static <V> Optional<V> dereference(Reference<V> reference) {
+        return reference == null ? Optional.empty() : Optional.ofNullable(reference.get());
+    }
+}
@@ -0,0 +1,334 @@
+package ru.glaizier.key.value.cache3.storage.offheap;
+
+import static ru.glaizier.key.value.cache3.storage.offheap.SlabAllocator.NO_ADDRESS;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.storage.StorageException;
+
+/**
+ * Part of an off-heap storage with its own lock, slabs and index. The index is an open-addressing hash table with
+ * linear probing in a direct byte buffer. A slot is the entry address + 1 (0 for an empty slot), the key hash and
+ * flags: the size class of the entry chunk and the reference bit of CLOCK eviction.
+ * An entry is its key length, value length, key bytes and value bytes
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+class OffHeapSegment {
+
+    private static final int SLOT_SIZE = 16;
+
+    private static final int HASH_OFFSET = 8;
+
+    private static final int FLAGS_OFFSET = 12;
+
+    private static final int REFERENCED = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int INITIAL_SLOTS = 16;
+
+    // slot offsets must fit an int
+    private static final int MAX_SLOTS = 1 << 26;
+
+    @GuardedBy("this")
+    private final SlabAllocator allocator;
+
+    @GuardedBy("this")
+    private ByteBuffer index;
+
+    @GuardedBy("this")
+    private int mask;
+
+    @GuardedBy("this")
+    private int size;
+
+    @GuardedBy("this")
+    private int clockHand;
+
+    // size of the whole storage, so it's read without locking the segments
+    private final LongAdder storageSize;
+
+    OffHeapSegment(int slabSize, int maxSlabs, LongAdder storageSize) {
+        this.storageSize = storageSize;
+        this.allocator = new SlabAllocator(slabSize, maxSlabs);
+        this.index = ByteBuffer.allocateDirect(INITIAL_SLOTS * SLOT_SIZE);
+        this.mask = INITIAL_SLOTS - 1;
+    }
+
+    /**
+     * Marks the entry as referenced
+     *
+     * @return value bytes or null
+     */
+    @Nullable
+    synchronized byte[] get(byte[] key, int hash) {
+        int slot = find(key, hash);
+        if (slot < 0)
+            return null;
+        index.putInt(slot * SLOT_SIZE + FLAGS_OFFSET, index.getInt(slot * SLOT_SIZE + FLAGS_OFFSET) | REFERENCED);
+        return readValue(address(slot));
+    }
+
+    synchronized boolean contains(byte[] key, int hash) {
+        return find(key, hash) >= 0;
+    }
+
+    /**
+     * @param evicted gets keys and values of the entries evicted to make room, or null to fail if there is no room
+     * @return previous value bytes or null
+     */
+    @Nullable
+    synchronized byte[] put(byte[] key, int hash, byte[] value, @Nullable List<byte[][]> evicted) throws StorageException {
+        int entrySize = HEADER_SIZE + key.length + value.length;
+        if (entrySize > allocator.getSlabSize())
+            throw new StorageException("Entry of " + entrySize + " bytes exceeds the slab size " + allocator.getSlabSize());
+        byte[] prevValue = null;
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            prevValue = readValue(address(slot));
+            removeSlot(slot);
+        }
+        if ((size + 1) * 4L > (mask + 1) * 3L)
+            grow();
+        long address = allocator.allocate(entrySize);
+        while (address == NO_ADDRESS) {
+            if (evicted == null)
+                throw new StorageException("Off-heap memory of the segment is exhausted");
+            int victim = findVictim(SlabAllocator.sizeClass(entrySize));
+            if (victim >= 0) {
+                evicted.add(removeEntry(victim));
+            } else {
+                // the class has no chunk to free, so a slab of another class is emptied to be reassigned to it
+                evictSlab(SlabAllocator.slabIndex(address(findVictim(-1))), evicted);
+            }
+            address = allocator.allocate(entrySize);
+        }
+        ByteBuffer slab = allocator.slab(address);
+        int offset = SlabAllocator.offset(address);
+        slab.putInt(offset, key.length);
+        slab.putInt(offset + 4, value.length);
+        write(slab, offset + HEADER_SIZE, key);
+        write(slab, offset + HEADER_SIZE + key.length, value);
+
+        slot = hash & mask;
+        while (index.getLong(slot * SLOT_SIZE) != 0)
+            slot = (slot + 1) & mask;
+        index.putLong(slot * SLOT_SIZE, address + 1);
+        index.putInt(slot * SLOT_SIZE + HASH_OFFSET, hash);
+        index.putInt(slot * SLOT_SIZE + FLAGS_OFFSET, SlabAllocator.sizeClass(entrySize) << 1 | REFERENCED);
+        size++;
+        storageSize.increment();
+        return prevValue;
+    }
+
+    /**
+     * @return value bytes or null
+     */
+    @Nullable
+    synchronized byte[] remove(byte[] key, int hash) {
+        int slot = find(key, hash);
+        if (slot < 0)
+            return null;
+        byte[] removed = readValue(address(slot));
+        removeSlot(slot);
+        return removed;
+    }
+
+    /**
+     * Evicts by CLOCK: referenced entries get a second chance
+     *
+     * @return key and value bytes or null if the segment is empty
+     */
+    @Nullable
+    synchronized byte[][] evict() {
+        int victim = findVictim(-1);
+        return victim >= 0 ? removeEntry(victim) : null;
+    }
+
+    /**
+     * Copies entries starting from the slot until the limit is reached and a probe sequence ends, so removals don't
+     * shift the entries that haven't been copied yet before the returned slot. Doesn't mark entries as referenced
+     *
+     * @param withValues copies only key bytes if false
+     * @return slot to continue from or -1 if all the slots have been copied
+     */
+    synchronized int copyEntries(int fromSlot, int limit, boolean withValues, List<byte[][]> batch) {
+        for (int slot = fromSlot; slot <= mask; slot++) {
+            if (index.getLong(slot * SLOT_SIZE) == 0) {
+                if (batch.size() >= limit)
+                    return slot;
+                continue;
+            }
+            long address = address(slot);
+            batch.add(withValues ? new byte[][]{readKey(address), readValue(address)} : new byte[][]{readKey(address)});
+        }
+        return -1;
+    }
+
+    synchronized long getOffHeapBytes() {
+        return allocator.getAllocatedBytes() + index.capacity();
+    }
+
+    /**
+     * @param sizeClass looks only for entries of the class or for any entry if it's negative
+     * @return slot of the entry to evict or -1 if there is none
+     */
+    @GuardedBy("this")
+    private int findVictim(int sizeClass) {
+        // the first round clears reference bits, so the second one finds a victim if there is one
+        for (int step = 0; step < 2 * (mask + 1); step++) {
+            int slot = clockHand;
+            clockHand = (clockHand + 1) & mask;
+            if (index.getLong(slot * SLOT_SIZE) == 0)
+                continue;
+            int flags = index.getInt(slot * SLOT_SIZE + FLAGS_OFFSET);
+            if (sizeClass >= 0 && flags >>> 1 != sizeClass)
+                continue;
+            if ((flags & REFERENCED) != 0) {
+                index.putInt(slot * SLOT_SIZE + FLAGS_OFFSET, flags & ~REFERENCED);
+                continue;
+            }
+            return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Evicts all the entries of the slab, so it can be reassigned to another class
+     */
+    @GuardedBy("this")
+    private void evictSlab(int slab, List<byte[][]> evicted) {
+        for (int slot = 0; slot <= mask; slot++) {
+            // removal shifts the following entries back, so the slot is checked again
+            while (index.getLong(slot * SLOT_SIZE) != 0 && SlabAllocator.slabIndex(address(slot)) == slab)
+                evicted.add(removeEntry(slot));
+        }
+    }
+
+    @GuardedBy("this")
+    private byte[][] removeEntry(int slot) {
+        long address = address(slot);
+        byte[][] entry = {readKey(address), readValue(address)};
+        removeSlot(slot);
+        return entry;
+    }
+
+    @GuardedBy("this")
+    private int find(byte[] key, int hash) {
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long stored = index.getLong(slot * SLOT_SIZE);
+            if (stored == 0)
+                return -1;
+            if (index.getInt(slot * SLOT_SIZE + HASH_OFFSET) == hash && keyEquals(stored - 1, key))
+                return slot;
+        }
+    }
+
+    /**
+     * Frees the entry and shifts the following entries of the probe sequence back, so no tombstones are needed
+     */
+    @GuardedBy("this")
+    private void removeSlot(int slot) {
+        long address = address(slot);
+        ByteBuffer slab = allocator.slab(address);
+        int offset = SlabAllocator.offset(address);
+        allocator.free(address, HEADER_SIZE + slab.getInt(offset) + slab.getInt(offset + 4));
+
+        int hole = slot;
+        for (int next = (slot + 1) & mask; index.getLong(next * SLOT_SIZE) != 0; next = (next + 1) & mask) {
+            int ideal = index.getInt(next * SLOT_SIZE + HASH_OFFSET) & mask;
+            // the entry can fill the hole if its ideal slot is not cyclically in (hole, next]
+            boolean idealAfterHole = hole <= next ? ideal > hole && ideal <= next : ideal > hole || ideal <= next;
+            if (!idealAfterHole) {
+                copySlot(next, hole);
+                hole = next;
+            }
+        }
+        index.putLong(hole * SLOT_SIZE, 0);
+        size--;
+        storageSize.decrement();
+    }
+
+    @GuardedBy("this")
+    private void copySlot(int from, int to) {
+        index.putLong(to * SLOT_SIZE, index.getLong(from * SLOT_SIZE));
+        index.putInt(to * SLOT_SIZE + HASH_OFFSET, index.getInt(from * SLOT_SIZE + HASH_OFFSET));
+        index.putInt(to * SLOT_SIZE + FLAGS_OFFSET, index.getInt(from * SLOT_SIZE + FLAGS_OFFSET));
+    }
+
+    @GuardedBy("this")
+    private void grow() {
+        int slots = mask + 1;
+        if (slots == MAX_SLOTS)
+            throw new StorageException("Index of the segment is full");
+        ByteBuffer oldIndex = index;
+        index = ByteBuffer.allocateDirect(slots * 2 * SLOT_SIZE);
+        mask = slots * 2 - 1;
+        clockHand = 0;
+        for (int oldSlot = 0; oldSlot < slots; oldSlot++) {
+            long stored = oldIndex.getLong(oldSlot * SLOT_SIZE);
+            if (stored == 0)
+                continue;
+            int hash = oldIndex.getInt(oldSlot * SLOT_SIZE + HASH_OFFSET);
+            int slot = hash & mask;
+            while (index.getLong(slot * SLOT_SIZE) != 0)
+                slot = (slot + 1) & mask;
+            index.putLong(slot * SLOT_SIZE, stored);
+            index.putInt(slot * SLOT_SIZE + HASH_OFFSET, hash);
+            index.putInt(slot * SLOT_SIZE + FLAGS_OFFSET, oldIndex.getInt(oldSlot * SLOT_SIZE + FLAGS_OFFSET));
+        }
+    }
+
+    @GuardedBy("this")
+    private long address(int slot) {
+        return index.getLong(slot * SLOT_SIZE) - 1;
+    }
+
+    @GuardedBy("this")
+    private boolean keyEquals(long address, byte[] key) {
+        ByteBuffer slab = allocator.slab(address);
+        int offset = SlabAllocator.offset(address);
+        if (slab.getInt(offset) != key.length)
+            return false;
+        for (int i = 0; i < key.length; i++) {
+            if (slab.get(offset + HEADER_SIZE + i) != key[i])
+                return false;
+        }
+        return true;
+    }
+
+    @GuardedBy("this")
+    private byte[] readKey(long address) {
+        ByteBuffer slab = allocator.slab(address);
+        int offset = SlabAllocator.offset(address);
+        return read(slab, offset + HEADER_SIZE, slab.getInt(offset));
+    }
+
+    @GuardedBy("this")
+    private byte[] readValue(long address) {
+        ByteBuffer slab = allocator.slab(address);
+        int offset = SlabAllocator.offset(address);
+        return read(slab, offset + HEADER_SIZE + slab.getInt(offset), slab.getInt(offset + 4));
+    }
+
+    private static byte[] read(ByteBuffer slab, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = slab.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private static void write(ByteBuffer slab, int offset, byte[] bytes) {
+        ByteBuffer view = slab.duplicate();
+        view.position(offset);
+        view.put(bytes);
+    }
+}
@@ -0,0 +1,288 @@
+package ru.glaizier.key.value.cache3.storage.offheap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+import ru.glaizier.key.value.cache3.storage.Storage;
+import ru.glaizier.key.value.cache3.storage.StorageException;
+
+/**
+ * Storage that keeps serialized elements outside of the Java heap, so large amounts of data don't slow GC down.
+ * Elements are spread over segments with their own locks. Every segment allocates entries in direct byte buffer
+ * slabs and indexes them with an off-heap hash table, so the heap holds only a few objects per segment.
+ * Keys are equal if their serialized forms are equal.
+ * Plain put fails with StorageException when the memory of a segment is exhausted, so the memory must fit the capacity
+ * of the cache on top of the storage. Put with a consumer and evict() use CLOCK eviction of the segments instead.
+ * If a put fails, the previous value of the key is removed.
+ * Streams copy the bytes of a segment in bounded batches, releasing the segment lock between them, and deserialize
+ * them lazily, so parallel streams split by segments. Streams are weakly consistent: elements that are put or removed
+ * during the iteration may or may not be returned, and elements moved by the growth of a segment index may be missed
+ * or returned twice
+ *
+ * @author GlaIZier
+ */
+@ThreadSafe
+public class OffHeapStorage<K extends Serializable, V extends Serializable> implements Storage<K, V> {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+    // max entries copied from a segment under its lock by streams
+    private static final int STREAM_BATCH_SIZE = 256;
+
+    private final OffHeapSegment[] segments;
+
+    // sum of the sizes of the segments, updated by them, so the size is read without locking every segment
+    private final LongAdder size = new LongAdder();
+
+    // the segment to start the next eviction from
+    private final AtomicInteger evictionSegment = new AtomicInteger();
+
+    public OffHeapStorage(long maxBytes) {
+        this(maxBytes, DEFAULT_SEGMENTS, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param maxBytes max bytes of slabs. It's split between segments, and every segment has at least one slab
+     * @param segments power of two
+     * @param slabSize power of two, max size of a serialized element
+     */
+    public OffHeapStorage(long maxBytes, int segments, int slabSize) {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("Max bytes can't be less than 1!");
+        if (segments <= 0 || Integer.bitCount(segments) != 1)
+            throw new IllegalArgumentException("Segments must be a positive power of two!");
+        if (slabSize < SlabAllocator.MIN_CHUNK_SIZE || Integer.bitCount(slabSize) != 1)
+            throw new IllegalArgumentException("Slab size must be a power of two not less than "
+                    + SlabAllocator.MIN_CHUNK_SIZE + "!");
+        int maxSlabs = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / slabSize / segments));
+        this.segments = new OffHeapSegment[segments];
+        for (int i = 0; i < segments; i++)
+            this.segments[i] = new OffHeapSegment(slabSize, maxSlabs, size);
+    }
+
+    @Override
+    public Optional<V> get(@Nonnull K key) throws StorageException {
+        Objects.requireNonNull(key, "key");
+        byte[] keyBytes = serialize(key);
+        int hash = hash(keyBytes);
+        return Optional.ofNullable(segment(hash).get(keyBytes, hash)).map(this::deserializeValue);
+    }
+
+    @Override
+    public Optional<V> put(@Nonnull K key, @Nonnull V value) throws StorageException {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        byte[] keyBytes = serialize(key);
+        int hash = hash(keyBytes);
+        return Optional.ofNullable(segment(hash).put(keyBytes, hash, serialize(value), null))
+                .map(this::deserializeValue);
+    }
+
+    /**
+     * Computes under the lock of the segment of the key, so the operations built on compute are atomic too.
+     * Other elements of the segment wait for the function
+     */
+    @Override
+    public Optional<V> compute(@Nonnull K key,
+                               @Nonnull BiFunction<? super K, ? super V, ? extends V> remappingFunction)
+            throws StorageException {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(remappingFunction, "remappingFunction");
+        byte[] keyBytes = serialize(key);
+        int hash = hash(keyBytes);
+        OffHeapSegment segment = segment(hash);
+        // the segment methods are synchronized on the segment too
+        synchronized (segment) {
+            V oldValue = Optional.ofNullable(segment.get(keyBytes, hash)).map(this::deserializeValue).orElse(null);
+            V newValue = remappingFunction.apply(key, oldValue);
+            if (newValue == null) {
+                if (oldValue != null)
+                    segment.remove(keyBytes, hash);
+            } else if (newValue != oldValue) {
+                segment.put(keyBytes, hash, serialize(newValue), null);
+            }
+            return Optional.ofNullable(newValue);
+        }
+    }
+
+    /**
+     * Evicts elements of the segment of the key if there is no room for the element
+     *
+     * @return previous value or empty if there was no such key before
+     */
+    public Optional<V> put(@Nonnull K key, @Nonnull V value, @Nonnull Consumer<Map.Entry<K, V>> evictedConsumer)
+            throws StorageException {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        Objects.requireNonNull(evictedConsumer, "evictedConsumer");
+        byte[] keyBytes = serialize(key);
+        int hash = hash(keyBytes);
+        List<byte[][]> evicted = new ArrayList<>(1);
+        byte[] prevValue = segment(hash).put(keyBytes, hash, serialize(value), evicted);
+        // deserialized outside of the segment lock
+        evicted.forEach(entry -> evictedConsumer.accept(toEntry(entry)));
+        return Optional.ofNullable(prevValue).map(this::deserializeValue);
+    }
+
+    /**
+     * Evicts an element by CLOCK. Segments are evicted from in turn
+     *
+     * @return empty if the storage is empty
+     */
+    public Optional<Map.Entry<K, V>> evict() throws StorageException {
+        int start = evictionSegment.getAndIncrement();
+        for (int i = 0; i < segments.length; i++) {
+            byte[][] evicted = segments[(start + i) & (segments.length - 1)].evict();
+            if (evicted != null)
+                return Optional.of(toEntry(evicted));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<V> remove(@Nonnull K key) throws StorageException {
+        Objects.requireNonNull(key, "key");
+        byte[] keyBytes = serialize(key);
+        int hash = hash(keyBytes);
+        return Optional.ofNullable(segment(hash).remove(keyBytes, hash)).map(this::deserializeValue);
+    }
+
+    @Override
+    public boolean contains(@Nonnull K key) throws StorageException {
+        Objects.requireNonNull(key, "key");
+        byte[] keyBytes = serialize(key);
+        int hash = hash(keyBytes);
+        return segment(hash).contains(keyBytes, hash);
+    }
+
+    /**
+     * Doesn't lock the segments, so it's exact only if there are no concurrent writes
+     */
+    @Override
+    public int getSize() {
+        return (int) size.sum();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Stream<K> keys() {
+        return Arrays.stream(segments)
+                .flatMap(segment -> copyEntries(segment, false))
+                .map(entry -> (K) deserialize(entry[0]));
+    }
+
+    @Override
+    public Stream<Map.Entry<K, V>> entries() {
+        return Arrays.stream(segments)
+                .flatMap(segment -> copyEntries(segment, true))
+                .map(this::toEntry);
+    }
+
+    private static Stream<byte[][]> copyEntries(OffHeapSegment segment, boolean withValues) {
+        Iterator<byte[][]> iterator = new Iterator<byte[][]>() {
+            private final List<byte[][]> batch = new ArrayList<>();
+
+            private int position;
+
+            private int nextSlot;
+
+            @Override
+            public boolean hasNext() {
+                while (position == batch.size() && nextSlot >= 0) {
+                    batch.clear();
+                    position = 0;
+                    nextSlot = segment.copyEntries(nextSlot, STREAM_BATCH_SIZE, withValues, batch);
+                }
+                return position < batch.size();
+            }
+
+            @Override
+            public byte[][] next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return batch.get(position++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @return bytes of the allocated slabs and indexes
+     */
+    public long getOffHeapBytes() {
+        long bytes = 0;
+        for (OffHeapSegment segment : segments)
+            bytes += segment.getOffHeapBytes();
+        return bytes;
+    }
+
+    private OffHeapSegment segment(int hash) {
+        // high bits, as the index uses low ones
+        return segments[Integer.rotateLeft(hash, 16) & (segments.length - 1)];
+    }
+
+    private static int hash(byte[] bytes) {
+        // murmur3 finalizer
+        int hash = Arrays.hashCode(bytes);
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        return hash ^ hash >>> 16;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<K, V> toEntry(byte[][] entry) {
+        return new AbstractMap.SimpleImmutableEntry<>((K) deserialize(entry[0]), (V) deserialize(entry[1]));
+    }
+
+    @SuppressWarnings("unchecked")
+    private V deserializeValue(byte[] bytes) {
+        return (V) deserialize(bytes);
+    }
+
+    private static byte[] serialize(@Nonnull Object object) throws StorageException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(object);
+        } catch (Exception e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Nullable
+    private static Object deserialize(byte[] bytes) throws StorageException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        } catch (Exception e) {
+            throw new StorageException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package ru.glaizier.key.value.cache3.storage.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Allocates chunks of direct byte buffer slabs. Chunk sizes are powers of two starting with MIN_CHUNK_SIZE, and every
+ * slab is carved into chunks of one size class. Freed chunks are linked into the free list of their class, which is
+ * stored in the chunks themselves, so the heap holds only a few numbers per class.
+ * A slab stays in its class while it has allocated chunks. When the slabs are exhausted, a slab without allocated
+ * chunks is reassigned to the class that needs one.
+ * An address is the slab index in the high 32 bits and the offset in the slab in the low ones
+ *
+ * @author GlaIZier
+ */
+@NotThreadSafe
+class SlabAllocator {
+
+    static final int MIN_CHUNK_SIZE = 64;
+
+    static final long NO_ADDRESS = -1;
+
+    private final int slabSize;
+
+    private final int maxSlabs;
+
+    // slabs with indexes >= assignedSlabs are free for any class
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+
+    private int assignedSlabs;
+
+    // slab -> its class
+    private int[] slabClasses = new int[0];
+
+    // slab -> number of its allocated chunks
+    private int[] slabChunks = new int[0];
+
+    // class -> address of the first free chunk
+    private final long[] freeHeads;
+
+    // class -> slab that is being carved into chunks of the class or -1
+    private final int[] carvedSlabs;
+
+    // class -> offset of the next chunk in the carved slab
+    private final int[] carvedOffsets;
+
+    /**
+     * @param slabSize power of two that is not less than MIN_CHUNK_SIZE
+     */
+    SlabAllocator(int slabSize, int maxSlabs) {
+        if (slabSize < MIN_CHUNK_SIZE || Integer.bitCount(slabSize) != 1)
+            throw new IllegalArgumentException("Slab size must be a power of two not less than " + MIN_CHUNK_SIZE + "!");
+        if (maxSlabs <= 0)
+            throw new IllegalArgumentException("Max slabs can't be less than 1!");
+        this.slabSize = slabSize;
+        this.maxSlabs = maxSlabs;
+        int classes = sizeClass(slabSize) + 1;
+        this.freeHeads = new long[classes];
+        this.carvedSlabs = new int[classes];
+        this.carvedOffsets = new int[classes];
+        Arrays.fill(freeHeads, NO_ADDRESS);
+        Arrays.fill(carvedSlabs, -1);
+    }
+
+    static int sizeClass(int size) {
+        int chunks = (size + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE;
+        return chunks <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(chunks - 1);
+    }
+
+    int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * @return address of a chunk of at least the size or NO_ADDRESS if the memory of the class is exhausted
+     */
+    long allocate(int size) {
+        if (size > slabSize)
+            throw new IllegalArgumentException("Size " + size + " exceeds the slab size " + slabSize + "!");
+        int sizeClass = sizeClass(size);
+        int chunkSize = MIN_CHUNK_SIZE << sizeClass;
+        long address = freeHeads[sizeClass];
+        if (address != NO_ADDRESS) {
+            freeHeads[sizeClass] = slab(address).getLong(offset(address));
+            slabChunks[slabIndex(address)]++;
+            return address;
+        }
+        if (carvedSlabs[sizeClass] < 0 || carvedOffsets[sizeClass] + chunkSize > slabSize) {
+            int slab;
+            if (assignedSlabs < maxSlabs) {
+                slab = assignedSlabs++;
+                if (slab == slabs.size()) {
+                    slabs.add(ByteBuffer.allocateDirect(slabSize));
+                    slabClasses = Arrays.copyOf(slabClasses, slabs.size());
+                    slabChunks = Arrays.copyOf(slabChunks, slabs.size());
+                }
+            } else {
+                slab = findEmptySlab();
+                if (slab < 0)
+                    return NO_ADDRESS;
+                releaseSlab(slab);
+            }
+            slabClasses[slab] = sizeClass;
+            carvedSlabs[sizeClass] = slab;
+            carvedOffsets[sizeClass] = 0;
+        }
+        address = address(carvedSlabs[sizeClass], carvedOffsets[sizeClass]);
+        carvedOffsets[sizeClass] += chunkSize;
+        slabChunks[carvedSlabs[sizeClass]]++;
+        return address;
+    }
+
+    /**
+     * @param size the size the chunk has been allocated with
+     */
+    void free(long address, int size) {
+        int sizeClass = sizeClass(size);
+        slab(address).putLong(offset(address), freeHeads[sizeClass]);
+        freeHeads[sizeClass] = address;
+        slabChunks[slabIndex(address)]--;
+    }
+
+    ByteBuffer slab(long address) {
+        return slabs.get(slabIndex(address));
+    }
+
+    static int slabIndex(long address) {
+        return (int) (address >>> Integer.SIZE);
+    }
+
+    static int offset(long address) {
+        return (int) address;
+    }
+
+    private int findEmptySlab() {
+        for (int slab = 0; slab < assignedSlabs; slab++) {
+            if (slabChunks[slab] == 0)
+                return slab;
+        }
+        return -1;
+    }
+
+    /**
+     * Takes the free chunks of the slab out of its class, so the slab can be carved into chunks of another class
+     */
+    private void releaseSlab(int slab) {
+        int sizeClass = slabClasses[slab];
+        if (carvedSlabs[sizeClass] == slab)
+            carvedSlabs[sizeClass] = -1;
+        long prev = NO_ADDRESS;
+        for (long address = freeHeads[sizeClass]; address != NO_ADDRESS; ) {
+            long next = slab(address).getLong(offset(address));
+            if (slabIndex(address) != slab)
+                prev = address;
+            else if (prev == NO_ADDRESS)
+                freeHeads[sizeClass] = next;
+            else
+                slab(prev).putLong(offset(prev), next);
+            address = next;
+        }
+    }
+
+    private static long address(int slab, int offset) {
+        return (long) slab << Integer.SIZE | offset;
+    }
+
+    /**
+     * @return bytes of the allocated slabs
+     */
+    long getAllocatedBytes() {
+        return (long) slabs.size() * slabSize;
+    }
+}
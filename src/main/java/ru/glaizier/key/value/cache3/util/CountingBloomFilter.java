@@ -0,0 +1,95 @@
+package ru.glaizier.key.value.cache3.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Bloom filter with 8-bit counters instead of bits, so elements can be removed. mightContain() never returns false for
+ * an added and not removed element but can return true for an absent one with the configured probability.
+ * A counter that reaches 255 is never decremented again to not introduce false negatives
+ *
+ * @author GlaIZier
+ */
+@NotThreadSafe
+public class CountingBloomFilter<E> {
+
+    private static final int MAX_COUNT = 0xFF;
+
+    private final byte[] counters;
+
+    private final int hashFunctions;
+
+    /**
+     * @param expectedElements         number of elements the filter holds at the same time
+     * @param falsePositiveProbability desired probability of mightContain() to return true for an absent element
+     */
+    public CountingBloomFilter(int expectedElements, double falsePositiveProbability) {
+        if (expectedElements <= 0)
+            throw new IllegalArgumentException("Expected elements can't be less than 1!");
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1)
+            throw new IllegalArgumentException("False positive probability must be in (0, 1)!");
+        double ln2 = Math.log(2);
+        long size = (long) Math.ceil(-expectedElements * Math.log(falsePositiveProbability) / (ln2 * ln2));
+        this.counters = new byte[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(size, 1))];
+        this.hashFunctions = Math.max(1, (int) Math.round((double) counters.length / expectedElements * ln2));
+    }
+
+    public void add(@Nonnull E e) {
+        Objects.requireNonNull(e, "e");
+        long hash = mix(e.hashCode());
+        for (int i = 0; i < hashFunctions; i++) {
+            int index = index(hash, i);
+            if ((counters[index] & MAX_COUNT) < MAX_COUNT)
+                counters[index]++;
+        }
+    }
+
+    /**
+     * Must be called only for elements that have been added before
+     */
+    public void remove(@Nonnull E e) {
+        Objects.requireNonNull(e, "e");
+        long hash = mix(e.hashCode());
+        for (int i = 0; i < hashFunctions; i++) {
+            int index = index(hash, i);
+            int count = counters[index] & MAX_COUNT;
+            if (count > 0 && count < MAX_COUNT)
+                counters[index]--;
+        }
+    }
+
+    public boolean mightContain(@Nonnull E e) {
+        Objects.requireNonNull(e, "e");
+        long hash = mix(e.hashCode());
+        for (int i = 0; i < hashFunctions; i++) {
+            if (counters[index(hash, i)] == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(counters, (byte) 0);
+    }
+
+    // double hashing: the i-th function is h1 + i * h2
+    private int index(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return Math.floorMod(h1 + i * h2, counters.length);
+    }
+
+    // finalizer of MurmurHash3 to get 64 well distributed bits from a hash code
+    private static long mix(int hashCode) {
+        long h = hashCode;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,99 @@
+package ru.glaizier.key.value.cache3.util;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Count-min sketch that estimates how often an element has been seen recently in constant memory.
+ * Counters are saturated at 15 (like 4-bit counters) and are halved after a sample of additions, so old popularity
+ * fades away. The estimate is never less than the real (aged) frequency but can be greater due to collisions
+ */
+@ThreadSafe
+public class FrequencySketch<E> {
+
+    public static final int MAX_FREQUENCY = 15;
+
+    private static final int DEPTH = 4;
+
+    // odd constants to get independent indexes in every row
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    @GuardedBy("this")
+    private final int[][] table;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    @GuardedBy("this")
+    private int additions;
+
+    /**
+     * @param expectedElements number of distinct elements the sketch is expected to track. Defines the width of the
+     *                         sketch and how often counters are halved
+     */
+    public FrequencySketch(int expectedElements) {
+        if (expectedElements <= 0)
+            throw new IllegalArgumentException("Expected elements can't be less than 1!");
+        // power of two to get an index by a mask
+        int width = expectedElements == 1 ? 1 : Integer.highestOneBit(expectedElements - 1) << 1;
+        this.table = new int[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    /**
+     * Increments only the smallest counters of the element (conservative update) to reduce the overestimation
+     */
+    public synchronized void increment(@Nonnull E e) {
+        Objects.requireNonNull(e, "e");
+        int frequency = frequency(e);
+        if (frequency < MAX_FREQUENCY) {
+            int hash = spread(e.hashCode());
+            for (int row = 0; row < DEPTH; row++) {
+                int index = index(hash, row);
+                if (table[row][index] == frequency)
+                    table[row][index]++;
+            }
+        }
+        if (++additions >= sampleSize)
+            halve();
+    }
+
+    public synchronized int frequency(@Nonnull E e) {
+        Objects.requireNonNull(e, "e");
+        int hash = spread(e.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int row = 0; row < DEPTH; row++)
+            frequency = Math.min(frequency, table[row][index(hash, row)]);
+        return frequency;
+    }
+
+    public synchronized void clear() {
+        for (int[] row : table)
+            Arrays.fill(row, 0);
+        additions = 0;
+    }
+
+    @GuardedBy("this")
+    private void halve() {
+        for (int[] row : table) {
+            for (int i = 0; i < row.length; i++)
+                row[i] >>>= 1;
+        }
+        additions /= 2;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
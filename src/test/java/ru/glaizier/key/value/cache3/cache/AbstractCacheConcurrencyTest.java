@@ -143,6 +143,31 @@ public abstract class AbstractCacheConcurrencyTest {
         assertFalse(cache.evict().isPresent());
     }
 
+    @Test(timeout = 10_000)
+    // increment the same counter simultaneously. Lost updates show up as a smaller sum
+    public void merge() throws InterruptedException, ExecutionException {
+        CyclicBarrier barrier = new CyclicBarrier(THREADS_NUMBER);
+        List<Callable<Object>> mergeTasks = IntStream.range(0, THREADS_NUMBER)
+            .mapToObj(threadI -> (Runnable) () -> {
+                try {
+                    barrier.await(1, SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                IntStream.range(0, TASKS_NUMBER)
+                    .forEach(taskI -> cache.merge(0, 1, Integer::sum));
+            })
+            .map(Executors::callable)
+            .collect(toList());
+        List<Future<Object>> futures = executorService.invokeAll(mergeTasks);
+
+        for (Future<Object> future : futures) {
+            future.get();
+        }
+        assertThat(cache.get(0), is(Optional.of(THREADS_NUMBER * TASKS_NUMBER)));
+        assertThat(cache.getSize(), is(1));
+    }
+
     @Test(timeout = 10_000)
     // timeout in case of deadlocks
     public void evict() throws InterruptedException, ExecutionException {
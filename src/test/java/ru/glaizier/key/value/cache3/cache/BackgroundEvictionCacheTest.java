@@ -0,0 +1,97 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class BackgroundEvictionCacheTest {
+
+    // background tasks are run by the test
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final BackgroundEvictionCache<Integer, String> c = new BackgroundEvictionCache<>(
+            new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 10)),
+            4, 8, 2, tasks::add);
+
+    @Test
+    public void watermarks() {
+        IntStream.range(0, 5).forEach(i -> c.put(i, String.valueOf(i)));
+        assertTrue(tasks.isEmpty());
+        // a batch can be evicted now
+        assertThat(c.put(5, "5"), is(Optional.empty()));
+        IntStream.range(6, 8).forEach(i -> c.put(i, String.valueOf(i)));
+        assertThat(tasks.size(), is(1));
+        assertThat(c.getSize(), is(8));
+        assertTrue(c.isFull());
+
+        // the background eviction is behind, so the caller evicts a batch
+        Optional<Map.Entry<Integer, String>> evicted = c.put(8, "8");
+        assertThat(evicted.get().getKey(), is(0));
+        assertThat(c.getSize(), is(7));
+        assertFalse(c.contains(1));
+
+        while (!tasks.isEmpty())
+            tasks.remove(0).run();
+        assertThat(c.getSize(), is(4));
+        IntStream.range(5, 9).forEach(i -> assertTrue(c.contains(i)));
+    }
+
+    @Test
+    public void inlineExecutorEvictsInLoop() {
+        Cache<Integer, String> underlying =
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 200_000));
+        BackgroundEvictionCache<Integer, String> inline =
+                new BackgroundEvictionCache<>(underlying, 0, 100_000, 1, Runnable::run);
+        // fills the cache without the background eviction, which then evicts 1 element per batch
+        IntStream.range(0, 100_000).forEach(i -> underlying.putQuietly(i, String.valueOf(i)));
+        inline.putQuietly(100_000, "100000");
+        assertThat(inline.getSize(), is(0));
+        assertThat(inline.getCapacity(), is(100_000));
+    }
+
+    @Test
+    public void setCapacity() {
+        c.setCapacity(16);
+        assertThat(c.getCapacity(), is(16));
+        assertThat(c.getLowWatermark(), is(8));
+        IntStream.range(0, 16).forEach(i -> c.putQuietly(i, String.valueOf(i)));
+        assertThat(c.getSize(), is(16));
+
+        // the background eviction evicts down to the reduced low watermark
+        c.setCapacity(4);
+        assertThat(c.getHighWatermark(), is(4));
+        assertThat(c.getLowWatermark(), is(2));
+        while (!tasks.isEmpty())
+            tasks.remove(0).run();
+        assertThat(c.getSize(), is(2));
+        IntStream.range(14, 16).forEach(i -> assertTrue(c.contains(i)));
+    }
+
+    @Test
+    public void evictToLowWatermark() {
+        IntStream.range(0, 7).forEach(i -> c.putQuietly(i, String.valueOf(i)));
+        c.evictToLowWatermark();
+        assertThat(c.getSize(), is(4));
+        IntStream.range(3, 7).forEach(i -> assertTrue(c.contains(i)));
+
+        // overwrites don't evict at the high watermark
+        IntStream.range(7, 11).forEach(i -> c.putQuietly(i, String.valueOf(i)));
+        c.putQuietly(10, "10");
+        assertThat(c.getSize(), is(8));
+    }
+
+}
@@ -0,0 +1,72 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.promotion.PromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.stats.ConcurrentStatsCounter;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class BloomFilterMultiLevelCacheTest extends MultiLevelCacheTest {
+
+    @Override
+    protected Cache<Integer, String> buildCache(PromotionPolicy<Integer> promotionPolicy,
+                                                Cache<Integer, String> level1, Cache<Integer, String> level2) {
+        return new MultiLevelCache<>(Arrays.asList(level1, new BloomFilterCache<>(level2, 16, 0.01)), promotionPolicy);
+    }
+
+    @Test
+    public void filterIsSeededWithKeysOfCache() {
+        SimpleCache<Integer, String> level = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2);
+        level.put(1, "1");
+        Cache<Integer, String> c = new BloomFilterCache<>(level);
+
+        // keys put before wrapping are found
+        assertThat(c.get(1), is(Optional.of("1")));
+        c.put(2, "2");
+        assertThat(c.evict().get().getKey(), is(1));
+        assertThat(c.remove(2), is(Optional.of("2")));
+
+        c.put(3, "3");
+        // put to the underlying cache bypassing the filter isn't seen
+        level.put(4, "4");
+        assertTrue(c.contains(3));
+        assertFalse(c.contains(4));
+        assertThat(c.get(4), is(Optional.empty()));
+    }
+
+    @Test
+    public void filterGrowsWithCapacity() {
+        SimpleCache<Integer, String> level = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2,
+                new ConcurrentStatsCounter());
+        Cache<Integer, String> c = new BloomFilterCache<>(level);
+        c.put(1, "1");
+        c.setCapacity(100);
+        for (int i = 2; i <= 100; i++)
+            c.put(i, String.valueOf(i));
+        for (int i = 1; i <= 100; i++)
+            assertThat(c.get(i), is(Optional.of(String.valueOf(i))));
+
+        // a filter for 2 keys would let almost every probe of an absent key through
+        for (int i = 101; i <= 1_100; i++)
+            assertThat(c.get(i), is(Optional.empty()));
+        assertTrue(level.getStats().getMissCount() < 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weightOnlyCacheNeedsExpectedKeys() {
+        new BloomFilterCache<>(new SimpleCache<Integer, String>(new MemoryStorage<>(), new LruStrategy<>(),
+                (key, value) -> value.length(), 100));
+    }
+
+}
@@ -0,0 +1,97 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.promotion.AlwaysPromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.cache.stats.ConcurrentStatsCounter;
+import ru.glaizier.key.value.cache3.cache.stats.StatsCounter;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class CacheStatsTest {
+
+    @Test
+    public void simpleCache() {
+        Cache<Integer, String> c = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2,
+                new ConcurrentStatsCounter());
+        c.put(1, "1");
+        c.put(1, "11");
+        c.put(2, "2");
+        c.put(3, "3");
+        c.get(3);
+        c.get(1);
+        c.remove(2);
+        c.remove(2);
+
+        CacheStats stats = c.getStats();
+        assertThat(stats.getHitCount(), is(1L));
+        assertThat(stats.getMissCount(), is(1L));
+        assertThat(stats.getHitRate(), is(0.5));
+        assertThat(stats.getPutCount(), is(4L));
+        assertThat(stats.getRemovalCount(RemovalCause.REPLACED), is(1L));
+        assertThat(stats.getRemovalCount(RemovalCause.EXPLICIT), is(1L));
+        assertThat(stats.getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void disabled() {
+        Cache<Integer, String> c = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2);
+        c.put(1, "1");
+        c.get(1);
+        assertThat(c.getStats().getRequestCount(), is(0L));
+    }
+
+    @Test
+    public void multiLevelCache() {
+        MultiLevelCache<Integer, String> c = new MultiLevelCache<>(Arrays.asList(
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1, new ConcurrentStatsCounter()),
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1, new ConcurrentStatsCounter())),
+                new AlwaysPromotionPolicy<>(), null, new ConcurrentStatsCounter());
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(3, "3");
+        // found in the second level
+        c.get(2);
+        c.get(1);
+
+        CacheStats stats = c.getStats();
+        assertThat(stats.getHitCount(), is(1L));
+        assertThat(stats.getMissCount(), is(1L));
+        assertThat(stats.getPutCount(), is(3L));
+        assertThat(stats.getEvictionCount(), is(1L));
+
+        List<CacheStats> levelStats = c.getLevelStats();
+        assertThat(levelStats.get(0).getMissCount(), is(2L));
+        assertThat(levelStats.get(1).getHitCount(), is(1L));
+        assertThat(levelStats.get(0).plus(levelStats.get(1)).getRequestCount(), is(4L));
+        // the promotion of 2 is not a removal from the second level
+        assertThat(levelStats.get(1).getRemovalCount(RemovalCause.EXPLICIT), is(0L));
+        assertThat(levelStats.get(1).getEvictionCount(), is(1L));
+    }
+
+    @Test
+    public void plus() {
+        StatsCounter one = new ConcurrentStatsCounter();
+        one.recordHit();
+        one.recordLoadSuccess(10);
+        StatsCounter another = new ConcurrentStatsCounter();
+        another.recordMiss();
+        another.recordLoadFailure(20);
+        another.recordRemoval(RemovalCause.EVICTED);
+
+        CacheStats sum = one.snapshot().plus(another.snapshot());
+        assertThat(sum.getRequestCount(), is(2L));
+        assertThat(sum.getEvictionCount(), is(1L));
+        assertThat(sum.getAverageLoadPenaltyNanos(), is(15.0));
+    }
+
+}
@@ -0,0 +1,127 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.file.FileStorage;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class CacheWarmerTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    private FileStorage<Integer, String> storage;
+
+    @Before
+    public void init() throws IOException {
+        storage = new FileStorage<>(temporaryFolder.newFolder().toPath());
+        // the greater the key, the more recently it has been modified
+        for (int i = 1; i <= 5; i++)
+            storage.put(i, String.valueOf(i));
+        try (Stream<Path> files = Files.list(storage.getFolder())) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                int key = Integer.parseInt(file.getFileName().toString().split("#")[0]);
+                Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000L * key));
+            }
+        }
+    }
+
+    @After
+    public void cleanUp() {
+        pool.shutdown();
+    }
+
+    private static SimpleCache<Integer, String> buildLevel(int capacity) {
+        return new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), capacity);
+    }
+
+    @Test
+    public void mostRecentlyModifiedFirst() {
+        SimpleCache<Integer, String> cache = buildLevel(3);
+        assertThat(new CacheWarmer<>(storage, pool, 10).warmUp(cache), is(3));
+
+        assertThat(cache.getSize(), is(3));
+        assertThat(cache.get(5), is(Optional.of("5")));
+        assertFalse(cache.contains(2));
+        // the least important element is the least recently used one
+        assertThat(cache.evict().map(Map.Entry::getKey), is(Optional.of(3)));
+    }
+
+    @Test
+    public void keysOrderAndBudget() {
+        SimpleCache<Integer, String> cache = buildLevel(10);
+        int warmed = new CacheWarmer<>(storage, pool, 2).warmUp(cache, Arrays.asList(9, 2, 2, 1, 3));
+
+        assertThat(warmed, is(2));
+        assertTrue(cache.contains(1));
+        assertTrue(cache.contains(2));
+        assertFalse(cache.contains(3));
+    }
+
+    @Test
+    public void weightBudget() {
+        SimpleCache<Integer, String> cache = buildLevel(10);
+        cache.put(1, "1");
+        int warmed = new CacheWarmer<>(storage, pool, 10, (k, v) -> 2, 5).warmUp(cache);
+
+        assertThat(warmed, is(2));
+        assertThat(cache.getSize(), is(3));
+        assertTrue(cache.contains(5));
+        assertTrue(cache.contains(4));
+    }
+
+    @Test
+    public void multiLevelCache() {
+        MultiLevelCache<Integer, String> cache = new MultiLevelCache<>(buildLevel(2), buildLevel(2));
+        assertThat(new CacheWarmer<>(storage, pool, 10).warmUp(cache), is(4));
+
+        IntStream.of(5, 4).forEach(key -> assertTrue(cache.getLevels().get(0).contains(key)));
+        IntStream.of(3, 2).forEach(key -> assertTrue(cache.getLevels().get(1).contains(key)));
+        assertFalse(cache.contains(1));
+    }
+
+    @Test
+    public void multiLevelCacheOverSameFolder() {
+        SimpleCache<Integer, String> fileLevel =
+                new SimpleCache<>(new FileStorage<>(storage.getFolder()), new LruStrategy<>(), 10);
+        MultiLevelCache<Integer, String> cache = new MultiLevelCache<>(buildLevel(2), fileLevel);
+        assertThat(cache.getSize(), is(5));
+
+        // elements of the file level are moved to the first level, not copied
+        assertThat(new CacheWarmer<>(storage, pool, 3).warmUp(cache), is(3));
+        assertThat(cache.getSize(), is(5));
+        IntStream.of(5, 4).forEach(key -> assertTrue(cache.getLevels().get(0).contains(key)));
+        IntStream.of(5, 4).forEach(key -> assertFalse(fileLevel.contains(key)));
+        IntStream.of(3, 2, 1).forEach(key -> assertTrue(fileLevel.contains(key)));
+
+        assertThat(cache.remove(5), is(Optional.of("5")));
+        assertThat(cache.get(5), is(Optional.empty()));
+        assertThat(cache.getSize(), is(4));
+    }
+
+}
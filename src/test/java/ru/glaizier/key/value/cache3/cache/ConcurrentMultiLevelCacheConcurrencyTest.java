@@ -0,0 +1,20 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * Multi level specific checks are the same as for a synchronized MultiLevelCache
+ *
+ * @author GlaIZier
+ */
+public class ConcurrentMultiLevelCacheConcurrencyTest extends SynchronizedMultiLevelCacheConcurrencyTest {
+
+    @Override
+    protected Cache<Integer, Integer> getCache(int capacity) {
+        SynchronizedCache<Integer, Integer> level1 = new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), capacity / 2));
+        SynchronizedCache<Integer, Integer> level2 = new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), capacity / 2));
+        return new ConcurrentMultiLevelCache<>(level1, level2);
+    }
+
+}
@@ -0,0 +1,288 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.promotion.AlwaysPromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.promotion.PromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.cache.stats.ConcurrentStatsCounter;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.cache.strategy.MruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class ConcurrentMultiLevelCacheTest extends MultiLevelCacheTest {
+
+    @Override
+    protected Cache<Integer, String> buildCache(PromotionPolicy<Integer> promotionPolicy,
+                                                Cache<Integer, String> level1, Cache<Integer, String> level2) {
+        return new ConcurrentMultiLevelCache<>(Arrays.asList(new SynchronizedCache<>(level1),
+                new SynchronizedCache<>(level2)), 16, promotionPolicy);
+    }
+
+    @Test
+    public void stats() {
+        ConcurrentMultiLevelCache<Integer, String> c = new ConcurrentMultiLevelCache<>(Arrays.asList(
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1,
+                        new ConcurrentStatsCounter())),
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1,
+                        new ConcurrentStatsCounter()))),
+                16, new AlwaysPromotionPolicy<>(), null, 0, 1, null, new ConcurrentStatsCounter());
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(2, "22");
+        c.get(2);
+        c.get(1);
+        c.get(3);
+        c.put(3, "3");
+
+        CacheStats stats = c.getStats();
+        assertThat(stats.getHitCount(), is(2L));
+        assertThat(stats.getMissCount(), is(1L));
+        assertThat(stats.getPutCount(), is(4L));
+        assertThat(stats.getRemovalCount(RemovalCause.REPLACED), is(1L));
+        assertThat(stats.getEvictionCount(), is(1L));
+        List<CacheStats> levelStats = c.getLevelStats();
+        assertThat(levelStats.size(), is(2));
+        // a replaced element isn't an explicit removal of a level
+        assertThat(levelStats.get(0).getRemovalCount(RemovalCause.EXPLICIT), is(0L));
+        assertThat(levelStats.get(1).getRemovalCount(RemovalCause.EXPLICIT), is(0L));
+        assertThat(levelStats.get(1).getHitCount(), is(1L));
+    }
+
+    @Test
+    public void asyncDemotion() {
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        Cache<Integer, String> level2 = new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2));
+        ConcurrentMultiLevelCache<Integer, String> c = new ConcurrentMultiLevelCache<>(Arrays.asList(
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)), level2),
+                16, new AlwaysPromotionPolicy<>(), scheduled::add, 10, 2);
+
+        c.put(1, "1");
+        c.put(2, "2");
+        assertThat(c.put(3, "3"), is(Optional.empty()));
+        // 1 waits for the demoter
+        assertThat(scheduled.size(), is(1));
+        assertFalse(level2.contains(1));
+        assertTrue(c.contains(1));
+        assertThat(c.getSize(), is(3));
+
+        scheduled.poll().run();
+        assertTrue(level2.contains(1));
+        assertTrue(scheduled.isEmpty());
+
+        c.put(4, "4");
+        // pending 2 is served and moved back to the first level, which makes 3 pending
+        assertThat(c.get(2), is(Optional.of("2")));
+        assertThat(scheduled.size(), is(1));
+        scheduled.poll().run();
+        assertFalse(level2.contains(2));
+        assertTrue(level2.contains(3));
+        assertThat(c.getSize(), is(4));
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    public void asyncDemotionBackPressure() {
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        Cache<Integer, String> level2 = new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1));
+        ConcurrentMultiLevelCache<Integer, String> c = new ConcurrentMultiLevelCache<>(Arrays.asList(
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1)), level2),
+                16, new AlwaysPromotionPolicy<>(), scheduled::add, 1, 1);
+
+        c.put(1, "1");
+        c.put(2, "2");
+        assertThat(scheduled.size(), is(1));
+        // the demoter is behind, so the caller demotes its evicted elements itself
+        c.put(3, "3");
+        assertTrue(level2.contains(2));
+        assertThat(scheduled.size(), is(1));
+
+        // 1 is demoted after 2 and pushes it out of the last level
+        c.drainDemotions();
+        assertThat(c.getSize(), is(2));
+        assertTrue(level2.contains(1));
+        assertFalse(c.contains(2));
+        scheduled.poll().run();
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    public void deferredDemotionBatchSchedulesNext() {
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        Cache<Integer, String> level2 = new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 4));
+        ConcurrentMultiLevelCache<Integer, String> c = new ConcurrentMultiLevelCache<>(Arrays.asList(
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1)), level2),
+                16, new AlwaysPromotionPolicy<>(), scheduled::add, 10, 1);
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(3, "3");
+        assertThat(scheduled.size(), is(1));
+
+        // the batch runs in the thread that has scheduled it but after execute has returned
+        scheduled.poll().run();
+        assertTrue(level2.contains(1));
+        assertThat(scheduled.size(), is(1));
+        scheduled.poll().run();
+        assertTrue(level2.contains(2));
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    public void computeOfSameValueDoesNotMoveElement() {
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        Cache<Integer, String> level1 = new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1));
+        Cache<Integer, String> level2 = new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2));
+        ConcurrentMultiLevelCache<Integer, String> c = new ConcurrentMultiLevelCache<>(Arrays.asList(level1, level2),
+                16, new AlwaysPromotionPolicy<>(), scheduled::add, 10, 2);
+        c.put(1, "1");
+        c.put(2, "2");
+        scheduled.poll().run();
+        c.put(3, "3");
+
+        // 1 stays in the second level, 2 stays a pending demotion
+        assertThat(c.compute(1, (key, value) -> value), is(Optional.of("1")));
+        assertThat(c.compute(2, (key, value) -> value), is(Optional.of("2")));
+        assertTrue(level2.contains(1));
+        assertFalse(level1.contains(2));
+        assertTrue(level1.contains(3));
+        assertThat(scheduled.size(), is(1));
+
+        // a new value is moved to the first level
+        assertThat(c.compute(1, (key, value) -> value + value), is(Optional.of("11")));
+        assertFalse(level2.contains(1));
+        assertTrue(level1.contains(1));
+        assertThat(c.getSize(), is(3));
+    }
+
+    @Test
+    public void directDemotionExecutorReportsDropped() {
+        List<Integer> dropped = new ArrayList<>();
+        ConcurrentMultiLevelCache<Integer, String> c = new ConcurrentMultiLevelCache<>(Arrays.asList(
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(),
+                        (key, value) -> value.length(), 20_000)),
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 10))),
+                16, new AlwaysPromotionPolicy<>(), Runnable::run, 100_000, 1, (key, value, cause) -> {
+                    assertThat(cause, is(RemovalCause.EVICTED));
+                    dropped.add(key);
+                });
+        for (int i = 0; i < 20_000; i++)
+            c.put(i, "1");
+
+        // all the elements are demoted by batches of one, which are run one after another rather than recursively
+        StringBuilder heavy = new StringBuilder();
+        for (int i = 0; i < 20_000; i++)
+            heavy.append('2');
+        c.put(-1, heavy.toString());
+        assertThat(c.getSize(), is(11));
+        assertThat(dropped.size(), is(19_990));
+        assertThat(dropped.get(0), is(0));
+    }
+
+    @Test(timeout = 30_000)
+    public void removeRacesWithEviction() throws Exception {
+        ConcurrentMultiLevelCache<Integer, String> c = new ConcurrentMultiLevelCache<>(Arrays.asList(
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 4)),
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 4))), 16);
+        int workers = 4;
+        int keysPerWorker = 10_000;
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 2);
+        try {
+            // evicts elements of the workers from the levels all the time
+            List<Future<?>> churners = new ArrayList<>();
+            for (int churner = 0; churner < 2; churner++) {
+                int base = (workers + churner) * keysPerWorker;
+                churners.add(executor.submit(() -> {
+                    for (int i = 0; !done.get(); i = (i + 1) % keysPerWorker)
+                        c.put(base + i, "churn");
+                }));
+            }
+            List<Future<?>> removers = new ArrayList<>();
+            for (int worker = 0; worker < workers; worker++) {
+                int base = worker * keysPerWorker;
+                removers.add(executor.submit(() -> {
+                    for (int i = 1; i < keysPerWorker; i++) {
+                        c.put(base + i, "value");
+                        // the previous element is likely in the second level, so the get promotes it
+                        c.get(base + i - 1);
+                        c.remove(base + i - 1);
+                    }
+                    c.remove(base + keysPerWorker - 1);
+                }));
+            }
+            for (Future<?> remover : removers)
+                remover.get();
+            done.set(true);
+            for (Future<?> churner : churners)
+                churner.get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // removed elements are neither duplicated nor brought back by demotions
+        assertThat(c.keys().filter(key -> key < workers * keysPerWorker).count(), is(0L));
+        assertThat(c.keys().distinct().count(), is((long) c.getSize()));
+    }
+
+    @Test
+    public void promotionRacesWithEviction() {
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        AtomicBoolean evictOnRead = new AtomicBoolean();
+        List<ConcurrentMultiLevelCache<Integer, String>> cache = new ArrayList<>(1);
+        SynchronizedCache<Integer, String> level2 = new SynchronizedCache<Integer, String>(
+                new SimpleCache<>(new MemoryStorage<>(), new MruStrategy<>(), 2)) {
+            @Override
+            public String getOrNull(@Nonnull Integer key) {
+                String found = super.getOrNull(key);
+                // the level evicts the just read element before it's promoted, as a put of another key could do
+                if (evictOnRead.getAndSet(false)) {
+                    setCapacity(1);
+                    cache.get(0).cleanUp();
+                }
+                return found;
+            }
+        };
+        ConcurrentMultiLevelCache<Integer, String> c = new ConcurrentMultiLevelCache<>(Arrays.asList(
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1)), level2),
+                16, new AlwaysPromotionPolicy<>(), scheduled::add, 10, 10);
+        cache.add(c);
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(3, "3");
+        scheduled.poll().run();
+        // 3 - 2 1
+
+        evictOnRead.set(true);
+        assertThat(c.get(1), is(Optional.of("1")));
+        // 1 - 2, 3 is pending
+        assertThat(c.getSize(), is(3));
+        assertThat(c.remove(1), is(Optional.of("1")));
+        assertFalse(c.contains(1));
+        // 3 pushes 2 out of the shrunk second level
+        scheduled.poll().run();
+        assertFalse(c.contains(1));
+        assertTrue(c.contains(3));
+        assertThat(c.getSize(), is(1));
+    }
+
+}
@@ -0,0 +1,154 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.metrics.MissRatioCurve;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class LevelRebalancerTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private Cache<Integer, String> level1;
+
+    private Cache<Integer, String> level2;
+
+    private MissRatioTrackingCache<Integer, String> c;
+
+    @Before
+    public void init() {
+        level1 = buildLevel(40);
+        level2 = buildLevel(10);
+        c = new MissRatioTrackingCache<>(new ConcurrentMultiLevelCache<>(Arrays.asList(level1, level2)),
+                new MissRatioCurve<>(50, 1, 1_000));
+    }
+
+    private static Cache<Integer, String> buildLevel(int capacity) {
+        return new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), capacity));
+    }
+
+    private LevelRebalancer<Integer, String> buildRebalancer(List<Integer> maxCapacities) {
+        return new LevelRebalancer<>(c, Arrays.asList(level1, level2), maxCapacities, 5, 1, TimeUnit.HOURS,
+                scheduler);
+    }
+
+    @After
+    public void cleanUp() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void loopMovesToFirstLevel() {
+        try (LevelRebalancer<Integer, String> rebalancer = buildRebalancer(Arrays.asList(100, 100))) {
+            // the loop doesn't fit the first level, so every access goes to the second one
+            loop(45, 5);
+
+            assertTrue(rebalancer.rebalance());
+            assertThat(rebalancer.getCapacities(), is(Arrays.asList(45, 5)));
+            assertThat(c.getSize(), is(45));
+
+            loop(45, 5);
+            // the loop fits the first level now and the second one can't shrink more
+            assertFalse(rebalancer.rebalance());
+            assertThat(rebalancer.getCapacities(), is(Arrays.asList(45, 5)));
+            assertThat(level1.getSize(), is(45));
+            assertThat(level2.getSize(), is(0));
+        }
+    }
+
+    @Test
+    public void hitsMovedThroughLevels() {
+        Cache<Integer, String> level3 = buildLevel(30);
+        c = new MissRatioTrackingCache<>(new ConcurrentMultiLevelCache<>(Arrays.asList(level1, level2, level3)),
+                new MissRatioCurve<>(80, 1, 1_000));
+        try (LevelRebalancer<Integer, String> rebalancer = new LevelRebalancer<>(c,
+                Arrays.asList(level1, level2, level3), Arrays.asList(100, 100, 100), 5, 1, TimeUnit.HOURS,
+                scheduler)) {
+            // the loop fits the first two levels after a step from the third one, the first level wins the tie
+            loop(55, 5);
+
+            assertTrue(rebalancer.rebalance());
+            assertThat(rebalancer.getCapacities(), is(Arrays.asList(45, 10, 25)));
+
+            loop(55, 5);
+            // the loop fits the first two levels, so more capacity above them doesn't move hits, and the first level
+            // alone hits nothing, so it gives a step back to the second one
+            assertTrue(rebalancer.rebalance());
+            assertThat(rebalancer.getCapacities(), is(Arrays.asList(40, 15, 25)));
+        }
+    }
+
+    @Test
+    public void maxCapacityIsNotExceeded() {
+        try (LevelRebalancer<Integer, String> rebalancer = buildRebalancer(Arrays.asList(40, 100))) {
+            loop(45, 5);
+            // the last step of the first level serves a smaller loop, so it isn't given back either
+            loop(38, 5);
+
+            assertFalse(rebalancer.rebalance());
+            assertThat(rebalancer.getCapacities(), is(Arrays.asList(40, 10)));
+        }
+    }
+
+    @Test
+    public void unusedCapacityMovesDown() {
+        try (LevelRebalancer<Integer, String> rebalancer = buildRebalancer(Arrays.asList(100, 100))) {
+            // the loop needs a half of the first level
+            do {
+                loop(20, 5);
+            } while (rebalancer.rebalance());
+
+            assertThat(rebalancer.getCapacities(), is(Arrays.asList(20, 30)));
+            assertThat(level1.getSize(), is(20));
+        }
+    }
+
+    @Test
+    public void downMovesRespectMaxCapacity() {
+        try (LevelRebalancer<Integer, String> rebalancer = buildRebalancer(Arrays.asList(100, 10))) {
+            loop(20, 5);
+
+            assertFalse(rebalancer.rebalance());
+            assertThat(rebalancer.getCapacities(), is(Arrays.asList(40, 10)));
+        }
+    }
+
+    @Test
+    public void noTrafficNoMoves() {
+        try (LevelRebalancer<Integer, String> rebalancer = buildRebalancer(Arrays.asList(100, 100))) {
+            assertFalse(rebalancer.rebalance());
+            assertThat(rebalancer.getCapacities(), is(Arrays.asList(40, 10)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxCapacityBelowCapacity() {
+        buildRebalancer(Arrays.asList(30, 100));
+    }
+
+    private void loop(int keys, int passes) {
+        for (int pass = 0; pass < passes; pass++) {
+            for (int key = 0; key < keys; key++) {
+                if (!c.get(key).isPresent())
+                    c.put(key, String.valueOf(key));
+            }
+        }
+    }
+
+}
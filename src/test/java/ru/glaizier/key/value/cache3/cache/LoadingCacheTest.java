@@ -0,0 +1,225 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.stats.CacheStats;
+import ru.glaizier.key.value.cache3.cache.stats.ConcurrentStatsCounter;
+import ru.glaizier.key.value.cache3.cache.stats.StatsCounter;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class LoadingCacheTest {
+
+    private final AtomicLong time = new AtomicLong();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Queue<Runnable> scheduled = new ArrayDeque<>();
+
+    private volatile boolean failLoads;
+
+    private LoadingCache<Integer, String> c;
+
+    @Before
+    public void init() {
+        CacheLoader<Integer, String> loader = key -> {
+            if (failLoads)
+                throw new IllegalStateException("Origin is down");
+            int version = loads.incrementAndGet();
+            return key > 0 ? Optional.of(key + "-" + version) : Optional.empty();
+        };
+        c = new LoadingCache<>(new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)),
+                loader, 10, TimeUnit.NANOSECONDS, scheduled::add, time::get, null, StatsCounter.disabled());
+    }
+
+    @Test
+    public void loadOnMiss() {
+        assertThat(c.get(1), is(Optional.of("1-1")));
+        assertTrue(c.contains(1));
+        assertThat(c.get(1), is(Optional.of("1-1")));
+        assertThat(loads.get(), is(1));
+        assertTrue(scheduled.isEmpty());
+    }
+
+    @Test
+    public void absentIsNotCached() {
+        assertThat(c.get(-1), is(Optional.empty()));
+        assertFalse(c.contains(-1));
+        assertThat(c.get(-1), is(Optional.empty()));
+        assertThat(loads.get(), is(2));
+    }
+
+    @Test
+    public void stats() {
+        c = new LoadingCache<>(new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)),
+                key -> {
+                    time.addAndGet(3);
+                    if (failLoads)
+                        throw new IllegalStateException("Origin is down");
+                    return key > 0 ? Optional.of(String.valueOf(key)) : Optional.empty();
+                }, 10, TimeUnit.NANOSECONDS, scheduled::add, time::get, null, new ConcurrentStatsCounter());
+        c.get(1);
+        c.get(1);
+        c.get(-1);
+        failLoads = true;
+        try {
+            c.get(2);
+        } catch (IllegalStateException ignored) {
+        }
+
+        CacheStats stats = c.getStats();
+        assertThat(stats.getHitCount(), is(1L));
+        assertThat(stats.getMissCount(), is(3L));
+        assertThat(stats.getLoadSuccessCount(), is(2L));
+        assertThat(stats.getLoadFailureCount(), is(1L));
+        assertThat(stats.getTotalLoadTimeNanos(), is(9L));
+    }
+
+    @Test
+    public void refreshAfterWrite() {
+        c.get(1);
+        time.set(10);
+
+        // stale value is returned immediately and only one reload is scheduled
+        assertThat(c.get(1), is(Optional.of("1-1")));
+        assertThat(c.get(1), is(Optional.of("1-1")));
+        assertThat(scheduled.size(), is(1));
+
+        scheduled.poll().run();
+        assertThat(c.get(1), is(Optional.of("1-2")));
+        assertTrue(scheduled.isEmpty());
+
+        time.set(20);
+        assertThat(c.get(1), is(Optional.of("1-2")));
+        scheduled.poll().run();
+        assertThat(c.get(1), is(Optional.of("1-3")));
+    }
+
+    @Test
+    public void refreshDoesNotOverwriteNewerPut() {
+        c.get(1);
+        time.set(10);
+        c.get(1);
+        c.put(1, "newer");
+
+        scheduled.poll().run();
+        assertThat(c.get(1), is(Optional.of("newer")));
+    }
+
+    @Test
+    public void putDuringRefreshWriteIsNotOverwritten() throws InterruptedException {
+        Thread[] writer = new Thread[1];
+        AtomicBoolean armed = new AtomicBoolean();
+        NegativeCache<Integer> negativeCache = new NegativeCache<Integer>(10, 5, TimeUnit.NANOSECONDS, time::get) {
+            @Override
+            public void invalidate(Integer key) {
+                super.invalidate(key);
+                // a put of the key races with the put of the reloaded value
+                if (armed.compareAndSet(true, false)) {
+                    writer[0] = new Thread(() -> c.put(1, "newer"));
+                    writer[0].start();
+                    try {
+                        writer[0].join(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        };
+        c = new LoadingCache<>(new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)),
+                key -> Optional.of(key + "-" + loads.incrementAndGet()), 10, TimeUnit.NANOSECONDS, scheduled::add,
+                time::get, negativeCache, StatsCounter.disabled());
+        c.put(1, "1");
+        time.set(10);
+        c.get(1);
+
+        armed.set(true);
+        scheduled.poll().run();
+        writer[0].join();
+        assertThat(c.get(1), is(Optional.of("newer")));
+    }
+
+    @Test
+    public void writeTimesOfKeysRemovedBypassingAreSwept() {
+        SimpleCache<Integer, String> underlying = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1_000);
+        c = new LoadingCache<>(underlying, key -> Optional.of(String.valueOf(key)), 10, TimeUnit.NANOSECONDS,
+                scheduled::add, time::get, null, StatsCounter.disabled());
+        for (int i = 0; i < 200; i++) {
+            c.put(i, String.valueOf(i));
+            underlying.removeQuietly(i);
+        }
+
+        // the write time of the key has been forgotten, so a value put bypassing is refreshed right away
+        underlying.put(0, "bypassing");
+        assertThat(c.get(0), is(Optional.of("bypassing")));
+        assertThat(scheduled.size(), is(1));
+    }
+
+    @Test
+    public void failedRefreshKeepsStaleValue() {
+        c.get(1);
+        time.set(10);
+        failLoads = true;
+        c.get(1);
+
+        scheduled.poll().run();
+        assertThat(c.get(1), is(Optional.of("1-1")));
+
+        failLoads = false;
+        scheduled.poll().run();
+        assertThat(c.get(1), is(Optional.of("1-2")));
+    }
+
+    @Test
+    public void evictedKeyIsLoadedAgain() {
+        c.get(1);
+        c.get(2);
+        c.get(3);
+        assertFalse(c.contains(1));
+        assertThat(c.get(1), is(Optional.of("1-4")));
+        assertThat(c.evict().get().getKey(), is(3));
+        assertThat(c.getSize(), is(1));
+    }
+
+    @Test
+    public void absentIsCachedInNegativeCache() {
+        c = new LoadingCache<>(new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)),
+                key -> {
+                    loads.incrementAndGet();
+                    return Optional.empty();
+                }, 10, TimeUnit.NANOSECONDS, scheduled::add, time::get, new NegativeCache<>(10, 5, TimeUnit.NANOSECONDS, time::get),
+                StatsCounter.disabled());
+
+        assertThat(c.get(1), is(Optional.empty()));
+        assertThat(c.get(1), is(Optional.empty()));
+        assertThat(loads.get(), is(1));
+
+        // a put invalidates the mark
+        c.put(1, "1");
+        assertThat(c.get(1), is(Optional.of("1")));
+        c.remove(1);
+        assertThat(c.get(1), is(Optional.empty()));
+        assertThat(loads.get(), is(2));
+
+        time.set(5);
+        assertThat(c.get(1), is(Optional.empty()));
+        assertThat(loads.get(), is(3));
+    }
+
+}
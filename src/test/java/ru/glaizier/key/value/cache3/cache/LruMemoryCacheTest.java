@@ -0,0 +1,93 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class LruMemoryCacheTest extends SimpleCacheTest {
+
+    private final Cache<Integer, String> cache = new LruMemoryCache<>(2);
+
+    @Override
+    protected Cache<Integer, String> getCache() {
+        return cache;
+    }
+
+    @Test
+    public void lruOrder() {
+        assertThat(cache.put(1, "1"), is(Optional.empty()));
+        assertThat(cache.put(2, "2"), is(Optional.empty()));
+        assertThat(cache.get(1), is(Optional.of("1")));
+        assertThat(cache.put(3, "3"), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(2, "2"))));
+
+        assertTrue(cache.isFull());
+        assertThat(cache.get(2), is(Optional.empty()));
+        assertThat(cache.keys().collect(Collectors.toList()), is(Arrays.asList(1, 3)));
+        // replace makes the element the most recently used
+        assertThat(cache.put(1, "11"), is(Optional.empty()));
+        assertThat(cache.evict().get().getKey(), is(3));
+        assertThat(cache.evict().get().getValue(), is("11"));
+        assertFalse(cache.evict().isPresent());
+    }
+
+    @Test
+    public void compute() {
+        assertThat(cache.merge(1, "1", String::concat), is(Optional.of("1")));
+        assertThat(cache.merge(1, "1", String::concat), is(Optional.of("11")));
+        assertThat(cache.putIfAbsent(2, "2"), is(Optional.empty()));
+        // computing a new key evicts the least recently used one
+        assertThat(cache.computeIfAbsent(3, String::valueOf), is(Optional.of("3")));
+        assertFalse(cache.contains(1));
+        assertThat(cache.compute(2, (key, value) -> null), is(Optional.empty()));
+        assertThat(cache.getSize(), is(1));
+    }
+
+    @Test
+    public void sameAsSimpleCache() {
+        Cache<Integer, Integer> fused = new LruMemoryCache<>(1_000);
+        Cache<Integer, Integer> simple = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1_000);
+        // grows the table several times and evicts by a skewed access pattern
+        for (int i = 0; i < 20_000; i++) {
+            int key = (i * 7919) % (i % 3 == 0 ? 500 : 3_000);
+            assertThat(fused.get(key), is(simple.get(key)));
+            if (i % 2 == 0)
+                assertThat(fused.put(key, i), is(simple.put(key, i)));
+            if (i % 11 == 0)
+                assertThat(fused.remove(i % 3_000), is(simple.remove(i % 3_000)));
+        }
+        assertThat(fused.getSize(), is(simple.getSize()));
+        IntStream.range(0, fused.getSize()).forEach(i -> assertThat(fused.evict(), is(simple.evict())));
+    }
+
+    @Test
+    public void weighted() {
+        Cache<Integer, String> weighted = new LruMemoryCache<>((key, value) -> value.length(), 10);
+        weighted.put(1, "111");
+        weighted.put(2, "222");
+        weighted.put(2, "22");
+        assertThat(weighted.getWeight(), is(5L));
+
+        List<Map.Entry<Integer, String>> evicted = new ArrayList<>();
+        weighted.put(3, "333333333", evicted::add);
+        assertThat(evicted.size(), is(2));
+        assertThat(weighted.getWeight(), is(9L));
+        assertThat(weighted.getSize(), is(1));
+    }
+}
@@ -4,12 +4,22 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import ru.glaizier.key.value.cache3.cache.promotion.AlwaysPromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.promotion.HitCountPromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.promotion.PromotionPolicy;
 import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
 import ru.glaizier.key.value.cache3.storage.file.FileStorage;
 import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.*;
@@ -21,9 +31,14 @@ public class MultiLevelCacheTest {
 
     private Cache<Integer, String> c;
 
+    protected Cache<Integer, String> buildCache(PromotionPolicy<Integer> promotionPolicy,
+                                                Cache<Integer, String> level1, Cache<Integer, String> level2) {
+        return new MultiLevelCache<>(Arrays.asList(level1, level2), promotionPolicy);
+    }
+
     @Before
     public void init() {
-        c = new MultiLevelCache<>(
+        c = buildCache(new AlwaysPromotionPolicy<>(),
                 new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2),
                 new SimpleCache<>(new FileStorage<>(temporaryFolder.getRoot().toPath()), new LruStrategy<>(), 2)
         );
@@ -208,6 +223,34 @@ public class MultiLevelCacheTest {
     }
 
 
+    @Test
+    public void setCapacity() {
+        List<Cache<Integer, String>> levels = Arrays.asList(
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1),
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 3));
+        Cache<Integer, String> resized = buildCache(new AlwaysPromotionPolicy<>(), levels.get(0), levels.get(1));
+        resized.setCapacity(8);
+        assertThat(resized.getCapacity(), is(8));
+        assertThat(levels.get(0).getCapacity(), is(2));
+        assertThat(levels.get(1).getCapacity(), is(6));
+        for (int i = 0; i < 8; i++)
+            resized.put(i, String.valueOf(i));
+        assertThat(resized.getSize(), is(8));
+
+        // every level keeps at least 1
+        resized.setCapacity(2);
+        assertThat(levels.get(0).getCapacity(), is(1));
+        assertThat(levels.get(1).getCapacity(), is(1));
+        resized.cleanUp();
+        assertThat(resized.getSize(), is(2));
+        assertTrue(resized.contains(7));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityLessThanLevels() {
+        c.setCapacity(1);
+    }
+
     @Test
     public void size() {
         assertThat(c.getSize(), is(0));
@@ -225,4 +268,122 @@ public class MultiLevelCacheTest {
         assertThat(c.getSize(), is(4));
     }
 
+    @Test
+    public void weightedLevels() {
+        Cache<Integer, String> weighted = buildCache(new AlwaysPromotionPolicy<>(),
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), (key, value) -> value.length(), 4),
+                new SimpleCache<>(new FileStorage<>(temporaryFolder.getRoot().toPath()), new LruStrategy<>(),
+                        (key, value) -> value.length(), 4)
+        );
+        assertThat(weighted.getMaxWeight(), is(8L));
+        weighted.put(1, "11");
+        weighted.put(2, "22");
+        // 1 2 - <>
+        weighted.put(3, "3333");
+        // 3 - 1 2
+        assertThat(weighted.getWeight(), is(8L));
+        assertThat(weighted.getSize(), is(3));
+
+        // both 1 and 2 are evicted from the last level
+        List<Map.Entry<Integer, String>> evicted = new ArrayList<>();
+        weighted.put(4, "4444", evicted::add);
+        // 4 - 3
+        assertThat(evicted.size(), is(2));
+        assertThat(evicted.get(0), is(new AbstractMap.SimpleImmutableEntry<>(1, "11")));
+        assertThat(evicted.get(1), is(new AbstractMap.SimpleImmutableEntry<>(2, "22")));
+        assertThat(weighted.get(3), is(Optional.of("3333")));
+        // 3 - 4
+        assertTrue(weighted.contains(4));
+        assertThat(weighted.getWeight(), is(8L));
+    }
+
+    @Test
+    public void weightedEvictReportsAllElements() {
+        Cache<Integer, String> weighted = buildCache(new AlwaysPromotionPolicy<>(),
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), (key, value) -> value.length(), 4),
+                new SimpleCache<>(new FileStorage<>(temporaryFolder.getRoot().toPath()), new LruStrategy<>(),
+                        (key, value) -> value.length(), 4)
+        );
+        weighted.put(1, "11");
+        weighted.put(2, "22");
+        weighted.put(3, "3333");
+        // 3 - 1 2
+
+        List<Map.Entry<Integer, String>> evicted = new ArrayList<>();
+        assertTrue(weighted.evict((key, value) -> evicted.add(new AbstractMap.SimpleImmutableEntry<>(key, value))));
+        // <> - 3
+        assertThat(evicted, is(Arrays.<Map.Entry<Integer, String>>asList(
+                new AbstractMap.SimpleImmutableEntry<>(1, "11"), new AbstractMap.SimpleImmutableEntry<>(2, "22"))));
+        assertThat(weighted.getSize(), is(1));
+    }
+
+    @Test
+    public void weightedPromotionReportsEvicted() {
+        MultiLevelCache<Integer, String> weighted = new MultiLevelCache<>(
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), (key, value) -> value.length(), 4),
+                new SimpleCache<>(new FileStorage<>(temporaryFolder.getRoot().toPath()), new LruStrategy<>(),
+                        (key, value) -> value.length(), 4)
+        );
+        weighted.put(1, "11");
+        weighted.put(2, "22");
+        weighted.put(3, "3333");
+        // 3 - 1 2
+
+        List<Map.Entry<Integer, String>> evicted = new ArrayList<>();
+        assertThat(weighted.get(1, evicted::add), is(Optional.of("11")));
+        // 1 - 3
+        assertThat(evicted, is(Collections.<Map.Entry<Integer, String>>singletonList(
+                new AbstractMap.SimpleImmutableEntry<>(2, "22"))));
+        assertThat(weighted.getSize(), is(2));
+    }
+
+    @Test
+    public void promoteAfterHits() {
+        Cache<Integer, String> promoting = buildCache(new HitCountPromotionPolicy<>(2),
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2),
+                new SimpleCache<>(new FileStorage<>(temporaryFolder.getRoot().toPath()), new LruStrategy<>(), 2)
+        );
+        promoting.put(1, "1");
+        promoting.put(2, "2");
+        promoting.put(3, "3");
+        promoting.put(4, "4");
+        // 4 3 - 2 1
+
+        // the first hit is served in place
+        assertThat(promoting.get(1), is(Optional.of("1")));
+        // 4 3 - 1 2
+        assertThat(promoting.evict(), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(2, "2"))));
+        // <> 4 - 3 1
+        promoting.put(2, "2");
+        // 2 4 - 3 1
+
+        // the second hit moves the element to the first level
+        assertThat(promoting.get(1), is(Optional.of("1")));
+        // 1 2 - 4 3
+        assertThat(promoting.getSize(), is(4));
+        assertThat(promoting.evict(), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(3, "3"))));
+        // <> 1 - 2 4
+        assertThat(promoting.evict(), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(4, "4"))));
+        // <> <> - 1 2
+        assertThat(promoting.evict(), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(2, "2"))));
+        assertThat(promoting.evict(), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(1, "1"))));
+    }
+
+    @Test
+    public void streams() {
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(3, "3");
+        c.put(4, "4");
+
+        assertThat(c.keys().parallel().collect(Collectors.toSet()), is(new HashSet<>(Arrays.asList(1, 2, 3, 4))));
+        Map<Integer, String> entries = c.entries().parallel()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        assertThat(entries.size(), is(4));
+        entries.forEach((key, value) -> assertThat(value, is(String.valueOf(key))));
+
+        // streams don't change the order of eviction
+        assertThat(c.put(5, "5"), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(1, "1"))));
+    }
+
 }
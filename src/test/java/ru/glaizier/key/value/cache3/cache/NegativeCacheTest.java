@@ -0,0 +1,73 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.promotion.AlwaysPromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class NegativeCacheTest {
+
+    private final AtomicLong time = new AtomicLong();
+
+    private final NegativeCache<Integer> c = new NegativeCache<>(2, 10, TimeUnit.NANOSECONDS, time::get);
+
+    @Test
+    public void markAbsent() {
+        assertFalse(c.isAbsent(1));
+        c.markAbsent(1);
+        assertTrue(c.isAbsent(1));
+        c.invalidate(1);
+        assertFalse(c.isAbsent(1));
+    }
+
+    @Test
+    public void expire() {
+        c.markAbsent(1);
+        time.set(5);
+        c.markAbsent(2);
+        time.set(10);
+        assertFalse(c.isAbsent(1));
+        assertTrue(c.isAbsent(2));
+        assertThat(c.getSize(), is(1));
+    }
+
+    @Test
+    public void bounded() {
+        c.markAbsent(1);
+        c.markAbsent(2);
+        c.markAbsent(3);
+        assertThat(c.getSize(), is(2));
+        assertFalse(c.isAbsent(1));
+        assertTrue(c.isAbsent(2));
+        assertTrue(c.isAbsent(3));
+    }
+
+    @Test
+    public void cachedMissesDontProbeLevels() {
+        SimpleCache<Integer, String> level = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2);
+        MultiLevelCache<Integer, String> multiLevelCache = new MultiLevelCache<>(Collections.singletonList(level),
+                new AlwaysPromotionPolicy<>(), c);
+
+        assertFalse(multiLevelCache.get(1).isPresent());
+        assertTrue(c.isAbsent(1));
+        // bypassing the multi level cache makes the mark stale until it expires
+        level.put(1, "1");
+        assertFalse(multiLevelCache.contains(1));
+        multiLevelCache.put(1, "1");
+        assertTrue(multiLevelCache.contains(1));
+        assertFalse(c.isAbsent(1));
+    }
+
+}
@@ -0,0 +1,68 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+import ru.glaizier.key.value.cache3.storage.offheap.OffHeapStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class OffHeapCacheTest {
+
+    private final OffHeapCache<Integer, String> offHeap = new OffHeapCache<>(new OffHeapStorage<>(1 << 16, 1, 1 << 12), 3);
+
+    @Test
+    public void clockEviction() {
+        offHeap.put(1, "1");
+        offHeap.put(2, "2");
+        offHeap.put(3, "3");
+        assertTrue(offHeap.isFull());
+        // all the elements are referenced, so the first round clears reference bits
+        Optional<Map.Entry<Integer, String>> evicted = offHeap.put(4, "4");
+        assertTrue(evicted.isPresent());
+        assertFalse(offHeap.contains(evicted.get().getKey()));
+        assertThat(offHeap.getSize(), is(3));
+        // replace doesn't evict
+        assertThat(offHeap.put(4, "44"), is(Optional.empty()));
+    }
+
+    @Test
+    public void computeEvictsOnlyForNewKey() {
+        offHeap.put(1, "1");
+        offHeap.put(2, "2");
+        offHeap.put(3, "3");
+
+        assertFalse(offHeap.replace(4, "4", "44"));
+        assertThat(offHeap.compute(4, (key, value) -> value == null ? null : value + "4"), is(Optional.empty()));
+        assertThat(offHeap.computeIfAbsent(4, key -> null), is(Optional.empty()));
+        assertTrue(offHeap.replace(3, "3", "33"));
+        assertThat(offHeap.getSize(), is(3));
+
+        assertThat(offHeap.computeIfAbsent(4, String::valueOf), is(Optional.of("4")));
+        assertThat(offHeap.getSize(), is(3));
+        assertTrue(offHeap.contains(4));
+    }
+
+    @Test
+    public void level() {
+        MultiLevelCache<Integer, String> cache = new MultiLevelCache<>(
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1), offHeap);
+        for (int i = 1; i <= 4; i++)
+            cache.put(i, String.valueOf(i));
+        assertThat(cache.getSize(), is(4));
+        assertTrue(cache.getLevels().get(0).contains(4));
+        assertThat(cache.get(1), is(Optional.of("1")));
+        assertThat(offHeap.getSize(), is(3));
+        assertTrue(offHeap.contains(4));
+    }
+
+}
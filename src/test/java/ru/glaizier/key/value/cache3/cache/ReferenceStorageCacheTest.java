@@ -0,0 +1,66 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.stats.ConcurrentStatsCounter;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.SynchronizedStorage;
+import ru.glaizier.key.value.cache3.storage.memory.ReferenceStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class ReferenceStorageCacheTest {
+
+    private final List<RemovalCause> causes = new ArrayList<>();
+
+    private final SimpleCache<Integer, String> cache = new SimpleCache<>(
+            new ReferenceStorage<>(ReferenceStorage.Strength.WEAK), new LruStrategy<>(), 10, null, Long.MAX_VALUE,
+            new ConcurrentStatsCounter(), (key, value, cause) -> {
+                if (cause == RemovalCause.COLLECTED)
+                    assertThat(value, is(nullValue()));
+                causes.add(cause);
+            });
+
+    @Test
+    public void collectedArePurged() throws InterruptedException {
+        String retained = new String("1");
+        cache.put(1, retained);
+        IntStream.rangeClosed(2, 5).forEach(i -> cache.put(i, new String(String.valueOf(i))));
+
+        for (int i = 0; i < 100 && cache.getSize() > 1; i++) {
+            System.gc();
+            Thread.sleep(10);
+            cache.cleanUp();
+        }
+        assertThat(cache.getSize(), is(1));
+        assertThat(cache.get(1), is(Optional.of("1")));
+        assertThat(cache.get(2), is(Optional.empty()));
+        assertThat(cache.getStats().getRemovalCount(RemovalCause.COLLECTED), is(4L));
+        assertThat(causes.size(), is(4));
+
+        // the strategy has forgotten collected keys, so evictions work
+        List<String> values = new ArrayList<>();
+        IntStream.rangeClosed(6, 20).forEach(i -> {
+            values.add(String.valueOf(i));
+            cache.put(i, values.get(values.size() - 1));
+        });
+        assertThat(cache.getSize(), is(10));
+        assertThat(cache.getStats().getEvictionCount(), is(6L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weightBoundedCacheIsRejected() {
+        new SimpleCache<>(new SynchronizedStorage<>(new ReferenceStorage<Integer, String>(ReferenceStorage.Strength.SOFT)),
+                new LruStrategy<>(), (key, value) -> value.length(), 100);
+    }
+
+}
@@ -0,0 +1,91 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.promotion.AlwaysPromotionPolicy;
+import ru.glaizier.key.value.cache3.cache.stats.StatsCounter;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class RemovalListenerTest {
+
+    private final List<String> removals = new ArrayList<>();
+
+    private final RemovalListener<Integer, String> listener =
+            (key, value, cause) -> removals.add(key + "=" + value + " " + cause);
+
+    @Test
+    public void simpleCache() {
+        Cache<Integer, String> c = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2, null, Long.MAX_VALUE,
+                StatsCounter.disabled(), listener);
+        c.put(1, "1");
+        c.put(1, "11");
+        c.put(2, "2");
+        c.put(3, "3");
+        c.remove(2);
+        c.remove(2);
+        c.evict();
+
+        assertThat(removals, is(Arrays.asList("1=1 REPLACED", "1=11 EVICTED", "2=2 EXPLICIT", "3=3 EVICTED")));
+    }
+
+    @Test
+    public void multiLevelCache() {
+        List<String> levelRemovals = new ArrayList<>();
+        List<String> secondLevelRemovals = new ArrayList<>();
+        Cache<Integer, String> c = new MultiLevelCache<>(Arrays.asList(
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1, null, Long.MAX_VALUE,
+                        StatsCounter.disabled(), (key, value, cause) -> levelRemovals.add(key + " " + cause)),
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1, null, Long.MAX_VALUE,
+                        StatsCounter.disabled(), (key, value, cause) -> secondLevelRemovals.add(key + " " + cause))),
+                new AlwaysPromotionPolicy<>(), null, StatsCounter.disabled(), listener);
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(3, "3");
+        c.put(3, "33");
+        c.remove(2);
+        c.put(4, "4");
+        // promotes 3 from the second level
+        c.get(3);
+
+        assertThat(removals, is(Arrays.asList("1=1 EVICTED", "3=3 REPLACED", "2=2 EXPLICIT")));
+        // moves between levels
+        assertThat(levelRemovals, is(Arrays.asList("1 EVICTED", "2 EVICTED", "3 EXPLICIT", "3 EVICTED",
+                "4 EVICTED")));
+        // the promotion is not a removal
+        assertThat(secondLevelRemovals, is(Arrays.asList("1 EVICTED", "2 EXPLICIT")));
+    }
+
+    @Test
+    public void async() {
+        Queue<Runnable> scheduled = new ArrayDeque<>();
+        RemovalListener<Integer, String> async = new AsyncRemovalListener<>((key, value, cause) -> {
+            if (key == 2)
+                throw new IllegalStateException("Listener failure");
+            listener.onRemoval(key, value, cause);
+        }, scheduled::add);
+
+        async.onRemoval(1, "1", RemovalCause.EVICTED);
+        async.onRemoval(2, "2", RemovalCause.EVICTED);
+        async.onRemoval(3, "3", RemovalCause.REPLACED);
+        assertTrue(removals.isEmpty());
+        assertThat(scheduled.size(), is(1));
+
+        scheduled.poll().run();
+        assertThat(removals, is(Arrays.asList("1=1 EVICTED", "3=3 REPLACED")));
+        assertTrue(scheduled.isEmpty());
+    }
+
+}
@@ -1,6 +1,9 @@
 package ru.glaizier.key.value.cache3.cache;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.core.Is.is;
 import static org.junit.Assert.assertFalse;
@@ -49,4 +52,47 @@ public abstract class SimpleCacheTest {
         assertFalse(getCache().contains(2));
     }
 
+    @Test
+    public void setCapacity() {
+        getCache().setCapacity(40);
+        IntStream.range(0, 40).forEach(i -> getCache().put(i, String.valueOf(i)));
+        assertThat(getCache().getSize(), is(40));
+
+        // shrinks incrementally
+        getCache().setCapacity(2);
+        assertThat(getCache().getSize(), is(40));
+        assertTrue(getCache().isFull());
+        getCache().cleanUp();
+        assertThat(getCache().getSize(), is(24));
+        getCache().cleanUp();
+        assertThat(getCache().getSize(), is(8));
+        List<Integer> evictedKeys = new ArrayList<>();
+        getCache().put(40, "40", evicted -> evictedKeys.add(evicted.getKey()));
+        assertThat(evictedKeys.size(), is(7));
+        assertThat(getCache().getSize(), is(2));
+        assertTrue(getCache().contains(40));
+        assertThat(getCache().getCapacity(), is(2));
+    }
+
+    @Test
+    public void allocationFreeApi() {
+        getCache().putQuietly(1, "1");
+        getCache().putQuietly(2, "2");
+        assertThat(getCache().getOrNull(1), is("1"));
+        assertThat(getCache().getOrNull(3), is((String) null));
+        assertThat(getCache().getOrDefault(3, "-"), is("-"));
+
+        getCache().putQuietly(3, "3");
+        assertThat(getCache().getSize(), is(2));
+        assertThat(getCache().getOrNull(3), is("3"));
+
+        List<Integer> evictedKeys = new ArrayList<>();
+        assertTrue(getCache().evict((key, value) -> evictedKeys.add(key)));
+        assertTrue(getCache().evict((key, value) -> evictedKeys.add(key)));
+        assertFalse(getCache().evict((key, value) -> evictedKeys.add(key)));
+        assertThat(evictedKeys.size(), is(2));
+        assertTrue(evictedKeys.contains(3));
+        assertThat(getCache().getSize(), is(0));
+    }
+
 }
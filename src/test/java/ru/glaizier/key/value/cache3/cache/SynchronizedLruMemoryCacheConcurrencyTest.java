@@ -0,0 +1,12 @@
+package ru.glaizier.key.value.cache3.cache;
+
+/**
+ * @author GlaIZier
+ */
+public class SynchronizedLruMemoryCacheConcurrencyTest extends AbstractCacheConcurrencyTest {
+
+    @Override
+    protected Cache<Integer, Integer> getCache(int capacity) {
+        return new SynchronizedCache<>(new LruMemoryCache<>(capacity));
+    }
+}
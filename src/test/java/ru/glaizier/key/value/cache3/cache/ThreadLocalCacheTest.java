@@ -0,0 +1,67 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.stats.ConcurrentStatsCounter;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class ThreadLocalCacheTest {
+
+    private final Cache<Integer, String> shared = new SynchronizedCache<>(
+            new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 10, new ConcurrentStatsCounter()));
+
+    private final ThreadLocalCache<Integer, String> c = new ThreadLocalCache<>(shared, 4);
+
+    @Test
+    public void localHits() {
+        c.put(1, "1");
+        Optional<String> first = c.get(1);
+        assertThat(first, is(Optional.of("1")));
+        assertSame(first, c.get(1));
+        assertSame(first, c.get(1));
+        // only the first get has reached the shared cache
+        assertThat(shared.getStats().getHitCount(), is(1L));
+
+        // misses aren't kept
+        assertThat(c.get(2), is(Optional.empty()));
+        assertThat(c.get(2), is(Optional.empty()));
+        assertThat(shared.getStats().getMissCount(), is(2L));
+    }
+
+    @Test
+    public void writesInvalidate() throws ExecutionException, InterruptedException {
+        c.put(1, "1");
+        c.put(5, "5");
+        assertThat(c.get(1), is(Optional.of("1")));
+        // 5 has the same slot as 1
+        assertThat(c.get(5), is(Optional.of("5")));
+
+        CompletableFuture.runAsync(() -> {
+            assertThat(c.get(1), is(Optional.of("1")));
+            c.put(1, "11");
+        }).get();
+        assertThat(c.get(1), is(Optional.of("11")));
+
+        c.remove(1);
+        assertThat(c.get(1), is(Optional.empty()));
+
+        // writes bypassing the cache are seen only after invalidation
+        assertThat(c.get(5), is(Optional.of("5")));
+        shared.put(5, "55");
+        assertThat(c.get(5), is(Optional.of("5")));
+        c.invalidateLocal();
+        assertThat(c.get(5), is(Optional.of("55")));
+    }
+
+}
@@ -0,0 +1,111 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class WeightedSimpleCacheTest {
+
+    private Cache<Integer, String> c;
+
+    @Before
+    public void init() {
+        c = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), (key, value) -> value.length(), 10);
+    }
+
+    @Test
+    public void weight() {
+        assertThat(c.getWeight(), is(0L));
+        assertThat(c.getMaxWeight(), is(10L));
+        c.put(1, "1");
+        c.put(2, "22");
+        assertThat(c.getWeight(), is(3L));
+        assertFalse(c.isFull());
+
+        // replace
+        c.put(2, "2222");
+        assertThat(c.getWeight(), is(5L));
+        assertThat(c.getSize(), is(2));
+
+        c.remove(1);
+        assertThat(c.getWeight(), is(4L));
+        c.evict();
+        assertThat(c.getWeight(), is(0L));
+        assertTrue(c.isEmpty());
+    }
+
+    @Test
+    public void evictUntilFits() {
+        c.put(1, "111");
+        c.put(2, "222");
+        c.put(3, "333");
+        assertThat(c.getWeight(), is(9L));
+
+        List<Map.Entry<Integer, String>> evicted = new ArrayList<>();
+        c.put(4, "44444444", evicted::add);
+        assertThat(evicted.size(), is(3));
+        assertThat(evicted.get(0), is(new AbstractMap.SimpleImmutableEntry<>(1, "111")));
+        assertThat(evicted.get(2), is(new AbstractMap.SimpleImmutableEntry<>(3, "333")));
+        assertThat(c.getWeight(), is(8L));
+        assertThat(c.getSize(), is(1));
+
+        // only the first evicted is returned without a consumer
+        c.put(5, "5");
+        c.put(6, "6");
+        assertThat(c.put(7, "7777777"), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(4, "44444444"))));
+        assertTrue(c.contains(5));
+        assertTrue(c.contains(6));
+        assertThat(c.getWeight(), is(9L));
+    }
+
+    @Test
+    public void replacedValueIsNotEvicted() {
+        c.put(1, "11111");
+        c.put(2, "22222");
+        assertTrue(c.isFull());
+
+        assertThat(c.put(2, "222222"), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(1, "11111"))));
+        assertThat(c.get(2), is(Optional.of("222222")));
+        assertThat(c.getWeight(), is(6L));
+    }
+
+    @Test
+    public void countAndWeightBounded() {
+        Cache<Integer, String> bounded = new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2,
+                (key, value) -> value.length(), 10);
+        bounded.put(1, "1");
+        bounded.put(2, "2");
+        assertTrue(bounded.isFull());
+        assertThat(bounded.put(3, "3"), is(Optional.of(new AbstractMap.SimpleImmutableEntry<>(1, "1"))));
+        assertThat(bounded.getWeight(), is(2L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooHeavyElement() {
+        c.put(1, "12345678901");
+    }
+
+    @Test
+    public void serializedSizeWeigher() {
+        Weigher<Integer, String> weigher = Weighers.serializedSize();
+        assertTrue(weigher.weigh(1, "1") > 0);
+        assertTrue(weigher.weigh(1, "1234567890") > weigher.weigh(1, "1"));
+        assertThat(Weighers.<Integer, String>singleton().weigh(1, "1234567890"), is(1L));
+    }
+
+}
@@ -0,0 +1,180 @@
+package ru.glaizier.key.value.cache3.cache;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nonnull;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.metrics.Operation;
+import ru.glaizier.key.value.cache3.storage.InstrumentedStorage;
+import ru.glaizier.key.value.cache3.storage.Storage;
+import ru.glaizier.key.value.cache3.storage.StorageException;
+import ru.glaizier.key.value.cache3.storage.SynchronizedStorage;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class WriteBehindCacheTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private InstrumentedStorage<Integer, String> backing;
+
+    private WriteBehindCache<Integer, String> c;
+
+    @Before
+    public void init() {
+        backing = new InstrumentedStorage<>(new SynchronizedStorage<>(new MemoryStorage<>()));
+        c = buildCache(10);
+    }
+
+    private WriteBehindCache<Integer, String> buildCache(int maxDirty) {
+        return new WriteBehindCache<>(new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)),
+                backing, 2, maxDirty, 1, TimeUnit.HOURS, scheduler);
+    }
+
+    @After
+    public void cleanUp() {
+        c.close();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void coalesce() {
+        c.put(1, "1");
+        c.put(1, "11");
+        c.put(1, "111");
+        assertThat(c.get(1), is(Optional.of("111")));
+        assertThat(c.getDirtyCount(), is(1));
+        assertFalse(backing.contains(1));
+
+        c.flush();
+        assertThat(c.getDirtyCount(), is(0));
+        assertThat(backing.get(1), is(Optional.of("111")));
+        assertThat(backing.getHistogram(Operation.PUT).snapshot().getCount(), is(1L));
+    }
+
+    @Test
+    public void remove() {
+        c.put(1, "1");
+        c.flush();
+        assertThat(c.remove(1), is(Optional.of("1")));
+        assertFalse(c.contains(1));
+        assertThat(c.get(1), is(Optional.empty()));
+        assertTrue(backing.contains(1));
+
+        c.flush();
+        assertFalse(backing.contains(1));
+    }
+
+    @Test
+    public void evictedAreReadFromDirtyAndBacking() {
+        c.put(1, "1");
+        c.put(2, "2");
+        c.put(3, "3");
+        // 1 is evicted from memory before it's flushed
+        assertThat(c.get(1), is(Optional.of("1")));
+        c.flush();
+        c.put(4, "4");
+        assertThat(c.get(2), is(Optional.of("2")));
+        assertTrue(c.contains(2));
+        assertThat(c.getSize(), is(2));
+    }
+
+    @Test
+    public void backPressure() {
+        c.close();
+        c = buildCache(2);
+        c.put(1, "1");
+        assertFalse(backing.contains(1));
+        c.put(2, "2");
+        // the caller has flushed the batch
+        assertTrue(backing.contains(1));
+        assertTrue(backing.contains(2));
+        assertThat(c.getDirtyCount(), is(0));
+    }
+
+    @Test
+    public void backPressureFailureDoesNotFailWrite() {
+        c.close();
+        AtomicBoolean down = new AtomicBoolean(true);
+        Storage<Integer, String> failing = new SynchronizedStorage<Integer, String>(new MemoryStorage<>()) {
+            @Override
+            public Optional<String> put(@Nonnull Integer key, @Nonnull String value) {
+                if (key == 1 && down.get())
+                    throw new StorageException("Backing storage is down");
+                return super.put(key, value);
+            }
+        };
+        c = new WriteBehindCache<>(new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)),
+                failing, 2, 2, 1, TimeUnit.HOURS, scheduler);
+        c.put(1, "1");
+        c.put(2, "2");
+
+        assertThat(c.get(2), is(Optional.of("2")));
+        // the failed element stays dirty
+        assertThat(c.getDirtyCount(), is(2));
+        down.set(false);
+    }
+
+    @Test(timeout = 10_000)
+    public void concurrentWritesOfKeyAreFlushedInOrder() throws Exception {
+        CountDownLatch firstCached = new CountDownLatch(1);
+        // the first write is slow to mark the key dirty after it has been written to the underlying cache
+        Cache<Integer, String> slow = new SynchronizedCache<Integer, String>(
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)) {
+            @Override
+            public Optional<Map.Entry<Integer, String>> put(@Nonnull Integer key, @Nonnull String value) {
+                Optional<Map.Entry<Integer, String>> evicted = super.put(key, value);
+                if (value.equals("1")) {
+                    firstCached.countDown();
+                    sleep(100);
+                }
+                return evicted;
+            }
+        };
+        WriteBehindCache<Integer, String> writeBehind = new WriteBehindCache<>(slow, backing, 2, 10, 1, TimeUnit.HOURS,
+                scheduler);
+        ExecutorService writers = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> first = writers.submit(() -> writeBehind.put(1, "1"));
+            firstCached.await();
+            writeBehind.put(1, "11");
+            first.get();
+            writeBehind.flush();
+
+            // the backing storage ends up with the same element as the underlying cache
+            assertThat(slow.get(1), is(Optional.of("11")));
+            assertThat(backing.get(1), is(Optional.of("11")));
+        } finally {
+            writers.shutdownNow();
+            writeBehind.close();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
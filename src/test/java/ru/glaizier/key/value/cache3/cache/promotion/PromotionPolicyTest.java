@@ -0,0 +1,62 @@
+package ru.glaizier.key.value.cache3.cache.promotion;
+
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author GlaIZier
+ */
+public class PromotionPolicyTest {
+
+    @Test
+    public void always() {
+        PromotionPolicy<Integer> policy = new AlwaysPromotionPolicy<>();
+        assertTrue(policy.hit(1, 1));
+        assertTrue(policy.hit(1, 2));
+    }
+
+    @Test
+    public void hitCount() {
+        PromotionPolicy<Integer> policy = new HitCountPromotionPolicy<>(3);
+        assertFalse(policy.hit(1, 1));
+        assertFalse(policy.hit(1, 2));
+        assertFalse(policy.hit(2, 1));
+        assertTrue(policy.hit(1, 1));
+        // the count starts again after promotion
+        assertFalse(policy.hit(1, 1));
+
+        // the count is dropped when the key leaves the cache
+        assertFalse(policy.hit(2, 1));
+        policy.remove(2);
+        assertFalse(policy.hit(2, 1));
+        assertFalse(policy.hit(2, 1));
+        assertTrue(policy.hit(2, 1));
+    }
+
+    @Test
+    public void probabilistic() {
+        PromotionPolicy<Integer> policy = new ProbabilisticPromotionPolicy<>(0.5);
+        long promoted = IntStream.range(0, 10_000).filter(i -> policy.hit(i, 1)).count();
+        assertThat(promoted, allOf(greaterThan(4_000L), lessThan(6_000L)));
+        PromotionPolicy<Integer> alwaysPolicy = new ProbabilisticPromotionPolicy<>(1);
+        assertTrue(IntStream.range(0, 1_000).allMatch(i -> alwaysPolicy.hit(i, 1)));
+    }
+
+    @Test
+    public void frequency() {
+        PromotionPolicy<Integer> policy = new FrequencyPromotionPolicy<>(2, 1024);
+        assertFalse(policy.hit(1, 1));
+        assertFalse(policy.hit(2, 1));
+        assertTrue(policy.hit(1, 1));
+        assertTrue(policy.hit(2, 1));
+        assertFalse(policy.hit(3, 1));
+    }
+
+}
@@ -0,0 +1,144 @@
+package ru.glaizier.key.value.cache3.jmx;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ru.glaizier.key.value.cache3.cache.ConcurrentMultiLevelCache;
+import ru.glaizier.key.value.cache3.cache.InstrumentedCache;
+import ru.glaizier.key.value.cache3.cache.MultiLevelCache;
+import ru.glaizier.key.value.cache3.cache.SimpleCache;
+import ru.glaizier.key.value.cache3.cache.SynchronizedCache;
+import ru.glaizier.key.value.cache3.cache.stats.ConcurrentStatsCounter;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.metrics.HeavyHitters;
+import ru.glaizier.key.value.cache3.metrics.MissRatioCurve;
+import ru.glaizier.key.value.cache3.storage.AccessTrackingStorage;
+import ru.glaizier.key.value.cache3.storage.Storage;
+import ru.glaizier.key.value.cache3.storage.file.ConcurrentFileStorage;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class MBeansTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    @Test
+    public void multiLevelCache() throws JMException {
+        ConcurrentFileStorage<Integer, String> fileStorage = new ConcurrentFileStorage<>(temporaryFolder.getRoot().toPath());
+        MultiLevelCache<Integer, String> cache = new MultiLevelCache<>(Arrays.asList(
+                new InstrumentedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1,
+                        new ConcurrentStatsCounter())),
+                new SimpleCache<>(fileStorage, new LruStrategy<>(), 2, new ConcurrentStatsCounter())));
+        cache.put(1, "1");
+        cache.put(2, "2");
+        cache.get(2);
+        cache.get(1);
+
+        List<ObjectName> names = MBeans.registerMultiLevelCache("test", new SynchronizedCache<>(cache));
+        ObjectName storageName = MBeans.registerFileStorage("test", fileStorage);
+        try {
+            assertThat(names.size(), is(3));
+            assertThat(server.getAttribute(names.get(0), "Size"), is(2));
+            assertThat(server.getAttribute(names.get(1), "HitCount"), is(1L));
+            assertThat(server.getAttribute(names.get(1), "MissCount"), is(1L));
+            assertThat(server.getAttribute(names.get(1), "HitRate"), is(0.5));
+            assertFalse(server.getAttribute(names.get(1), "GetLatencyP99Nanos").equals(0L));
+            assertThat(server.getAttribute(names.get(2), "Capacity"), is(2));
+            server.setAttribute(names.get(2), new Attribute("Capacity", 3));
+            assertThat(cache.getLevels().get(1).getCapacity(), is(3));
+            // the whole cache is resized in proportion to the levels
+            server.setAttribute(names.get(0), new Attribute("Capacity", 8));
+            assertThat(cache.getLevels().get(0).getCapacity(), is(2));
+            assertThat(cache.getLevels().get(1).getCapacity(), is(6));
+            assertThat(server.getAttribute(storageName, "Size"), is(1));
+            assertThat(server.getAttribute(storageName, "FileCount"), is(1L));
+            assertThat(server.invoke(storageName, "compact", new Object[0], new String[0]), is(0));
+        } finally {
+            for (ObjectName name : names)
+                MBeans.unregister(name);
+            MBeans.unregister(storageName);
+        }
+        assertFalse(server.isRegistered(storageName));
+    }
+
+    @Test
+    public void concurrentMultiLevelCache() throws JMException {
+        ConcurrentMultiLevelCache<Integer, String> cache = new ConcurrentMultiLevelCache<>(
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 1)),
+                new SynchronizedCache<>(new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 2)));
+        cache.put(1, "1");
+        cache.put(2, "2");
+
+        List<ObjectName> names = MBeans.registerMultiLevelCache("test", cache);
+        try {
+            assertThat(names.size(), is(3));
+            assertThat(server.getAttribute(names.get(0), "Size"), is(2));
+            assertThat(server.getAttribute(names.get(1), "Size"), is(1));
+            assertThat(server.getAttribute(names.get(2), "Size"), is(1));
+            server.setAttribute(names.get(2), new Attribute("Capacity", 3));
+            assertThat(cache.getLevels().get(1).getCapacity(), is(3));
+        } finally {
+            for (ObjectName name : names)
+                MBeans.unregister(name);
+        }
+    }
+
+    @Test
+    public void heavyHitters() throws JMException {
+        HeavyHitters<Integer> heavyHitters = new HeavyHitters<>(10);
+        Storage<Integer, String> storage = new AccessTrackingStorage<>(new MemoryStorage<>(), heavyHitters);
+        storage.put(1, "1");
+        storage.get(1);
+        storage.get(2);
+
+        ObjectName name = MBeans.registerHeavyHitters("test", heavyHitters);
+        try {
+            assertTrue(((String[]) server.getAttribute(name, "HotKeys"))[0].startsWith("1=2"));
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertThat(((String[]) server.getAttribute(name, "HotKeys")).length, is(0));
+        } finally {
+            MBeans.unregister(name);
+        }
+    }
+
+    @Test
+    public void missRatioCurve() throws JMException {
+        MissRatioCurve<Integer> curve = new MissRatioCurve<>(10, 1, 100);
+        for (int i = 0; i < 2; i++)
+            curve.record(1);
+
+        ObjectName name = MBeans.registerMissRatioCurve("test", curve);
+        try {
+            assertThat(server.getAttribute(name, "SampledKeyCount"), is(1));
+            assertThat(server.getAttribute(name, "SamplingRate"), is(1.0));
+            // an MXBean map is open as tabular data keyed by the map keys
+            TabularData curveData = (TabularData) server.getAttribute(name, "Curve");
+            assertThat(curveData.get(new Object[]{10}).get("value"), is(0.5));
+            server.invoke(name, "reset", new Object[0], new String[0]);
+            assertThat(server.getAttribute(name, "SampledKeyCount"), is(0));
+        } finally {
+            MBeans.unregister(name);
+        }
+    }
+
+}
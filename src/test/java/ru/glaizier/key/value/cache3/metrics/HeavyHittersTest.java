@@ -0,0 +1,51 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * @author GlaIZier
+ */
+public class HeavyHittersTest {
+
+    private final AtomicLong time = new AtomicLong();
+
+    private final HeavyHitters<Integer> heavyHitters = new HeavyHitters<>(8, time::get);
+
+    @Test
+    public void hotKeysSurviveColdOnes() {
+        for (int i = 0; i < 1_000; i++) {
+            heavyHitters.record(1);
+            if (i % 2 == 0)
+                heavyHitters.record(2);
+            // every cold key is accessed once
+            heavyHitters.record(100 + i);
+        }
+        time.set(TimeUnit.SECONDS.toNanos(10));
+
+        List<HotKey<Integer>> top = heavyHitters.getTop(2);
+        assertThat(top.size(), is(2));
+        assertThat(top.get(0).getKey(), is(1));
+        assertThat(top.get(1).getKey(), is(2));
+        HotKey<Integer> hottest = top.get(0);
+        assertTrue(hottest.getCount() >= 1_000 && hottest.getCount() - hottest.getError() <= 1_000);
+        assertThat(hottest.getRate(), closeTo(hottest.getCount() / 10.0, 0.001));
+    }
+
+    @Test
+    public void topIsBoundedBySize() {
+        IntStream.range(0, 3).forEach(heavyHitters::record);
+        assertThat(heavyHitters.getTop(10).size(), is(3));
+        heavyHitters.reset();
+        assertThat(heavyHitters.getTop(10).size(), is(0));
+    }
+
+}
@@ -0,0 +1,61 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest extends Assert {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void buckets() {
+        assertEquals(0, LatencyHistogram.index(0));
+        assertEquals(63, LatencyHistogram.index(63));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValue(LatencyHistogram.BUCKETS - 1));
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            long highest = LatencyHistogram.highestValue(LatencyHistogram.index(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        IntStream.rangeClosed(1, 1_000).forEach(histogram::record);
+        histogram.record(1_000_000);
+
+        LatencySnapshot snapshot = histogram.snapshot();
+        assertEquals(1_001, snapshot.getCount());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(501, snapshot.getP50(), 501 / 32);
+        assertEquals(992, snapshot.getP99(), 992 / 32);
+        assertEquals(1_000, snapshot.getP999(), 1_000 / 32);
+        assertEquals(1_000_000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void intervals() {
+        histogram.record(10);
+        histogram.record(1_000);
+        assertEquals(2, histogram.intervalSnapshot().getCount());
+
+        histogram.record(20);
+        LatencySnapshot interval = histogram.intervalSnapshot();
+        assertEquals(1, interval.getCount());
+        assertEquals(20, interval.getMax());
+        assertEquals(20, interval.getP99());
+        assertEquals(0, histogram.intervalSnapshot().getCount());
+        assertEquals(3, histogram.snapshot().getCount());
+        assertEquals(1_000, histogram.snapshot().getMax());
+    }
+
+    @Test
+    public void empty() {
+        assertEquals(0, histogram.snapshot().getP99());
+        assertEquals(0, histogram.snapshot().getMean(), 0);
+    }
+
+}
@@ -0,0 +1,100 @@
+package ru.glaizier.key.value.cache3.metrics;
+
+import java.util.SortedMap;
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.cache.Cache;
+import ru.glaizier.key.value.cache3.cache.MissRatioTrackingCache;
+import ru.glaizier.key.value.cache3.cache.SimpleCache;
+import ru.glaizier.key.value.cache3.cache.strategy.LruStrategy;
+import ru.glaizier.key.value.cache3.storage.memory.MemoryStorage;
+
+/**
+ * @author GlaIZier
+ */
+public class MissRatioCurveTest {
+
+    @Test
+    public void cyclicScanFitsOnlyFullCapacity() {
+        MissRatioCurve<Integer> curve = new MissRatioCurve<>(1_000, 1, 2_000);
+        scan(curve, 1_000, 10);
+
+        MissRatioSnapshot snapshot = curve.snapshot();
+        assertThat(snapshot.getTotal(), closeTo(10_000, 0.001));
+        assertThat(snapshot.getSampledKeyCount(), is(1_000));
+        // every reuse distance is 999, so an LRU cache smaller than the loop misses every time
+        assertThat(snapshot.getMissRatio(500), closeTo(1, 0.001));
+        assertThat(snapshot.getMissRatio(1_000), closeTo(0.1, 0.001));
+        assertThat(snapshot.getMissRatio(10_000), closeTo(0.1, 0.001));
+        assertThat(snapshot.getHitRatio(2_000), closeTo(0.9, 0.001));
+
+        SortedMap<Integer, Double> points = snapshot.getCurve();
+        assertThat(points.firstKey(), is(100));
+        assertThat(points.lastKey(), is(10_000));
+        assertThat(points.get(750), closeTo(1, 0.001));
+        assertThat(points.get(1_250), closeTo(0.1, 0.001));
+    }
+
+    @Test
+    public void sampledScanIsEstimated() {
+        MissRatioCurve<Integer> curve = new MissRatioCurve<>(10_000, 0.1, 8_192);
+        scan(curve, 10_000, 5);
+
+        MissRatioSnapshot snapshot = curve.snapshot();
+        assertTrue(snapshot.getSampledKeyCount() < 2_000);
+        assertThat(snapshot.getTotal(), closeTo(50_000, 5_000));
+        assertThat(snapshot.getMissRatio(5_000), closeTo(1, 0.05));
+        assertThat(snapshot.getMissRatio(12_500), closeTo(0.2, 0.05));
+    }
+
+    @Test
+    public void maxKeysLowerSamplingRate() {
+        MissRatioCurve<Integer> curve = new MissRatioCurve<>(100, 1, 100);
+        scan(curve, 1_000, 1);
+
+        assertTrue(curve.snapshot().getSampledKeyCount() <= 100);
+        assertTrue(curve.getSamplingRate() < 0.2);
+
+        curve.reset();
+        assertThat(curve.getSamplingRate(), is(1.0));
+        assertThat(curve.snapshot().getSampledKeyCount(), is(0));
+        assertThat(curve.snapshot().getMissRatio(100), is(0.0));
+    }
+
+    @Test
+    public void longScanCompactsTimes() {
+        MissRatioCurve<Integer> curve = new MissRatioCurve<>(10, 1, 16);
+        // many more accesses than the tree of times holds
+        scan(curve, 8, 1_000);
+
+        assertThat(curve.snapshot().getMissRatio(8), closeTo(0.001, 0.0001));
+        assertThat(curve.snapshot().getMissRatio(7), closeTo(1, 0.0001));
+    }
+
+    @Test
+    public void trackingCacheRecordsGets() {
+        MissRatioCurve<Integer> curve = new MissRatioCurve<>(4, 1, 64);
+        Cache<Integer, String> cache = new MissRatioTrackingCache<>(
+                new SimpleCache<>(new MemoryStorage<>(), new LruStrategy<>(), 4), curve);
+        cache.put(1, "1");
+        cache.get(1);
+        cache.getOrNull(1);
+        cache.get(2);
+
+        MissRatioSnapshot snapshot = curve.snapshot();
+        assertThat(snapshot.getTotal(), closeTo(3, 0.001));
+        assertThat(snapshot.getMissRatio(1), closeTo(2.0 / 3, 0.001));
+    }
+
+    private static void scan(MissRatioCurve<Integer> curve, int keys, int passes) {
+        for (int pass = 0; pass < passes; pass++)
+            for (int key = 0; key < keys; key++)
+                curve.record(key);
+    }
+
+}
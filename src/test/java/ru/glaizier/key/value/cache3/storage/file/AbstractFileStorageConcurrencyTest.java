@@ -123,6 +123,33 @@ public abstract class AbstractFileStorageConcurrencyTest {
         cleanUpStorage(storage);
     }
 
+    @Test(timeout = 10_000)
+    // increment the same counter simultaneously. Lost updates show up as a smaller sum
+    public void merge() throws InterruptedException, ExecutionException {
+        Storage<Integer, Integer> storage = getStorage(temporaryFolder.getRoot().toPath());
+
+        CyclicBarrier barrier = new CyclicBarrier(THREADS_NUMBER);
+        List<Callable<Object>> mergeTasks = IntStream.range(0, THREADS_NUMBER)
+            .mapToObj(threadI -> (Runnable) () -> {
+                try {
+                    barrier.await(1, SECONDS);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                IntStream.range(0, TASKS_NUMBER)
+                    .forEach(taskI -> storage.merge(0, 1, Integer::sum));
+            })
+            .map(Executors::callable)
+            .collect(toList());
+        List<Future<Object>> futures = executorService.invokeAll(mergeTasks);
+
+        for (Future<Object> future : futures)
+            future.get();
+        assertThat(storage.get(0), is(Optional.of(THREADS_NUMBER * TASKS_NUMBER)));
+
+        cleanUpStorage(storage);
+    }
+
     @Test(timeout = 10_000)
     // get() and put() simultaneously using latch
     public void getPut() throws InterruptedException, ExecutionException {
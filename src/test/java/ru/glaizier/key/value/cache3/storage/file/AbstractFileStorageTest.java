@@ -3,9 +3,15 @@ package ru.glaizier.key.value.cache3.storage.file;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.Matchers.is;
@@ -122,6 +128,42 @@ public abstract class AbstractFileStorageTest {
         assertFalse(storage.contains(2));
     }
 
+    @Test
+    public void compute() {
+        assertThat(storage.putIfAbsent(1, "1"), is(Optional.empty()));
+        assertThat(storage.putIfAbsent(1, "2"), is(Optional.of("1")));
+        assertThat(storage.get(1), is(Optional.of("1")));
+
+        assertFalse(storage.replace(1, "2", "3"));
+        assertTrue(storage.replace(1, "1", "3"));
+        assertThat(storage.get(1), is(Optional.of("3")));
+
+        assertThat(storage.merge(1, "4", String::concat), is(Optional.of("34")));
+        assertThat(storage.merge(2, "2", String::concat), is(Optional.of("2")));
+        assertThat(storage.computeIfAbsent(2, k -> "5"), is(Optional.of("2")));
+        assertThat(storage.computeIfAbsent(3, k -> null), is(Optional.empty()));
+        assertFalse(storage.contains(3));
+
+        assertThat(storage.compute(1, (k, v) -> null), is(Optional.empty()));
+        assertFalse(storage.contains(1));
+        assertThat(storage.getSize(), is(1));
+    }
+
+    @Test
+    public void streams() {
+        IntStream.range(0, 100).forEach(i -> storage.put(i, String.valueOf(i)));
+        storage.put(0, "-");
+        storage.remove(1);
+
+        assertThat(storage.keys().parallel().count(), is(99L));
+        Map<Integer, String> entries = storage.entries().parallel()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        assertThat(entries.size(), is(99));
+        assertThat(entries.get(0), is("-"));
+        assertFalse(entries.containsKey(1));
+        IntStream.range(2, 100).forEach(i -> assertThat(entries.get(i), is(String.valueOf(i))));
+    }
+
     @Test
     public void putWithCollisions() {
         HashCodeEqualsPojo key10 = new HashCodeEqualsPojo(1, "0");
@@ -221,4 +263,24 @@ public abstract class AbstractFileStorageTest {
         assertTrue(localStorage.isEmpty());
     }
 
+    @Test
+    public void compact() throws IOException {
+        AbstractFileStorage<Integer, String> fileStorage = (AbstractFileStorage<Integer, String>) storage;
+        fileStorage.put(1, "1");
+        fileStorage.put(2, "2");
+        Path orphan = temporaryFolder.newFile(3 + "#" + UUID.randomUUID().toString() + ".ser").toPath();
+        Path youngOrphan = temporaryFolder.newFile(4 + "#" + UUID.randomUUID().toString() + ".ser").toPath();
+        Files.setLastModifiedTime(orphan, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+        assertThat(fileStorage.getFileCount(), is(4L));
+        assertTrue(fileStorage.getDiskBytes() > 0);
+        assertThat(fileStorage.compact(), is(1));
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(youngOrphan));
+        assertThat(fileStorage.compact(0, TimeUnit.MILLISECONDS), is(1));
+        assertThat(fileStorage.getFileCount(), is(2L));
+        assertThat(fileStorage.get(1), is(Optional.of("1")));
+        assertThat(fileStorage.get(2), is(Optional.of("2")));
+    }
+
 }
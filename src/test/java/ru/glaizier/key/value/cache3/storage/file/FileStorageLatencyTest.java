@@ -0,0 +1,84 @@
+package ru.glaizier.key.value.cache3.storage.file;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toList;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ru.glaizier.key.value.cache3.metrics.LatencySnapshot;
+import ru.glaizier.key.value.cache3.metrics.Operation;
+import ru.glaizier.key.value.cache3.storage.InstrumentedStorage;
+import ru.glaizier.key.value.cache3.storage.Storage;
+import ru.glaizier.key.value.cache3.storage.SynchronizedStorage;
+
+/**
+ * Logs put latency percentiles of the file storages under concurrent puts
+ *
+ * @author GlaIZier
+ */
+public class FileStorageLatencyTest {
+
+    private static final Logger log = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final int THREADS_NUMBER = 10;
+
+    private static final int TASKS_NUMBER = 50;
+
+    private static ExecutorService executorService;
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void init() {
+        executorService = Executors.newFixedThreadPool(THREADS_NUMBER);
+    }
+
+    @AfterClass
+    public static void cleanUpClass() throws InterruptedException {
+        executorService.shutdownNow();
+        executorService.awaitTermination(1, SECONDS);
+    }
+
+    @Test
+    public void putLatencies() throws IOException, InterruptedException {
+        logPutLatencies("SynchronizedStorage",
+                new SynchronizedStorage<>(new FileStorage<>(temporaryFolder.newFolder().toPath())));
+        logPutLatencies("ConfinedStorage", new ConfinedFileStorage<>(temporaryFolder.newFolder().toPath()));
+        logPutLatencies("ConcurrentStorage", new ConcurrentFileStorage<>(temporaryFolder.newFolder().toPath()));
+    }
+
+    private void logPutLatencies(String name, Storage<Integer, Integer> storage) throws InterruptedException {
+        InstrumentedStorage<Integer, Integer> instrumented = new InstrumentedStorage<>(storage);
+        executorService.invokeAll(buildPushTasks(instrumented));
+
+        LatencySnapshot snapshot = instrumented.getHistogram(Operation.PUT).snapshot();
+        log.info("{}'s put latencies: {}", name, snapshot);
+        assertThat(snapshot.getCount(), is((long) TASKS_NUMBER * TASKS_NUMBER));
+    }
+
+    private static List<Callable<Object>> buildPushTasks(Storage<Integer, Integer> storage) {
+        return IntStream.range(0, TASKS_NUMBER)
+            .mapToObj(taskId -> (Runnable) () -> new Random().ints(TASKS_NUMBER, 1, TASKS_NUMBER + 1)
+                .forEach(number -> storage.put(number, number)))
+            .map(Executors::callable)
+            .collect(toList());
+    }
+
+}
@@ -0,0 +1,158 @@
+package ru.glaizier.key.value.cache3.storage.offheap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+import ru.glaizier.key.value.cache3.storage.StorageException;
+
+/**
+ * @author GlaIZier
+ */
+public class OffHeapStorageTest {
+
+    private final OffHeapStorage<Integer, String> storage = new OffHeapStorage<>(1 << 20, 4, 1 << 14);
+
+    private static String repeat(char c, int times) {
+        char[] chars = new char[times];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void putGetRemove() {
+        assertThat(storage.put(1, "1"), is(Optional.empty()));
+        assertThat(storage.put(2, "2"), is(Optional.empty()));
+        assertThat(storage.put(1, "11"), is(Optional.of("1")));
+        assertThat(storage.get(1), is(Optional.of("11")));
+        assertTrue(storage.contains(2));
+        assertThat(storage.getSize(), is(2));
+
+        assertThat(storage.remove(1), is(Optional.of("11")));
+        assertThat(storage.remove(1), is(Optional.empty()));
+        assertFalse(storage.contains(1));
+        assertThat(storage.get(3), is(Optional.empty()));
+        assertThat(storage.getSize(), is(1));
+    }
+
+    @Test
+    public void concurrentSize() {
+        IntStream.range(0, 5_000).parallel().forEach(i -> storage.put(i, String.valueOf(i)));
+        IntStream.range(0, 5_000).parallel().filter(i -> i % 2 == 0).forEach(storage::remove);
+        // replaces don't change the size
+        IntStream.range(0, 5_000).parallel().filter(i -> i % 2 == 1).forEach(i -> storage.put(i, "r"));
+        assertThat(storage.getSize(), is(2_500));
+        assertThat(storage.keys().count(), is(2_500L));
+    }
+
+    @Test
+    public void differentSizes() {
+        String large = repeat('l', 10_000);
+        storage.put(1, "s");
+        storage.put(2, large);
+        storage.put(1, large);
+        storage.put(2, "s");
+        assertThat(storage.get(1), is(Optional.of(large)));
+        assertThat(storage.get(2), is(Optional.of("s")));
+    }
+
+    @Test
+    public void manyElements() {
+        IntStream.range(0, 5_000).forEach(i -> storage.put(i, String.valueOf(i)));
+        assertThat(storage.getSize(), is(5_000));
+        IntStream.range(0, 5_000).filter(i -> i % 2 == 0).forEach(storage::remove);
+
+        assertThat(storage.getSize(), is(2_500));
+        IntStream.range(0, 5_000).forEach(i -> {
+            if (i % 2 == 0)
+                assertFalse(storage.contains(i));
+            else
+                assertThat(storage.get(i), is(Optional.of(String.valueOf(i))));
+        });
+    }
+
+    @Test
+    public void streams() {
+        IntStream.range(0, 1_000).forEach(i -> storage.put(i, String.valueOf(i)));
+
+        assertThat(storage.keys().parallel().mapToInt(Integer::intValue).sum(), is(IntStream.range(0, 1_000).sum()));
+        Map<Integer, String> entries = storage.entries().parallel()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        assertThat(entries.size(), is(1_000));
+        IntStream.range(0, 1_000).forEach(i -> assertThat(entries.get(i), is(String.valueOf(i))));
+    }
+
+    @Test
+    public void removalsDuringStreams() {
+        OffHeapStorage<Integer, String> single = new OffHeapStorage<>(1 << 20, 1, 1 << 10);
+        IntStream.range(0, 5_000).forEach(i -> single.put(i, String.valueOf(i)));
+
+        // removals during the iteration need the segment lock, and they don't hide the elements that are kept
+        List<Integer> kept = new ArrayList<>();
+        try (Stream<Map.Entry<Integer, String>> entries = single.entries()) {
+            entries.forEach(e -> {
+                if (e.getKey() % 2 == 0)
+                    single.remove(e.getKey());
+                else
+                    kept.add(e.getKey());
+            });
+        }
+        assertThat(single.getSize(), is(2_500));
+        assertThat(kept.size(), is(2_500));
+        assertThat(kept.stream().distinct().count(), is(2_500L));
+    }
+
+    @Test(expected = StorageException.class)
+    public void tooLarge() {
+        storage.put(1, repeat('l', 1 << 14));
+    }
+
+    @Test
+    public void exhaustion() {
+        OffHeapStorage<Integer, String> small = new OffHeapStorage<>(4096, 1, 1024);
+        try {
+            IntStream.range(0, 1_000).forEach(i -> small.put(i, String.valueOf(i)));
+            fail();
+        } catch (StorageException e) {
+            assertTrue(small.getSize() < 1_000);
+        }
+    }
+
+    @Test
+    public void evict() {
+        OffHeapStorage<Integer, String> small = new OffHeapStorage<>(4096, 2, 1024);
+        List<Map.Entry<Integer, String>> evicted = new ArrayList<>();
+        IntStream.range(0, 1_000).forEach(i -> small.put(i, String.valueOf(i), evicted::add));
+        assertThat(evicted.size() + small.getSize(), is(1_000));
+        evicted.forEach(e -> assertFalse(small.contains(e.getKey())));
+
+        // a larger element takes a slab of smaller ones, the other slabs keep their elements
+        int sizeBefore = small.getSize();
+        evicted.clear();
+        String large = repeat('l', 900);
+        small.put(-1, large, evicted::add);
+        assertThat(small.get(-1), is(Optional.of(large)));
+        assertThat(evicted.size() + small.getSize(), is(sizeBefore + 1));
+        // 2 segments of 2 slabs of small elements
+        assertThat(evicted.size(), is(sizeBefore / 4));
+
+        int size = small.getSize();
+        for (int i = 0; i < size; i++)
+            assertTrue(small.evict().isPresent());
+        assertThat(small.evict(), is(Optional.empty()));
+        assertThat(small.getSize(), is(0));
+    }
+
+}
@@ -0,0 +1,48 @@
+package ru.glaizier.key.value.cache3.util;
+
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CountingBloomFilterTest extends Assert {
+
+    private final CountingBloomFilter<Integer> filter = new CountingBloomFilter<>(1_000, 0.01);
+
+    @Test
+    public void noFalseNegatives() {
+        IntStream.range(0, 1_000).forEach(filter::add);
+        IntStream.range(0, 1_000).forEach(i -> assertTrue(filter.mightContain(i)));
+    }
+
+    @Test
+    public void falsePositives() {
+        IntStream.range(0, 1_000).forEach(filter::add);
+        long falsePositives = IntStream.range(1_000, 101_000).filter(filter::mightContain).count();
+        assertTrue(falsePositives < 2_000);
+    }
+
+    @Test
+    public void remove() {
+        filter.add(1);
+        filter.add(2);
+        filter.remove(1);
+        assertFalse(filter.mightContain(1));
+        assertTrue(filter.mightContain(2));
+    }
+
+    @Test
+    public void saturatedCountersAreNotDecremented() {
+        IntStream.range(0, 300).forEach(i -> filter.add(1));
+        IntStream.range(0, 300).forEach(i -> filter.remove(1));
+        assertTrue(filter.mightContain(1));
+    }
+
+    @Test
+    public void clear() {
+        filter.add(1);
+        filter.clear();
+        assertFalse(filter.mightContain(1));
+    }
+
+}
@@ -0,0 +1,44 @@
+package ru.glaizier.key.value.cache3.util;
+
+import java.util.stream.IntStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FrequencySketchTest extends Assert {
+
+    private final FrequencySketch<Integer> sketch = new FrequencySketch<>(512);
+
+    @Test
+    public void increment() {
+        assertEquals(0, sketch.frequency(1));
+        sketch.increment(1);
+        sketch.increment(1);
+        sketch.increment(2);
+        assertEquals(2, sketch.frequency(1));
+        assertEquals(1, sketch.frequency(2));
+        assertEquals(0, sketch.frequency(3));
+    }
+
+    @Test
+    public void saturate() {
+        IntStream.range(0, 100).forEach(i -> sketch.increment(1));
+        assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency(1));
+    }
+
+    @Test
+    public void age() {
+        IntStream.range(0, 8).forEach(i -> sketch.increment(1));
+        // a sample of other elements halves all counters
+        IntStream.range(0, 10 * 512).forEach(i -> sketch.increment(1_000 + i % 2_000));
+        assertTrue(sketch.frequency(1) < 8);
+    }
+
+    @Test
+    public void clear() {
+        sketch.increment(1);
+        sketch.clear();
+        assertEquals(0, sketch.frequency(1));
+    }
+
+}